@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the gain of {@code async.store.size} when the index acknowledges
+ * documents slowly.
+ *
+ * <p>
+ * The callback waits {@code latency} milliseconds per document. With
+ * synchronous stores a run of {@code data.size} records costs at least
+ * {@code data.size * latency}; with {@code asyncStoreSize} pending stores the
+ * waits overlap with each other and with preparing the next records.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncStoreBenchmark {
+
+    /** The number of records per run. */
+    @Param({ "200" })
+    public int dataSize;
+
+    /** The latency in milliseconds of the callback per document. */
+    @Param({ "1" })
+    public int latency;
+
+    /** The maximum number of pending stores (0 stores synchronously). */
+    @Param({ "0", "16" })
+    public int asyncStoreSize;
+
+    private ExampleDataStore dataStore;
+
+    private DataConfig dataConfig;
+
+    private Map<String, String> scriptMap;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.registerComponents();
+        dataStore = new ExampleDataStore();
+        dataConfig = new DataConfig();
+        scriptMap = BenchmarkSupport.newScriptMap(3);
+    }
+
+    @Benchmark
+    public long storeData() {
+        final DataStoreParams paramMap = BenchmarkSupport.newParams(5);
+        paramMap.put("data.size", Integer.toString(dataSize));
+        paramMap.put("async.store.size", Integer.toString(asyncStoreSize));
+        final BenchmarkSupport.SlowIndexUpdateCallback callback = new BenchmarkSupport.SlowIndexUpdateCallback(latency);
+        dataStore.storeData(dataConfig, callback, paramMap, scriptMap, new HashMap<>());
+        return callback.getDocumentSize();
+    }
+}
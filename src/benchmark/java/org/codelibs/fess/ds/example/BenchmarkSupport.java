@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codelibs.fess.app.service.FailureUrlService;
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.opensearch.config.exentity.CrawlingConfig;
+import org.codelibs.fess.opensearch.config.exentity.FailureUrl;
+import org.codelibs.fess.util.ComponentUtil;
+
+/**
+ * Stub collaborators and fixtures shared by the benchmarks.
+ *
+ * <p>
+ * The benchmarks run without a DI container and without OpenSearch, so the
+ * components that {@link ExampleDataStore} resolves through
+ * {@link ComponentUtil} are registered as no-op stubs.
+ * </p>
+ */
+final class BenchmarkSupport {
+
+    /** The source fields produced by {@link ExampleDataStore#createSourceRecord(int)}. */
+    private static final String[] SOURCE_FIELDS = { "id", "title", "body", "url", "created" };
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Register the no-op {@link CrawlerStatsHelper} and {@link FailureUrlService}.
+     */
+    static void registerComponents() {
+        ComponentUtil.register(new NoOpCrawlerStatsHelper(), "crawlerStatsHelper");
+        ComponentUtil.register(new NoOpFailureUrlService(), FailureUrlService.class.getCanonicalName());
+    }
+
+    /**
+     * Create a scriptMap with the given number of field references.
+     * @param size The number of entries.
+     * @return The scriptMap.
+     */
+    static Map<String, String> newScriptMap(final int size) {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            scriptMap.put("field" + i, SOURCE_FIELDS[i % SOURCE_FIELDS.length]);
+        }
+        return scriptMap;
+    }
+
+    /**
+     * Create parameters with the given number of extra entries, like the
+     * parameters of a real data store configuration.
+     * @param size The number of extra entries.
+     * @return The parameters.
+     */
+    static DataStoreParams newParams(final int size) {
+        final DataStoreParams paramMap = new DataStoreParams();
+        for (int i = 0; i < size; i++) {
+            paramMap.put("param" + i, "value" + i);
+        }
+        return paramMap;
+    }
+
+    /**
+     * An {@link IndexUpdateCallback} that only counts the documents.
+     */
+    static class NoOpIndexUpdateCallback implements IndexUpdateCallback {
+        private final AtomicLong documentSize = new AtomicLong();
+
+        @Override
+        public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+            documentSize.incrementAndGet();
+        }
+
+        @Override
+        public long getExecuteTime() {
+            return 0;
+        }
+
+        @Override
+        public long getDocumentSize() {
+            return documentSize.get();
+        }
+
+        @Override
+        public void commit() {
+            // nothing
+        }
+    }
+
+    /**
+     * An {@link IndexUpdateCallback} that simulates the latency of an index.
+     */
+    static class SlowIndexUpdateCallback extends NoOpIndexUpdateCallback {
+        private final long latency;
+
+        SlowIndexUpdateCallback(final long latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.store(paramMap, dataMap);
+        }
+    }
+
+    /**
+     * A {@link CrawlerStatsHelper} that records nothing.
+     */
+    static class NoOpCrawlerStatsHelper extends CrawlerStatsHelper {
+        @Override
+        public void begin(final Object keyObj) {
+            // nothing
+        }
+
+        @Override
+        public void record(final Object keyObj, final StatsAction action) {
+            // nothing
+        }
+
+        @Override
+        public void done(final Object keyObj) {
+            // nothing
+        }
+    }
+
+    /**
+     * A {@link FailureUrlService} that stores nothing.
+     */
+    static class NoOpFailureUrlService extends FailureUrlService {
+        @Override
+        public FailureUrl store(final CrawlingConfig crawlingConfig, final String errorName, final String url, final Throwable e) {
+            return null;
+        }
+    }
+}
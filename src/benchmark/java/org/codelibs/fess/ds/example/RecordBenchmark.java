@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per-record stages of {@link ExampleDataStore}.
+ *
+ * <p>
+ * One benchmark operation is one record, so with {@code -prof gc} the
+ * {@code gc.alloc.rate.norm} column is the number of bytes allocated per
+ * record. The {@code *Copy} and {@code *ConvertValue} benchmarks measure the
+ * former implementation of the same stage for comparison.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordBenchmark {
+
+    /** The number of scriptMap entries. */
+    @Param({ "3", "10", "30" })
+    public int scriptSize;
+
+    /** The number of configured parameters. */
+    @Param({ "5", "20" })
+    public int paramSize;
+
+    private BenchmarkDataStore dataStore;
+
+    private DataConfig dataConfig;
+
+    private BenchmarkSupport.NoOpIndexUpdateCallback callback;
+
+    private CrawlerStatsHelper crawlerStatsHelper;
+
+    private DataStoreParams paramMap;
+
+    private Map<String, Object> paramSnapshot;
+
+    private Map<String, String> scriptMap;
+
+    private ScriptPlan scriptPlan;
+
+    private Map<String, Object> source;
+
+    private StatsKeyObject statsKey;
+
+    private Map<String, Object> resultMap;
+
+    private RunContext context;
+
+    private int index;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.registerComponents();
+        dataStore = new BenchmarkDataStore();
+        dataConfig = new DataConfig();
+        callback = new BenchmarkSupport.NoOpIndexUpdateCallback();
+        crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        paramMap = BenchmarkSupport.newParams(paramSize);
+        paramSnapshot = ResultMapView.snapshot(paramMap);
+        scriptMap = BenchmarkSupport.newScriptMap(scriptSize);
+        scriptPlan = dataStore.newScriptPlan("groovy", scriptMap, dataStore.newRunPlan(paramMap, scriptMap));
+        source = dataStore.createSourceRecord(0);
+        statsKey = new StatsKeyObject("benchmark#0");
+        resultMap = new ResultMapView(paramSnapshot, statsKey, source);
+        context = new RunContext(dataConfig, callback, crawlerStatsHelper, paramSnapshot, scriptPlan, new HashMap<>());
+        context.setFailureSink(new FailureSink(new BenchmarkSupport.NoOpFailureUrlService(), dataConfig, 1, 0, 0, 0));
+    }
+
+    @Benchmark
+    public Map<String, Object> createSourceRecord() {
+        return dataStore.createSourceRecord(index++);
+    }
+
+    @Benchmark
+    public Map<String, Object> buildResultMapCopy() {
+        final Map<String, Object> map = new LinkedHashMap<>(paramMap.asMap());
+        map.putAll(source);
+        return map;
+    }
+
+    @Benchmark
+    public Map<String, Object> buildResultMapView() {
+        return new ResultMapView(paramSnapshot, statsKey, source);
+    }
+
+    @Benchmark
+    public Map<String, Object> reuseResultMapView() {
+        return context.getResultMap(statsKey, source);
+    }
+
+    @Benchmark
+    public Map<String, Object> evaluateScriptMapPresized() {
+        final Map<String, Object> dataMap = context.newDataMap();
+        scriptPlan.evaluate(resultMap, dataMap);
+        return dataMap;
+    }
+
+    @Benchmark
+    public Map<String, Object> evaluateScriptMapConvertValue() {
+        final Map<String, Object> dataMap = new HashMap<>();
+        for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
+            final Object value = dataStore.convert("groovy", entry.getValue(), resultMap);
+            if (value != null) {
+                dataMap.put(entry.getKey(), value);
+            }
+        }
+        return dataMap;
+    }
+
+    @Benchmark
+    public Map<String, Object> evaluateScriptMap() {
+        final Map<String, Object> dataMap = new HashMap<>();
+        scriptPlan.evaluate(resultMap, dataMap);
+        return dataMap;
+    }
+
+    @Benchmark
+    public boolean storeRecord() {
+        final int i = index++;
+        return dataStore.storeRecord(context, dataStore.createSourceRecord(i), i);
+    }
+
+    /**
+     * Exposes the inherited {@code convertValue} to the benchmark.
+     */
+    static class BenchmarkDataStore extends ExampleDataStore {
+        Object convert(final String scriptType, final String template, final Map<String, Object> resultMap) {
+            return convertValue(scriptType, template, resultMap);
+        }
+    }
+}
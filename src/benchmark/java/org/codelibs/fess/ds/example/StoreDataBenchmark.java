@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks full {@link ExampleDataStore#storeData} runs.
+ *
+ * <p>
+ * One benchmark operation is one run of {@code data.size} records. The
+ * {@code records} counter reports the throughput in records per second; divide
+ * {@code gc.alloc.rate.norm} by {@code data.size} for the bytes allocated per
+ * record.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreDataBenchmark {
+
+    /** The number of records per run. */
+    @Param({ "1000", "100000" })
+    public int dataSize;
+
+    /** The number of scriptMap entries. */
+    @Param({ "3", "30" })
+    public int scriptSize;
+
+    /** The number of worker threads. */
+    @Param({ "1", "4" })
+    public int threadSize;
+
+    private ExampleDataStore dataStore;
+
+    private DataConfig dataConfig;
+
+    private Map<String, String> scriptMap;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.registerComponents();
+        dataStore = new ExampleDataStore();
+        dataConfig = new DataConfig();
+        scriptMap = BenchmarkSupport.newScriptMap(scriptSize);
+    }
+
+    @Benchmark
+    public long storeData(final RecordCounter counter) {
+        final DataStoreParams paramMap = BenchmarkSupport.newParams(5);
+        paramMap.put("data.size", Integer.toString(dataSize));
+        paramMap.put("thread.size", Integer.toString(threadSize));
+        final BenchmarkSupport.NoOpIndexUpdateCallback callback = new BenchmarkSupport.NoOpIndexUpdateCallback();
+        dataStore.storeData(dataConfig, callback, paramMap, scriptMap, new HashMap<>());
+        counter.records += callback.getDocumentSize();
+        return callback.getDocumentSize();
+    }
+
+    /**
+     * Counts the stored records so that JMH reports records per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RecordCounter {
+        /** The number of stored records. */
+        public long records;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+        }
+    }
+}
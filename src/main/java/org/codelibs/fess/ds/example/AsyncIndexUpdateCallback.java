@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.entity.DataStoreParams;
+
+/**
+ * Stores documents through an {@link IndexUpdateCallback} without blocking
+ * the thread that prepares them.
+ *
+ * <p>
+ * {@link IndexUpdateCallback#store(DataStoreParams, Map)} blocks until the
+ * index acknowledges the document. This adapter runs the store on a thread of
+ * its executor and returns a {@link CompletableFuture}, so the caller can
+ * read and evaluate the next records while the index works. At most
+ * {@code maxInFlight} stores are pending: {@link #store(DataStoreParams, Map)}
+ * blocks once the limit is reached, which pushes back on the source.
+ * </p>
+ *
+ * <p>
+ * The future completes with the time in nanoseconds the callback took, or
+ * exceptionally with what the callback threw. Actions attached to the future
+ * before it completes run on the store thread, and the store counts as
+ * pending until they return, so {@link #close()} also waits for them.
+ * </p>
+ */
+public class AsyncIndexUpdateCallback implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(AsyncIndexUpdateCallback.class);
+
+    private final IndexUpdateCallback callback;
+
+    private final ExecutorService executorService;
+
+    private final int maxInFlight;
+
+    private final Semaphore permits;
+
+    /**
+     * Constructor.
+     * @param callback The callback that stores the documents.
+     * @param executorService The executor that runs the stores; it is shut down by {@link #close()}.
+     * @param maxInFlight The maximum number of pending stores.
+     */
+    public AsyncIndexUpdateCallback(final IndexUpdateCallback callback, final ExecutorService executorService, final int maxInFlight) {
+        this.callback = callback;
+        this.executorService = executorService;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        permits = new Semaphore(this.maxInFlight);
+    }
+
+    /**
+     * Store a document asynchronously. Blocks while {@code maxInFlight} stores
+     * are pending.
+     * @param paramMap The parameters of the document; they must not be changed until the store completes.
+     * @param dataMap The document.
+     * @return The future that completes with the time in nanoseconds the callback took.
+     * @throws InterruptedException if interrupted while waiting for a pending store.
+     */
+    public CompletableFuture<Long> store(final DataStoreParams paramMap, final Map<String, Object> dataMap) throws InterruptedException {
+        permits.acquire();
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        try {
+            executorService.execute(() -> {
+                try {
+                    final long startTime = System.nanoTime();
+                    callback.store(paramMap, dataMap);
+                    future.complete(System.nanoTime() - startTime);
+                } catch (final Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * @return The number of pending stores.
+     */
+    public int getInFlightCount() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * @return The maximum number of pending stores.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Wait until the pending stores complete and shut down the executor.
+     */
+    @Override
+    public void close() {
+        try {
+            while (!permits.tryAcquire(maxInFlight, 1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for {} pending stores...", getInFlightCount());
+            }
+            permits.release(maxInFlight);
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for the pending stores.", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncIndexUpdateCallback [inFlight=" + getInFlightCount() + ", maxInFlight=" + maxInFlight + "]";
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Tracks and persists how far a run has got, so that the next run can resume
+ * after the last record that was completely handled.
+ *
+ * <p>
+ * Records may complete out of order (parallel workers, asynchronous stores), so the
+ * checkpoint position is the index of the first record that is not yet
+ * completed: every record before it has been stored or reported as failed.
+ * The position is written to a small properties file every {@code interval}
+ * records. The file is replaced with an atomic rename, so a crash never
+ * leaves a partially written checkpoint behind.
+ * </p>
+ */
+public class Checkpoint {
+
+    private static final Logger logger = LogManager.getLogger(Checkpoint.class);
+
+    /** The property name of the position in the checkpoint file. */
+    protected static final String POSITION_KEY = "position";
+
+    /** The number of completed positions kept before the bit set is compacted. */
+    protected static final int COMPACT_THRESHOLD = 1 << 16;
+
+    /** The checkpoint file. */
+    protected final Path file;
+
+    /** The number of records between two saves. */
+    protected final int interval;
+
+    /** The index of the first record that is not completed. */
+    protected int position;
+
+    /** The position that was saved last. */
+    protected int savedPosition;
+
+    /** The index that bit 0 of {@link #completed} stands for. */
+    protected int base;
+
+    /** The completed records at or after {@link #base}. */
+    protected BitSet completed = new BitSet();
+
+    /**
+     * Constructor.
+     * @param file The checkpoint file.
+     * @param interval The number of records between two saves.
+     */
+    public Checkpoint(final Path file, final int interval) {
+        this.file = file;
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * Create the checkpoint file path for a data configuration.
+     * @param dir The checkpoint directory.
+     * @param configId The data configuration id, or null.
+     * @return The checkpoint file.
+     */
+    public static Path getFile(final Path dir, final String configId) {
+        final String name = configId == null ? "default" : configId.replaceAll("[^A-Za-z0-9_.\\-]", "_");
+        return dir.resolve(name + ".checkpoint");
+    }
+
+    /**
+     * Load the saved position. A missing or unreadable file starts at 0.
+     * @return The index of the first record to process.
+     */
+    public synchronized int load() {
+        int loaded = 0;
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                final Properties props = new Properties();
+                props.load(reader);
+                loaded = Math.max(0, Integer.parseInt(props.getProperty(POSITION_KEY, "0").trim()));
+            } catch (final IOException | NumberFormatException e) {
+                logger.warn("Failed to read the checkpoint {}. Starting from the first record.", file, e);
+            }
+        }
+        position = loaded;
+        savedPosition = loaded;
+        base = loaded;
+        completed = new BitSet();
+        return loaded;
+    }
+
+    /**
+     * Mark a record as completed, and save the checkpoint when the position
+     * has moved {@code interval} records since the last save.
+     * @param index The index of the record.
+     */
+    public synchronized void complete(final int index) {
+        if (index < position) {
+            return;
+        }
+        completed.set(index - base);
+        while (completed.get(position - base)) {
+            position++;
+        }
+        if (position - base >= COMPACT_THRESHOLD) {
+            completed = completed.get(position - base, Math.max(position - base, completed.length()));
+            base = position;
+        }
+        if (position - savedPosition >= interval) {
+            save();
+        }
+    }
+
+    /**
+     * Write the current position to the checkpoint file.
+     */
+    public synchronized void save() {
+        final Properties props = new Properties();
+        props.setProperty(POSITION_KEY, Integer.toString(position));
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                props.store(out, null);
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            savedPosition = position;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Saved checkpoint {}: position={}", file, position);
+            }
+        } catch (final IOException e) {
+            logger.warn("Failed to save the checkpoint {}.", file, e);
+        }
+    }
+
+    /**
+     * Delete the checkpoint file so that the next run starts from the first record.
+     */
+    public synchronized void delete() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete the checkpoint {}.", file, e);
+        }
+    }
+
+    /**
+     * @return The index of the first record that is not completed.
+     */
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The checkpoint file.
+     */
+    public Path getFile() {
+        return file;
+    }
+}
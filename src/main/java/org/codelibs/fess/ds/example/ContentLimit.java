@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codelibs.fess.crawler.exception.MaxLengthExceededException;
+
+/**
+ * Caps the size of the text fields that the scripts of a run read.
+ *
+ * <p>
+ * A field longer than {@code maxSize} characters is either truncated to
+ * {@code maxSize} characters or rejected with a
+ * {@link MaxLengthExceededException}, which fails the record. The limit is
+ * applied when a field is read through the resultMap, so a {@link LazyField}
+ * is never read beyond the limit. A script engine that copies the resultMap
+ * reads every field; see {@link ResultMapView}.
+ * </p>
+ *
+ * <p>
+ * The truncated and rejected counts are the number of oversize fields of the
+ * records, not the number of reads: a field that several scripts of one
+ * record read is counted once.
+ * </p>
+ */
+public class ContentLimit {
+
+    /**
+     * What happens to a field that is longer than the limit.
+     */
+    public enum Action {
+        /** Keep the first {@code maxSize} characters. */
+        TRUNCATE,
+        /** Fail the record. */
+        REJECT;
+
+        /**
+         * Parse an action name, ignoring case.
+         * @param value The name, e.g. {@code truncate}.
+         * @return The action.
+         * @throws IllegalArgumentException if the name is unknown.
+         */
+        public static Action parse(final String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private final int maxSize;
+
+    private final Action action;
+
+    private final LongAdder truncatedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param maxSize The maximum number of characters of a field.
+     * @param action What happens to a field that is longer.
+     */
+    public ContentLimit(final int maxSize, final Action action) {
+        this.maxSize = Math.max(1, maxSize);
+        this.action = action;
+    }
+
+    /**
+     * Apply the limit to a field value.
+     * @param name The field name, used in the rejection message.
+     * @param value The value.
+     * @return The value, or its first {@code maxSize} characters.
+     * @throws MaxLengthExceededException if the value is too long and the action is {@link Action#REJECT}.
+     */
+    public String apply(final String name, final CharSequence value) {
+        return apply(name, value, true);
+    }
+
+    /**
+     * Apply the limit to a field value that may have been limited before.
+     * @param name The field name, used in the rejection message.
+     * @param value The value.
+     * @param count false if the field was already counted for the current record.
+     * @return The value, or its first {@code maxSize} characters.
+     * @throws MaxLengthExceededException if the value is too long and the action is {@link Action#REJECT}.
+     */
+    public String apply(final String name, final CharSequence value, final boolean count) {
+        if (!exceeds(value)) {
+            return value.toString();
+        }
+        if (action == Action.REJECT) {
+            if (count) {
+                rejectedCount.increment();
+            }
+            throw new MaxLengthExceededException("The field " + name + " is longer than " + maxSize + " characters.");
+        }
+        if (count) {
+            truncatedCount.increment();
+        }
+        // Do not split a surrogate pair.
+        final int end = Character.isHighSurrogate(value.charAt(maxSize - 1)) ? maxSize - 1 : maxSize;
+        return value.subSequence(0, end).toString();
+    }
+
+    /**
+     * @param value A field value.
+     * @return true if the value is longer than the limit.
+     */
+    public boolean exceeds(final CharSequence value) {
+        return value.length() > maxSize;
+    }
+
+    /**
+     * @return The maximum number of characters of a field.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return What happens to a field that is longer than the limit.
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return The number of truncated fields, counted once per field of a record.
+     */
+    public long getTruncatedCount() {
+        return truncatedCount.sum();
+    }
+
+    /**
+     * @return The number of rejected fields, counted once per field of a record.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ContentLimit [maxSize=" + maxSize + ", action=" + action + ", truncated=" + getTruncatedCount() + ", rejected="
+                + getRejectedCount() + "]";
+    }
+}
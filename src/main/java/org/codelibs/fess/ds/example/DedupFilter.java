@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+
+/**
+ * Detects source records whose key field was already seen in the same run.
+ *
+ * <p>
+ * The key of a record is reduced to a 64-bit hash, and the hashes of all seen
+ * keys are kept in an open-addressing set. The set takes 16 to 32 bytes per
+ * distinct key, far less than a set of the key strings. Two different keys
+ * are only confused if their 64-bit hashes collide; among n distinct keys the
+ * probability of any collision is about n<sup>2</sup>/2<sup>65</sup>, less
+ * than 3 in a million for ten million keys.
+ * </p>
+ *
+ * <p>
+ * The set holds at most {@code maxSize} keys. Once it is full, new keys are no
+ * longer remembered, so their duplicates are not detected, but a record is
+ * never dropped because the set is full. Records without a key are never
+ * duplicates. The filter is not thread-safe; it is used by the thread that
+ * reads the records.
+ * </p>
+ */
+public class DedupFilter {
+
+    /** The largest number of keys a filter can hold; its table then has 2^30 slots. */
+    public static final int MAX_SIZE = 1 << 29;
+
+    private static final long EMPTY = 0L;
+
+    private final String field;
+
+    private final int maxSize;
+
+    private long[] hashes;
+
+    private int size;
+
+    private long duplicateCount;
+
+    private long overflowCount;
+
+    /**
+     * Constructor.
+     * @param field The source field that identifies a record.
+     * @param maxSize The maximum number of distinct keys that are remembered, from 1 to {@link #MAX_SIZE}.
+     */
+    public DedupFilter(final String field, final int maxSize) {
+        if (maxSize < 1 || maxSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Invalid dedup filter size: " + maxSize);
+        }
+        this.field = field;
+        this.maxSize = maxSize;
+        hashes = new long[16];
+    }
+
+    /**
+     * Check a record and remember its key.
+     * @param source The source record.
+     * @return true if a record with the same key was already checked.
+     */
+    public boolean isDuplicate(final Map<String, Object> source) {
+        final Object key = source.get(field);
+        if (key == null) {
+            return false;
+        }
+        long hash = FingerprintStore.mix(FingerprintStore.hash(key.toString()));
+        if (hash == EMPTY) {
+            hash = 1L;
+        }
+        int slot = find(hashes, hash);
+        if (hashes[slot] == hash) {
+            duplicateCount++;
+            return true;
+        }
+        if (size >= maxSize) {
+            overflowCount++;
+            return false;
+        }
+        // The set is kept at most half full. As size stays below MAX_SIZE, the
+        // table never grows beyond 2^30 slots.
+        if (size + 1 > hashes.length >> 1) {
+            grow();
+            slot = find(hashes, hash);
+        }
+        hashes[slot] = hash;
+        size++;
+        return false;
+    }
+
+    private void grow() {
+        final long[] old = hashes;
+        hashes = new long[old.length << 1];
+        for (final long h : old) {
+            if (h != EMPTY) {
+                hashes[find(hashes, h)] = h;
+            }
+        }
+    }
+
+    private static int find(final long[] table, final long hash) {
+        final int mask = table.length - 1;
+        int slot = (int) hash & mask;
+        while (table[slot] != EMPTY && table[slot] != hash) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return The source field that identifies a record.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return The number of distinct keys remembered.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The maximum number of distinct keys that are remembered.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of duplicate records.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * @return The number of new keys that were not remembered because the set was full.
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * @return The memory used by the set, in bytes.
+     */
+    public long getMemorySize() {
+        return (long) hashes.length * Long.BYTES;
+    }
+
+    @Override
+    public String toString() {
+        return "DedupFilter [field=" + field + ", keys=" + size + ", duplicates=" + duplicateCount + ", overflow=" + overflowCount
+                + ", memory=" + getMemorySize() + "]";
+    }
+}
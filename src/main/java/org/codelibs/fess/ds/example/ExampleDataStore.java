@@ -15,16 +15,27 @@
  */
 package org.codelibs.fess.ds.example;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.codelibs.fess.Constants;
+import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.app.service.FailureUrlService;
 import org.codelibs.fess.crawler.exception.CrawlingAccessException;
 import org.codelibs.fess.crawler.exception.MultipleCrawlingAccessException;
@@ -32,6 +43,7 @@ import org.codelibs.fess.ds.AbstractDataStore;
 import org.codelibs.fess.ds.callback.IndexUpdateCallback;
 import org.codelibs.fess.entity.DataStoreParams;
 import org.codelibs.fess.exception.DataStoreCrawlingException;
+import org.codelibs.fess.exception.DataStoreException;
 import org.codelibs.fess.helper.CrawlerStatsHelper;
 import org.codelibs.fess.helper.CrawlerStatsHelper.StatsAction;
 import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
@@ -53,15 +65,21 @@ import org.codelibs.fess.util.ComponentUtil;
  * </p>
  * <ol>
  * <li>Acquire the raw source records from the external system (a database, an
- * API, a file, etc.). In this example the records are generated in memory by
+ * API, a file, etc.) through the {@link RecordSource} returned by
+ * {@link #openRecordSource(RunPlan)}. Records are pulled one at a time;
+ * in this example they are generated on demand by
  * {@link #createSourceRecord(int)}.</li>
  * <li>For each record, build a {@code resultMap} that merges the configured
  * parameters ({@code paramMap}) with the fields of the source record. The
  * admin-configured scripts ({@code scriptMap}) are evaluated against this
- * {@code resultMap}.</li>
- * <li>For each entry of the {@code scriptMap}, call the inherited
- * {@link #convertValue(String, String, Map)} to produce the value of an index
- * field, and put the non-null results into the {@code dataMap}.</li>
+ * {@code resultMap}. It is a read-only {@link ResultMapView} over a parameter
+ * snapshot taken once per run.</li>
+ * <li>For each entry of the {@code scriptMap}, produce the value of an index
+ * field and put the non-null results into the {@code dataMap}. The
+ * {@code scriptMap} is compiled once per run into a {@link ScriptPlan}, which
+ * gives the same results as the inherited
+ * {@link #convertValue(String, String, Map)} but resolves plain field
+ * references without the script engine.</li>
  * <li>Hand the {@code dataMap} to {@code callback.store(...)} so that Fess
  * indexes it as a document.</li>
  * </ol>
@@ -91,7 +109,113 @@ import org.codelibs.fess.util.ComponentUtil;
  * <li>{@code data.size} - Number of synthetic source records to generate
  * (default: 10).</li>
  * <li>{@code readInterval} - Interval in milliseconds to wait between records
- * (default: 0).</li>
+ * (default: 0). It is used as a fixed rate limit {@code 1000 / readInterval}
+ * when {@code rate.limit} is not set.</li>
+ * <li>{@code rate.limit} - Maximum number of records read per second
+ * (default: 0, unlimited).</li>
+ * <li>{@code rate.burst} - Number of records that may be read without waiting
+ * (default: one second of records, or 1 with {@code readInterval}).</li>
+ * <li>{@code rate.min} - Rate in records per second, greater than 0, below
+ * which the rate limit is never reduced (default: a tenth of the rate
+ * limit).</li>
+ * <li>{@code rate.latency.threshold} - Average store latency in milliseconds
+ * above which the rate is reduced. Applies with {@code rate.limit} (default:
+ * 0, disabled).</li>
+ * <li>{@code rate.error.threshold} - Ratio of failed records above which the
+ * rate is reduced. Applies with {@code rate.limit} (default: 0.1).</li>
+ * <li>{@code failure.batch.size} - Number of failed records written to the
+ * failure URL service at once by a background thread; 1 writes every failure
+ * synchronously (default: 1).</li>
+ * <li>{@code failure.batch.interval} - Time in milliseconds after which queued
+ * failures are written (default: 1000).</li>
+ * <li>{@code failure.abort.rate} - Ratio of failed records in a window above
+ * which the run is aborted (default: 0, disabled).</li>
+ * <li>{@code failure.abort.window} - Number of records per window of
+ * {@code failure.abort.rate} (default: 100).</li>
+ * <li>{@code dedup.field} - Source field that identifies a record, such as
+ * {@code url}. When set, a record whose value was already seen in the run is
+ * dropped before script evaluation (default: none).</li>
+ * <li>{@code dedup.max.size} - Maximum number of distinct values of the dedup
+ * field that are remembered, at 16 to 32 bytes each. Duplicates of values seen
+ * after the limit are not detected (default: 1000000).</li>
+ * <li>{@code pipeline.depth} - Number of records that may wait between the
+ * read, transform and store stages. When set in sequential mode, the three
+ * stages run on their own threads and overlap (default: 0, disabled).</li>
+ * <li>{@code script.cache.<field>} - Marks the expression of the index field
+ * {@code <field>} as deterministic: the value is the comma-separated source
+ * fields it depends on, and the expression is evaluated once per distinct
+ * input per run (default: none).</li>
+ * <li>{@code script.cache.size} - Maximum number of cached expression values
+ * (default: 10000).</li>
+ * <li>{@code content.max.size} - Maximum number of characters of a text
+ * field that a script reads (default: 0, unlimited).</li>
+ * <li>{@code content.oversize} - What happens to a longer field:
+ * {@code truncate} keeps the first {@code content.max.size} characters,
+ * {@code reject} fails the record (default: truncate).</li>
+ * <li>{@code async.store.size} - Number of documents that may be stored at
+ * the same time while the next records are prepared. Applies when documents
+ * are stored without pipeline and spill buffer (default: 0, disabled).</li>
+ * <li>{@code spill.dir} - Directory of the spill buffer. When set, documents
+ * are stored by their own thread and wait in memory, then in memory-mapped
+ * segment files, while the index is slow, so the source is read at its own
+ * rate. Documents left on disk by a crashed run are stored by the next run.
+ * It takes precedence over {@code pipeline.depth} and
+ * {@code async.store.size} (default: none).</li>
+ * <li>{@code spill.memory.size} - Number of documents kept in memory before
+ * documents are written to disk (default: 1000).</li>
+ * <li>{@code spill.segment.size} - Size in bytes of a segment file (default:
+ * 16777216).</li>
+ * <li>{@code source.latency} - Simulated latency in milliseconds of reading a
+ * generated record (default: 0).</li>
+ * <li>{@code load.field.count} - Number of extra text fields {@code field0},
+ * {@code field1}, ... of a generated record. Setting any of the {@code load.*}
+ * record parameters switches to the {@link LoadGenerator} (default: 0).</li>
+ * <li>{@code load.body.size} - Mean body size in characters of a generated
+ * record (default: 1000).</li>
+ * <li>{@code load.body.distribution} - Distribution of the body sizes:
+ * {@code fixed}, {@code uniform} or {@code lognormal} (default: fixed).</li>
+ * <li>{@code load.unicode} - Weighted scripts of the generated text, e.g.
+ * {@code ascii:90,cjk:5,emoji:5} (default: ascii).</li>
+ * <li>{@code load.seed} - Random seed of the generated records; the same seed
+ * produces the same records (default: a new seed per run, which is
+ * logged).</li>
+ * <li>{@code load.duration} - Time in seconds after which no further records
+ * are generated. Without {@code data.size}, records are generated until then
+ * (default: 0, no limit).</li>
+ * <li>{@code shard.count} - Number of shards the records are split into, one
+ * per crawler node or data configuration. Give every shard its own data
+ * configuration, or turn off the deletion of old documents after the crawl:
+ * a shard does not store the documents of the other shards, so the cleanup
+ * of a data configuration that is shared by several nodes deletes them
+ * (default: 1, no sharding).</li>
+ * <li>{@code shard.index} - Index of the shard crawled by this configuration,
+ * from 0 to {@code shard.count - 1} (default: 0).</li>
+ * <li>{@code shard.field} - Source field whose hash selects the shard of a
+ * record. When not set, records are assigned by their position (default:
+ * none).</li>
+ * <li>{@code thread.size} - Number of worker threads that prepare, evaluate and
+ * store records in parallel (default: 1, i.e. sequential).</li>
+ * <li>{@code queue.size} - Number of records that may wait for a worker in
+ * parallel mode before the crawler thread blocks (default: 10 per thread).</li>
+ * <li>{@code virtual.thread} - Run the workers on virtual threads (default:
+ * false).</li>
+ * <li>{@code checkpoint.dir} - Directory of the checkpoint files. When set, an
+ * unfinished run is resumed by the next run (default: none).</li>
+ * <li>{@code checkpoint.interval} - Number of records between two checkpoint
+ * saves (default: 1000).</li>
+ * <li>{@code incremental.dir} - Directory of the fingerprint files. When set,
+ * records that are unchanged since they were last stored are skipped, until
+ * the scriptMap changes. Skipped records are not stored again in the crawl
+ * session, so the deletion of the old documents of the data configuration
+ * after the crawl must be turned off (default: none).</li>
+ * <li>{@code incremental.id.field} - Source field that identifies a record
+ * (default: id).</li>
+ * <li>{@code incremental.timestamp.field} - Source field with the modification
+ * timestamp; a newer timestamp marks a record as changed (default:
+ * none).</li>
+ * <li>{@code incremental.ignore.fields} - Comma-separated source fields that
+ * are not part of the fingerprint, such as volatile timestamps (default:
+ * created, the time a generated record was generated).</li>
  * </ul>
  */
 public class ExampleDataStore extends AbstractDataStore {
@@ -104,6 +228,196 @@ public class ExampleDataStore extends AbstractDataStore {
     /** The default number of records to generate. */
     protected static final int DEFAULT_DATA_SIZE = 10;
 
+    /** The parameter name for the interval between records, read by {@link AbstractDataStore}. */
+    protected static final String READ_INTERVAL_PARAM = "readInterval";
+
+    /** The parameter name for the number of worker threads. */
+    protected static final String THREAD_SIZE_PARAM = "thread.size";
+
+    /** The default number of worker threads (sequential processing). */
+    protected static final int DEFAULT_THREAD_SIZE = 1;
+
+    /** The parameter name for the number of records waiting for a worker. */
+    protected static final String QUEUE_SIZE_PARAM = "queue.size";
+
+    /** The default queue size per worker thread. */
+    protected static final int DEFAULT_QUEUE_SIZE_FACTOR = 10;
+
+    /** The parameter name to run the workers on virtual threads. */
+    protected static final String VIRTUAL_THREAD_PARAM = "virtual.thread";
+
+    /** The parameter name for the directory of the checkpoint files. */
+    protected static final String CHECKPOINT_DIR_PARAM = "checkpoint.dir";
+
+    /** The parameter name for the number of records between two checkpoint saves. */
+    protected static final String CHECKPOINT_INTERVAL_PARAM = "checkpoint.interval";
+
+    /** The default number of records between two checkpoint saves. */
+    protected static final long DEFAULT_CHECKPOINT_INTERVAL = 1000L;
+
+    /** The parameter name for the directory of the fingerprint files (incremental mode). */
+    protected static final String INCREMENTAL_DIR_PARAM = "incremental.dir";
+
+    /** The parameter name for the source field that identifies a record. */
+    protected static final String INCREMENTAL_ID_FIELD_PARAM = "incremental.id.field";
+
+    /** The default source field that identifies a record. */
+    protected static final String DEFAULT_INCREMENTAL_ID_FIELD = "id";
+
+    /** The parameter name for the source field that holds the modification timestamp. */
+    protected static final String INCREMENTAL_TIMESTAMP_FIELD_PARAM = "incremental.timestamp.field";
+
+    /** The parameter name for the source fields that are not part of the fingerprint. */
+    protected static final String INCREMENTAL_IGNORE_FIELDS_PARAM = "incremental.ignore.fields";
+
+    /** The default source fields that are not part of the fingerprint: the generated records get a new created time in every run. */
+    protected static final String DEFAULT_INCREMENTAL_IGNORE_FIELDS = "created";
+
+    /** The parameter name for the maximum number of records read per second. */
+    protected static final String RATE_LIMIT_PARAM = "rate.limit";
+
+    /** The parameter name for the number of records that may be read without waiting. */
+    protected static final String RATE_BURST_PARAM = "rate.burst";
+
+    /** The parameter name for the minimum rate in records per second. */
+    protected static final String RATE_MIN_PARAM = "rate.min";
+
+    /** The parameter name for the store latency in milliseconds above which the rate is reduced. */
+    protected static final String RATE_LATENCY_THRESHOLD_PARAM = "rate.latency.threshold";
+
+    /** The parameter name for the error ratio above which the rate is reduced. */
+    protected static final String RATE_ERROR_THRESHOLD_PARAM = "rate.error.threshold";
+
+    /** The default error ratio above which the rate is reduced. */
+    protected static final double DEFAULT_RATE_ERROR_THRESHOLD = 0.1;
+
+    /** The parameter name for the number of failures written at once. */
+    protected static final String FAILURE_BATCH_SIZE_PARAM = "failure.batch.size";
+
+    /** The default number of failures written at once. */
+    protected static final long DEFAULT_FAILURE_BATCH_SIZE = 1L;
+
+    /** The parameter name for the maximum time in milliseconds a failure waits to be written. */
+    protected static final String FAILURE_BATCH_INTERVAL_PARAM = "failure.batch.interval";
+
+    /** The default maximum time in milliseconds a failure waits to be written. */
+    protected static final long DEFAULT_FAILURE_BATCH_INTERVAL = 1000L;
+
+    /** The parameter name for the failure ratio above which the run is aborted. */
+    protected static final String FAILURE_ABORT_RATE_PARAM = "failure.abort.rate";
+
+    /** The parameter name for the number of records per failure rate window. */
+    protected static final String FAILURE_ABORT_WINDOW_PARAM = "failure.abort.window";
+
+    /** The default number of records per failure rate window. */
+    protected static final long DEFAULT_FAILURE_ABORT_WINDOW = 100L;
+
+    /** The parameter name for the source field whose duplicates are dropped. */
+    protected static final String DEDUP_FIELD_PARAM = "dedup.field";
+
+    /** The parameter name for the maximum number of distinct dedup keys that are remembered. */
+    protected static final String DEDUP_MAX_SIZE_PARAM = "dedup.max.size";
+
+    /** The default maximum number of distinct dedup keys that are remembered. */
+    protected static final long DEFAULT_DEDUP_MAX_SIZE = 1_000_000L;
+
+    /** The stats action of a record dropped as a duplicate. */
+    protected static final String DUPLICATE_ACTION = "duplicate";
+
+    /** The parameter name for the number of records waiting between two pipeline stages. */
+    protected static final String PIPELINE_DEPTH_PARAM = "pipeline.depth";
+
+    /** The largest pipeline depth. Each stage queue holds the records of this many slots. */
+    protected static final int MAX_PIPELINE_DEPTH = 1 << 20;
+
+    /** The parameter name prefix that marks the expression of an index field as deterministic. */
+    protected static final String SCRIPT_CACHE_PREFIX = "script.cache.";
+
+    /** The parameter name for the maximum number of cached expression values. */
+    protected static final String SCRIPT_CACHE_SIZE_PARAM = "script.cache.size";
+
+    /** The default maximum number of cached expression values. */
+    protected static final long DEFAULT_SCRIPT_CACHE_SIZE = 10000L;
+
+    /** The parameter name for the maximum number of characters of a text field. */
+    protected static final String CONTENT_MAX_SIZE_PARAM = "content.max.size";
+
+    /** The parameter name for what happens to a text field that is longer than the maximum. */
+    protected static final String CONTENT_OVERSIZE_PARAM = "content.oversize";
+
+    /** The parameter name for the maximum number of pending asynchronous stores. */
+    protected static final String ASYNC_STORE_SIZE_PARAM = "async.store.size";
+
+    /** The parameter name for the directory of the spill buffer. */
+    protected static final String SPILL_DIR_PARAM = "spill.dir";
+
+    /** The parameter name for the number of documents kept in memory before they are spilled to disk. */
+    protected static final String SPILL_MEMORY_SIZE_PARAM = "spill.memory.size";
+
+    /** The default number of documents kept in memory before they are spilled to disk. */
+    protected static final long DEFAULT_SPILL_MEMORY_SIZE = 1000L;
+
+    /** The parameter name for the size in bytes of a spill segment file. */
+    protected static final String SPILL_SEGMENT_SIZE_PARAM = "spill.segment.size";
+
+    /** The default size in bytes of a spill segment file. */
+    protected static final long DEFAULT_SPILL_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    /** The parameter name for the simulated latency in milliseconds of reading a generated record. */
+    protected static final String SOURCE_LATENCY_PARAM = "source.latency";
+
+    /** The parameter name for the number of extra fields of a generated record. */
+    protected static final String LOAD_FIELD_COUNT_PARAM = "load.field.count";
+
+    /** The parameter name for the mean body size of a generated record. */
+    protected static final String LOAD_BODY_SIZE_PARAM = "load.body.size";
+
+    /** The default mean body size of a generated record. */
+    protected static final long DEFAULT_LOAD_BODY_SIZE = 1000L;
+
+    /** The parameter name for the distribution of the body sizes. */
+    protected static final String LOAD_BODY_DISTRIBUTION_PARAM = "load.body.distribution";
+
+    /** The parameter name for the weighted scripts of the generated text. */
+    protected static final String LOAD_UNICODE_PARAM = "load.unicode";
+
+    /** The default scripts of the generated text. */
+    protected static final String DEFAULT_LOAD_UNICODE = "ascii";
+
+    /** The parameter name for the random seed of the generated records. */
+    protected static final String LOAD_SEED_PARAM = "load.seed";
+
+    /** The parameter name for the time in seconds after which no further records are generated. */
+    protected static final String LOAD_DURATION_PARAM = "load.duration";
+
+    /** The parameter name for the number of shards. */
+    protected static final String SHARD_COUNT_PARAM = "shard.count";
+
+    /** The parameter name for the index of the shard of this configuration. */
+    protected static final String SHARD_INDEX_PARAM = "shard.index";
+
+    /** The parameter name for the source field whose hash selects the shard of a record. */
+    protected static final String SHARD_FIELD_PARAM = "shard.field";
+
+    /** The schema of the generated source records. */
+    protected static final RecordSchema SOURCE_SCHEMA = new RecordSchema("id", "title", "body", "url", "created");
+
+    private static final int ID_SLOT = SOURCE_SCHEMA.indexOf("id");
+
+    private static final int TITLE_SLOT = SOURCE_SCHEMA.indexOf("title");
+
+    private static final int BODY_SLOT = SOURCE_SCHEMA.indexOf("body");
+
+    private static final int URL_SLOT = SOURCE_SCHEMA.indexOf("url");
+
+    private static final int CREATED_SLOT = SOURCE_SCHEMA.indexOf("created");
+
+    /** The stats action of a record skipped because it is unchanged. */
+    protected static final String UNCHANGED_ACTION = "unchanged";
+
+    /** The metrics of the current or most recent run. */
+    protected volatile PipelineMetrics metrics;
+
     /**
      * Default constructor.
      */
@@ -116,122 +430,1046 @@ public class ExampleDataStore extends AbstractDataStore {
         return this.getClass().getSimpleName();
     }
 
+    /**
+     * Get the metrics of the current or most recent run, for example to expose
+     * them to a monitoring system. The metrics are updated while a run is in
+     * progress.
+     * @return The metrics, or null if no run has started yet.
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     protected void storeData(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
             final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
-        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        // The whole configuration is parsed and checked once before anything is
+        // read, so that a misconfigured run fails at once with every problem
+        // listed instead of failing every record. The factories below take the
+        // parsed values from the plan.
+        final RunPlan plan = newRunPlan(paramMap, scriptMap);
 
-        final long readInterval = getReadInterval(paramMap);
+        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
 
         // CUSTOMIZE: The script type controls how scriptMap templates are evaluated
         // (e.g. Groovy). It is normally taken from the "script_type" parameter.
         final String scriptType = getScriptType(paramMap);
 
-        // CUSTOMIZE: Acquire the raw source records from the external system here.
-        // In a real data store you would, for example, open a connection, run a
-        // query, or read a file. This example simply generates synthetic records.
-        final int dataSize = getDataSize(paramMap);
+        // The scriptMap is compiled once per run: field references become direct
+        // lookups and only real expressions are passed to the script engine, which
+        // is resolved here. Expressions marked as deterministic are cached for the run.
+        final ScriptPlan scriptPlan = newScriptPlan(scriptType, scriptMap, plan);
+        try {
+            scriptPlan.prepare();
+        } catch (final RuntimeException e) {
+            throw new DataStoreException("The script type " + scriptType + " of " + getName() + " is not available.", e);
+        }
 
-        boolean running = true;
-        for (int i = 0; i < dataSize && running; i++) {
-            final StatsKeyObject statsKey = new StatsKeyObject(dataConfig.getId() + "#" + i);
-            paramMap.put(Constants.CRAWLER_STATS_KEY, statsKey);
-            final Map<String, Object> dataMap = new HashMap<>(defaultDataMap);
-            try {
-                crawlerStatsHelper.begin(statsKey);
-
-                // CUSTOMIZE: Build one raw source record. Replace this with the data
-                // you read from the external system.
-                final Map<String, Object> source = createSourceRecord(i);
-
-                // Build the resultMap that the scripts are evaluated against. It
-                // contains the configured parameters plus the source record fields.
-                final Map<String, Object> resultMap = new LinkedHashMap<>(paramMap.asMap());
-                resultMap.putAll(source);
-
-                crawlerStatsHelper.record(statsKey, StatsAction.PREPARED);
-
-                // Evaluate each admin-configured script against the resultMap and put
-                // the produced value into the dataMap as an index field. This is the
-                // central concept of a Fess data store: the field mapping is defined
-                // by the administrator via the scriptMap, not hard-coded here.
-                for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
-                    final Object convertValue = convertValue(scriptType, entry.getValue(), resultMap);
-                    if (convertValue != null) {
-                        dataMap.put(entry.getKey(), convertValue);
+        // The parameters do not change during a run, so they are copied once and
+        // shared by the resultMap of every record.
+        final Map<String, Object> paramSnapshot = ResultMapView.snapshot(paramMap);
+
+        final RunContext context = new RunContext(dataConfig, callback, crawlerStatsHelper, paramSnapshot, scriptPlan, defaultDataMap);
+        metrics = context.getMetrics();
+
+        // Optional content limit: text fields that the scripts read are truncated
+        // or rejected above content.max.size characters, and lazy fields are
+        // never read beyond it.
+        final ContentLimit contentLimit = newContentLimit(plan);
+        context.setContentLimit(contentLimit);
+
+        // Optional sharding: this run only handles its own slice of the records.
+        // The checkpoint and fingerprints are kept per shard.
+        final Shard shard = newShard(plan);
+        final String stateId = shard != null ? dataConfig.getId() + "." + shard.getName() : dataConfig.getId();
+        if (shard != null) {
+            logger.info("Crawling {}", shard);
+        }
+
+        // Optional checkpoint: a run resumes after the last record that was
+        // completely handled by the previous, unfinished run.
+        final Checkpoint checkpoint = newCheckpoint(stateId, plan);
+        context.setCheckpoint(checkpoint);
+        final int startPosition = checkpoint != null ? checkpoint.load() : 0;
+        if (startPosition > 0) {
+            logger.info("Resuming from record:{} with checkpoint {}", startPosition, checkpoint.getFile());
+        }
+
+        // Optional incremental mode: records whose fingerprint has not changed
+        // since they were last stored are skipped before the scripts are evaluated.
+        // Skipped records keep the documents of the session that stored them, so
+        // Fess must not delete the old documents of this configuration.
+        final FingerprintStore fingerprintStore = newFingerprintStore(stateId, plan, scriptMap);
+        if (fingerprintStore != null) {
+            fingerprintStore.load();
+            context.setFingerprintStore(fingerprintStore);
+            logger.info("Skipping unchanged records with {} fingerprints from {}. Unchanged records are not stored again,"
+                    + " so the deletion of old documents must be turned off for this configuration.", fingerprintStore.size(),
+                    fingerprintStore.getFile());
+        }
+
+        // Optional dedup stage: records whose key was already seen in this run are
+        // dropped right after they are read.
+        final DedupFilter dedupFilter = newDedupFilter(plan);
+
+        // Optional rate limit: a token bucket replaces the fixed readInterval pause
+        // and slows down when the index responds slowly or records fail.
+        final RateLimiter rateLimiter = newRateLimiter(plan);
+        context.setRateLimiter(rateLimiter);
+
+        // Optional spill buffer: documents are stored by their own thread and wait
+        // in memory, then on disk, while the index is slow, so reading never waits
+        // for the index. Documents left on disk by an earlier run are stored first.
+        final SpillBuffer spillBuffer = newSpillBuffer(context, stateId, plan);
+        context.setSpillBuffer(spillBuffer);
+
+        // Failures are written to the FailureUrlService in batches by a background
+        // thread, and the run is aborted when too many records fail.
+        final FailureSink failureSink = newFailureSink(dataConfig, plan);
+        context.setFailureSink(failureSink);
+
+        // Parallel mode: records are prepared, evaluated and stored by a worker
+        // pool. The semaphore bounds the number of records that are queued or in
+        // progress, so the crawler thread blocks instead of reading records without
+        // limit. In sequential mode there is no executor and the crawler thread
+        // stores every record itself.
+        final int threadSize = plan.getInt(THREAD_SIZE_PARAM, DEFAULT_THREAD_SIZE);
+        final ExecutorService executorService = threadSize > 1 ? newExecutorService(plan, threadSize) : null;
+        final Semaphore permits = new Semaphore(threadSize + plan.getInt(QUEUE_SIZE_PARAM, threadSize * DEFAULT_QUEUE_SIZE_FACTOR));
+
+        // Pipelined mode: in sequential mode, reading, transforming and storing may
+        // run on their own threads so that the next record is read while the
+        // previous one is stored. The records are still stored in source order.
+        final RecordPipeline pipeline = executorService == null && spillBuffer == null ? newRecordPipeline(context, plan) : null;
+        if (pipeline != null) {
+            context.setPipeline(pipeline);
+            pipeline.start(getName());
+        }
+
+        // Asynchronous store: without a pipeline or spill buffer, the callback runs
+        // on its own threads and the stats of a record are finished when its store
+        // completes. Reading blocks once async.store.size stores are pending.
+        final AsyncIndexUpdateCallback asyncCallback =
+                pipeline == null && spillBuffer == null ? newAsyncIndexUpdateCallback(context, plan) : null;
+        context.setAsyncCallback(asyncCallback);
+
+        if (spillBuffer != null) {
+            spillBuffer.start(getName());
+        }
+
+        // CUSTOMIZE: Acquire the raw source records from the external system in
+        // openRecordSource. The records are pulled one at a time, so memory use does
+        // not depend on the number of records.
+        try (RecordSource recordSource = openRecordSource(plan)) {
+            if (startPosition > 0) {
+                skipRecords(context, recordSource, 0, startPosition);
+            }
+            for (int i = startPosition; context.isRunning() && recordSource.hasNext(); i++) {
+                // Position-based sharding skips the records of the other shards
+                // without reading them. They count as handled for the checkpoint.
+                if (shard != null && shard.isPositionBased() && shard.getGap(i) > 0) {
+                    final int skipped = skipRecords(context, recordSource, i, shard.getGap(i));
+                    for (int j = 0; j < skipped; j++) {
+                        context.complete(i + j);
+                    }
+                    if (skipped > 0) {
+                        i += skipped - 1;
+                        continue;
+                    }
+                    if (!context.isRunning()) {
+                        break;
                     }
+                    // A source that skipped nothing is read instead, and the
+                    // record is rejected by the shard below.
                 }
 
-                crawlerStatsHelper.record(statsKey, StatsAction.EVALUATED);
+                final Map<String, Object> source;
+                try {
+                    final long readTime = System.nanoTime();
+                    source = recordSource.next();
+                    context.getMetrics().read(System.nanoTime() - readTime);
+                } catch (final Throwable t) {
+                    if (!handleReadException(context, i, t)) {
+                        context.stop();
+                    }
+                    continue;
+                }
 
-                if (dataMap.get("url") instanceof final String statsUrl) {
-                    statsKey.setUrl(statsUrl);
+                if (shard != null && !shard.accepts(i, source)) {
+                    context.complete(i);
+                    continue;
                 }
 
-                callback.store(paramMap, dataMap);
-                crawlerStatsHelper.record(statsKey, StatsAction.FINISHED);
-            } catch (final CrawlingAccessException e) {
-                logger.warn("Crawling Access Exception at : {}", dataMap, e);
-
-                Throwable target = e;
-                if (target instanceof final MultipleCrawlingAccessException ex) {
-                    final Throwable[] causes = ex.getCauses();
-                    if (causes.length > 0) {
-                        target = causes[causes.length - 1];
-                    }
+                if (dedupFilter != null && dedupFilter.isDuplicate(source)) {
+                    handleDuplicate(context, i);
+                    continue;
                 }
 
-                String errorName;
-                final Throwable cause = target.getCause();
-                if (cause != null) {
-                    errorName = cause.getClass().getCanonicalName();
-                } else {
-                    errorName = target.getClass().getCanonicalName();
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
                 }
 
-                String url;
-                if (target instanceof final DataStoreCrawlingException dce) {
-                    url = dce.getUrl();
-                    if (dce.aborted()) {
-                        running = false;
+                if (pipeline != null) {
+                    pipeline.read(i, source);
+                } else if (executorService == null) {
+                    if (!storeRecord(context, source, i)) {
+                        context.stop();
                     }
                 } else {
-                    url = "record:" + i;
+                    permits.acquire();
+                    if (!context.isRunning()) {
+                        permits.release();
+                        break;
+                    }
+
+                    final int index = i;
+                    executorService.execute(() -> {
+                        try {
+                            if (context.isRunning() && !storeRecord(context, source, index)) {
+                                context.stop();
+                            }
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for a worker or the rate limit.", e);
+            context.stop();
+            Thread.currentThread().interrupt();
+        } finally {
+            if (executorService != null) {
+                shutdown(executorService);
+            }
+            if (pipeline != null) {
+                pipeline.finish();
+            }
+            if (spillBuffer != null) {
+                spillBuffer.finish();
+            }
+            if (asyncCallback != null) {
+                asyncCallback.close();
+            }
+            failureSink.close();
+            // The worker and stage threads end with the run; the crawler thread does not.
+            context.removeResultMap();
+            context.getMetrics().finish();
+        }
+
+        if (checkpoint != null) {
+            if (context.isRunning()) {
+                // All records were handled, so the next run starts from the beginning.
+                checkpoint.delete();
+            } else {
+                checkpoint.save();
+                logger.info("Saved checkpoint {} at record:{}", checkpoint.getFile(), checkpoint.getPosition());
+            }
+        }
+
+        if (fingerprintStore != null) {
+            fingerprintStore.save();
+            logger.info("Skipped {} unchanged records. Saved {} fingerprints to {}", fingerprintStore.getUnchangedCount(),
+                    fingerprintStore.size(), fingerprintStore.getFile());
+        }
+
+        if (rateLimiter != null) {
+            logger.info("Finished with {}", rateLimiter);
+        }
+
+        if (dedupFilter != null) {
+            logger.info("Dropped duplicate records: {}", dedupFilter);
+            if (dedupFilter.getOverflowCount() > 0) {
+                logger.warn("{} keys were not remembered because {} reached {}. Their duplicates were not detected.",
+                        dedupFilter.getOverflowCount(), DEDUP_MAX_SIZE_PARAM, dedupFilter.getMaxSize());
+            }
+        }
+
+        if (contentLimit != null && contentLimit.getTruncatedCount() + contentLimit.getRejectedCount() > 0) {
+            logger.info("Limited oversize fields: {}", contentLimit);
+        }
+
+        if (failureSink.getFailureCount() > 0) {
+            logger.info("Stored failures: {}", failureSink);
+        }
+
+        if (spillBuffer != null) {
+            logger.info("Finished spilling documents: {}", spillBuffer);
+        }
+
+        logger.info("Pipeline metrics: {}", context.getMetrics());
+        logger.info("Evaluated scriptMap: {}", scriptPlan);
+    }
+
+    /**
+     * Prepare, evaluate and store a single source record.
+     *
+     * <p>
+     * This method runs on the crawler thread in sequential mode and on a worker
+     * thread in parallel mode, so it must not touch state shared between records
+     * other than the run context. The stats key of the record is passed to
+     * the callback in the {@link RecordParams} of the record, never in the
+     * shared parameters of the run.
+     * </p>
+     *
+     * @param context The run context.
+     * @param source The source record.
+     * @param index The index of the record.
+     * @return false if the crawl was aborted by this record, otherwise true.
+     */
+    protected boolean storeRecord(final RunContext context, final Map<String, Object> source, final int index) {
+        final CrawlerStatsHelper crawlerStatsHelper = context.getCrawlerStatsHelper();
+        final FingerprintStore fingerprintStore = context.getFingerprintStore();
+        final PipelineMetrics metrics = context.getMetrics();
+        final long startTime = System.nanoTime();
+        boolean running = true;
+        boolean deferred = false;
+        final StatsKeyObject statsKey = context.newStatsKey(index);
+        final RecordParams paramMap = context.newRecordParams(statsKey);
+        // The dataMap belongs to the callback once it is stored, so it is never
+        // reused; see RunContext for the ownership of the per-record structures.
+        final Map<String, Object> dataMap = context.newDataMap();
+        try {
+            crawlerStatsHelper.begin(statsKey);
+
+            // In incremental mode an unchanged record is done here: it needs
+            // neither script evaluation nor indexing.
+            final FingerprintStore.Fingerprint fingerprint = fingerprintStore != null ? fingerprintStore.fingerprint(source) : null;
+            if (fingerprint != null && fingerprintStore.isUnchanged(fingerprint)) {
+                crawlerStatsHelper.record(statsKey, UNCHANGED_ACTION);
+                metrics.skipped();
+                return running;
+            }
+
+            // Build the resultMap that the scripts are evaluated against. It
+            // contains the configured parameters plus the source record fields,
+            // layered as a read-only view that the thread reuses for every record.
+            final Map<String, Object> resultMap = context.getResultMap(statsKey, source);
+
+            crawlerStatsHelper.record(statsKey, StatsAction.PREPARED);
+            final long evaluateTime = System.nanoTime();
+            metrics.record(PipelineMetrics.Stage.PREPARE, evaluateTime - startTime);
+
+            // Evaluate each admin-configured script against the resultMap and put
+            // the produced value into the dataMap as an index field. This is the
+            // central concept of a Fess data store: the field mapping is defined
+            // by the administrator via the scriptMap, not hard-coded here. The
+            // plan produces the same values as convertValue for each entry.
+            context.getScriptPlan().evaluate(resultMap, dataMap);
+
+            crawlerStatsHelper.record(statsKey, StatsAction.EVALUATED);
+            metrics.record(PipelineMetrics.Stage.EVALUATE, System.nanoTime() - evaluateTime);
+
+            if (dataMap.get("url") instanceof final String statsUrl) {
+                statsKey.setUrl(statsUrl);
+            }
+
+            final RecordPipeline pipeline = context.getPipeline();
+            if (pipeline != null) {
+                // The sink stage now owns the stats key, see storeEntry.
+                pipeline.handOff(new PreparedDocument(index, statsKey, paramMap, dataMap, fingerprint));
+                deferred = true;
+            } else if (context.getSpillBuffer() != null) {
+                // The store thread of the spill buffer now owns the stats key, see
+                // newSpillBuffer. Adding the document never waits for the index.
+                context.getSpillBuffer().put(new PreparedDocument(index, statsKey, paramMap, dataMap, fingerprint));
+                deferred = true;
+            } else if (context.getAsyncCallback() != null) {
+                // The store thread now owns the stats key, see completeStore.
+                final PreparedDocument entry = new PreparedDocument(index, statsKey, paramMap, dataMap, fingerprint);
+                context.getAsyncCallback().store(paramMap, dataMap)
+                        .whenComplete((storeNanos, t) -> completeStore(context, entry, storeNanos, t));
+                deferred = true;
+            } else {
+                final long storeTime = System.nanoTime();
+                context.getCallback().store(paramMap, dataMap);
+                context.stored(System.nanoTime() - storeTime, PreparedDocument.estimateSize(dataMap));
+                crawlerStatsHelper.record(statsKey, StatsAction.FINISHED);
+                if (fingerprint != null) {
+                    fingerprintStore.update(fingerprint);
                 }
-                final FailureUrlService failureUrlService = ComponentUtil.getComponent(FailureUrlService.class);
-                failureUrlService.store(dataConfig, errorName, url, target);
-                crawlerStatsHelper.record(statsKey, StatsAction.ACCESS_EXCEPTION);
-            } catch (final Throwable t) {
-                logger.warn("Crawling Access Exception at : {}", dataMap, t);
-                final String url = "record:" + i;
-                final FailureUrlService failureUrlService = ComponentUtil.getComponent(FailureUrlService.class);
-                failureUrlService.store(dataConfig, t.getClass().getCanonicalName(), url, t);
-                crawlerStatsHelper.record(statsKey, StatsAction.EXCEPTION);
-            } finally {
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for a pending store.", e);
+            running = false;
+            Thread.currentThread().interrupt();
+        } catch (final Throwable t) {
+            running = handleException(context, statsKey, index, dataMap, t);
+        } finally {
+            context.releaseResultMap();
+            if (!deferred) {
                 crawlerStatsHelper.done(statsKey);
+                if (running) {
+                    context.complete(index);
+                }
             }
+        }
+        return running;
+    }
 
-            if (readInterval > 0 && running) {
-                sleep(readInterval);
+    /**
+     * Store a prepared document through the callback on the thread that took
+     * it over from the thread that prepared it.
+     * @param context The run context.
+     * @param entry The prepared document.
+     * @return false if the crawl was aborted by the document, otherwise true.
+     */
+    protected boolean storeDocument(final RunContext context, final PreparedDocument entry) {
+        final CrawlerStatsHelper crawlerStatsHelper = context.getCrawlerStatsHelper();
+        final StatsKeyObject statsKey = entry.getStatsKey();
+        boolean running = true;
+        try {
+            final long storeTime = System.nanoTime();
+            context.getCallback().store(entry.getParamMap(), entry.getDataMap());
+            context.stored(System.nanoTime() - storeTime, entry.getSize());
+            crawlerStatsHelper.record(statsKey, StatsAction.FINISHED);
+            if (entry.getFingerprint() != null) {
+                context.getFingerprintStore().update(entry.getFingerprint());
+            }
+        } catch (final Throwable t) {
+            running = handleException(context, statsKey, entry.getIndex(), entry.getDataMap(), t);
+        } finally {
+            crawlerStatsHelper.done(statsKey);
+            if (running) {
+                context.complete(entry.getIndex());
             }
         }
+        return running;
     }
 
     /**
-     * Get the number of source records to generate.
+     * Finish a document whose asynchronous store completed. This runs on the
+     * store thread, or on the crawler thread if the store completed before the
+     * action was attached.
+     *
+     * <p>
+     * If the document aborts the crawl, the run is stopped; documents whose
+     * stores are already pending are still finished.
+     * </p>
+     *
+     * @param context The run context.
+     * @param entry The stored document.
+     * @param storeNanos The time the callback took, or null if it failed.
+     * @param t The exception thrown by the callback, or null.
+     */
+    protected void completeStore(final RunContext context, final PreparedDocument entry, final Long storeNanos, final Throwable t) {
+        final CrawlerStatsHelper crawlerStatsHelper = context.getCrawlerStatsHelper();
+        final StatsKeyObject statsKey = entry.getStatsKey();
+        boolean running = true;
+        try {
+            if (t == null) {
+                context.stored(storeNanos, entry.getSize());
+                crawlerStatsHelper.record(statsKey, StatsAction.FINISHED);
+                if (entry.getFingerprint() != null) {
+                    context.getFingerprintStore().update(entry.getFingerprint());
+                }
+            } else {
+                running = handleException(context, statsKey, entry.getIndex(), entry.getDataMap(), t);
+            }
+        } catch (final Throwable e) {
+            running = handleException(context, statsKey, entry.getIndex(), entry.getDataMap(), e);
+        } finally {
+            crawlerStatsHelper.done(statsKey);
+            if (running) {
+                context.complete(entry.getIndex());
+            } else {
+                context.stop();
+            }
+        }
+    }
+
+    /**
+     * Store a prepared document in the sink stage of the pipeline or on the
+     * store thread of the spill buffer.
+     *
+     * <p>
+     * After the run was stopped, the document is not stored; only its stats
+     * are finished, so it is crawled again when the run is resumed.
+     * </p>
+     *
+     * @param context The run context.
+     * @param entry The prepared document.
+     * @return false if the crawl was aborted by the document, otherwise true.
+     */
+    protected boolean storeEntry(final RunContext context, final PreparedDocument entry) {
+        if (!context.isRunning()) {
+            context.getCrawlerStatsHelper().done(entry.getStatsKey());
+            return false;
+        }
+        return storeDocument(context, entry);
+    }
+
+    /**
+     * Skip records of the source without reading them. If the source fails to
+     * skip, its position is unknown, so the run is stopped and the checkpoint
+     * is saved at the last handled record.
+     * @param context The run context.
+     * @param recordSource The record source.
+     * @param position The index of the first record to skip.
+     * @param count The number of records to skip.
+     * @return The number of records skipped, or 0 if the source failed.
+     */
+    protected int skipRecords(final RunContext context, final RecordSource recordSource, final int position, final int count) {
+        try {
+            return recordSource.skip(count);
+        } catch (final RuntimeException e) {
+            logger.warn("Failed to skip {} records from record:{}. The run is stopped.", count, position, e);
+            context.stop();
+            return 0;
+        }
+    }
+
+    /**
+     * Report a record that is dropped as a duplicate. It gets its own stats key
+     * so that duplicates are counted in the crawler stats.
+     * @param context The run context.
+     * @param index The index of the record.
+     */
+    protected void handleDuplicate(final RunContext context, final int index) {
+        final CrawlerStatsHelper crawlerStatsHelper = context.getCrawlerStatsHelper();
+        final StatsKeyObject statsKey = context.newStatsKey(index);
+        try {
+            crawlerStatsHelper.begin(statsKey);
+            crawlerStatsHelper.record(statsKey, DUPLICATE_ACTION);
+            context.getMetrics().duplicate();
+        } finally {
+            crawlerStatsHelper.done(statsKey);
+            context.complete(index);
+        }
+    }
+
+    /**
+     * Report a record that could not be read from the source. The record gets
+     * its own stats key so that the failure is counted like any other record.
+     * @param context The run context.
+     * @param index The index of the record.
+     * @param t The exception.
+     * @return false if the exception aborts the crawl, otherwise true.
+     */
+    protected boolean handleReadException(final RunContext context, final int index, final Throwable t) {
+        final CrawlerStatsHelper crawlerStatsHelper = context.getCrawlerStatsHelper();
+        final StatsKeyObject statsKey = context.newStatsKey(index);
+        boolean running = true;
+        try {
+            crawlerStatsHelper.begin(statsKey);
+            running = handleException(context, statsKey, index, Collections.emptyMap(), t);
+        } finally {
+            crawlerStatsHelper.done(statsKey);
+            if (running) {
+                context.complete(index);
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Report a failed record to the {@link FailureSink} and the crawler stats.
+     * @param context The run context.
+     * @param statsKey The stats key of the record.
+     * @param index The index of the record.
+     * @param dataMap The document built so far.
+     * @param t The exception.
+     * @return false if the exception aborts the crawl or the failure rate is exceeded, otherwise true.
+     */
+    protected boolean handleException(final RunContext context, final StatsKeyObject statsKey, final int index,
+            final Map<String, Object> dataMap, final Throwable t) {
+        final CrawlerStatsHelper crawlerStatsHelper = context.getCrawlerStatsHelper();
+        boolean running = true;
+        context.failed(t);
+        if (t instanceof final CrawlingAccessException e) {
+            logger.warn("Crawling Access Exception at : {}", dataMap, e);
+
+            Throwable target = e;
+            if (target instanceof final MultipleCrawlingAccessException ex) {
+                final Throwable[] causes = ex.getCauses();
+                if (causes.length > 0) {
+                    target = causes[causes.length - 1];
+                }
+            }
+
+            String errorName;
+            final Throwable cause = target.getCause();
+            if (cause != null) {
+                errorName = cause.getClass().getCanonicalName();
+            } else {
+                errorName = target.getClass().getCanonicalName();
+            }
+
+            String url;
+            if (target instanceof final DataStoreCrawlingException dce) {
+                url = dce.getUrl();
+                if (dce.aborted()) {
+                    running = false;
+                }
+            } else {
+                url = "record:" + index;
+            }
+            if (!context.getFailureSink().failed(errorName, url, target)) {
+                running = false;
+            }
+            crawlerStatsHelper.record(statsKey, StatsAction.ACCESS_EXCEPTION);
+        } else {
+            logger.warn("Crawling Access Exception at : {}", dataMap, t);
+            final String url = "record:" + index;
+            if (!context.getFailureSink().failed(t.getClass().getCanonicalName(), url, t)) {
+                running = false;
+            }
+            crawlerStatsHelper.record(statsKey, StatsAction.EXCEPTION);
+        }
+        return running;
+    }
+
+    /**
+     * Parse and check the configuration of a run before anything is read or stored.
      * @param paramMap The parameters.
-     * @return The number of records to generate.
+     * @param scriptMap The script map.
+     * @return The plan of the run, with the parsed value of every parameter that is set.
+     * @throws DataStoreException if the configuration is invalid. The message lists every problem.
+     */
+    protected RunPlan newRunPlan(final DataStoreParams paramMap, final Map<String, String> scriptMap) {
+        final ParamValidator validator = new ParamValidator(paramMap);
+        validate(validator, scriptMap);
+        final List<String> errors = validator.getErrors();
+        if (!errors.isEmpty()) {
+            throw new DataStoreException("Invalid configuration of " + getName() + ": " + String.join(" ", errors));
+        }
+        return validator.getPlan();
+    }
+
+    /**
+     * Parse and check every parameter of a run. The valid values are put into
+     * the plan of the validator, from which the factories take them.
+     *
+     * <p>
+     * CUSTOMIZE: Add the checks of your own parameters, such as the URL of the
+     * external system, after calling this method, and take their values from
+     * the {@link RunPlan} in your factories.
+     * </p>
+     *
+     * @param validator The validator of the parameters.
+     * @param scriptMap The script map.
+     */
+    protected void validate(final ParamValidator validator, final Map<String, String> scriptMap) {
+        final int maxInt = Integer.MAX_VALUE;
+        validator.checkLong(DATA_SIZE_PARAM, 0, maxInt);
+        validator.checkLong(READ_INTERVAL_PARAM, 0, Long.MAX_VALUE);
+        final Long threadSize = validator.checkLong(THREAD_SIZE_PARAM, 1, maxInt);
+        final Long queueSize = validator.checkLong(QUEUE_SIZE_PARAM, 0, maxInt);
+        // Parallel mode has a permit for each worker and each waiting record.
+        final long threads = threadSize != null ? threadSize : DEFAULT_THREAD_SIZE;
+        final long permits = threads + (queueSize != null ? queueSize : threads * DEFAULT_QUEUE_SIZE_FACTOR);
+        if (permits > maxInt) {
+            validator.addError(queueSize != null ? QUEUE_SIZE_PARAM : THREAD_SIZE_PARAM,
+                    THREAD_SIZE_PARAM + " and " + QUEUE_SIZE_PARAM + " together are more than " + maxInt);
+        }
+        validator.checkBoolean(VIRTUAL_THREAD_PARAM);
+        checkDirectory(validator, CHECKPOINT_DIR_PARAM);
+        validator.checkLong(CHECKPOINT_INTERVAL_PARAM, 1, maxInt);
+        checkDirectory(validator, INCREMENTAL_DIR_PARAM);
+        validator.checkString(INCREMENTAL_ID_FIELD_PARAM);
+        validator.checkString(INCREMENTAL_TIMESTAMP_FIELD_PARAM);
+        validator.parse(INCREMENTAL_IGNORE_FIELDS_PARAM, ExampleDataStore::splitFields, "a list of field names");
+        validator.checkDouble(RATE_LIMIT_PARAM, 0, Double.MAX_VALUE);
+        validator.checkDouble(RATE_BURST_PARAM, 1, Double.MAX_VALUE);
+        validator.parse(RATE_MIN_PARAM, value -> {
+            final double rate = Double.parseDouble(value);
+            if (!(rate > 0 && rate <= Double.MAX_VALUE)) {
+                throw new IllegalArgumentException();
+            }
+            return rate;
+        }, "a number greater than 0");
+        validator.checkLong(RATE_LATENCY_THRESHOLD_PARAM, 0, Long.MAX_VALUE);
+        validator.checkDouble(RATE_ERROR_THRESHOLD_PARAM, 0, 1);
+        validator.checkLong(FAILURE_BATCH_SIZE_PARAM, 1, maxInt);
+        validator.checkLong(FAILURE_BATCH_INTERVAL_PARAM, 1, Long.MAX_VALUE);
+        validator.checkDouble(FAILURE_ABORT_RATE_PARAM, 0, 1);
+        validator.checkLong(FAILURE_ABORT_WINDOW_PARAM, 1, maxInt);
+        validator.checkString(DEDUP_FIELD_PARAM);
+        validator.checkLong(DEDUP_MAX_SIZE_PARAM, 1, DedupFilter.MAX_SIZE);
+        validator.checkLong(PIPELINE_DEPTH_PARAM, 0, MAX_PIPELINE_DEPTH);
+        validator.checkLong(SCRIPT_CACHE_SIZE_PARAM, 1, maxInt);
+        validator.checkLong(CONTENT_MAX_SIZE_PARAM, 0, maxInt - 1);
+        validator.checkEnum(CONTENT_OVERSIZE_PARAM, ContentLimit.Action.class);
+        validator.checkLong(ASYNC_STORE_SIZE_PARAM, 0, maxInt);
+        checkDirectory(validator, SPILL_DIR_PARAM);
+        // The spill buffer stores the documents in the order in which they are
+        // put, which is only the source order when one thread puts them.
+        if (threadSize != null && threadSize > 1 && validator.getPlan().contains(SPILL_DIR_PARAM)) {
+            validator.addError(SPILL_DIR_PARAM, "cannot be used with " + THREAD_SIZE_PARAM + " " + threadSize);
+        }
+        validator.checkLong(SPILL_MEMORY_SIZE_PARAM, 0, maxInt);
+        validator.checkLong(SPILL_SEGMENT_SIZE_PARAM, 1024, maxInt);
+        validator.checkLong(SOURCE_LATENCY_PARAM, 0, Long.MAX_VALUE);
+        validator.checkLong(LOAD_FIELD_COUNT_PARAM, 0, maxInt);
+        validator.checkLong(LOAD_BODY_SIZE_PARAM, 0, maxInt);
+        validator.checkEnum(LOAD_BODY_DISTRIBUTION_PARAM, LoadGenerator.Distribution.class);
+        validator.parse(LOAD_UNICODE_PARAM, LoadGenerator.UnicodeMix::parse, "a list of script:weight such as ascii:90,cjk:10");
+        validator.checkLong(LOAD_SEED_PARAM, Long.MIN_VALUE, Long.MAX_VALUE);
+        validator.checkLong(LOAD_DURATION_PARAM, 0, Long.MAX_VALUE);
+
+        // An invalid shard index would crawl nothing or the slice of another node.
+        final Long shardCount = validator.checkLong(SHARD_COUNT_PARAM, 1, maxInt);
+        final Long shardIndex = validator.checkLong(SHARD_INDEX_PARAM, 0, maxInt);
+        if (shardCount != null && shardCount > 1 && shardIndex != null && shardIndex >= shardCount) {
+            validator.addError(SHARD_INDEX_PARAM, shardIndex + " is not less than " + SHARD_COUNT_PARAM + " " + shardCount);
+        }
+        validator.checkString(SHARD_FIELD_PARAM);
+
+        final RunPlan plan = validator.getPlan();
+        for (final Map.Entry<String, Object> entry : plan.getParams().asMap().entrySet()) {
+            final String key = entry.getKey();
+            if (!key.startsWith(SCRIPT_CACHE_PREFIX) || SCRIPT_CACHE_SIZE_PARAM.equals(key)) {
+                continue;
+            }
+            if (scriptMap.containsKey(key.substring(SCRIPT_CACHE_PREFIX.length()))) {
+                plan.put(key, splitFields(String.valueOf(entry.getValue())));
+            } else {
+                validator.addError(key, "there is no scriptMap entry " + key.substring(SCRIPT_CACHE_PREFIX.length()));
+            }
+        }
+        for (final String fieldName : scriptMap.keySet()) {
+            if (StringUtil.isBlank(fieldName)) {
+                validator.addError("scriptMap", "an entry has no field name");
+            }
+        }
+    }
+
+    /**
+     * Check that a directory parameter is a valid path and is not a file, and
+     * put the path into the plan.
+     * @param validator The validator of the parameters.
+     * @param name The parameter name.
+     */
+    protected void checkDirectory(final ParamValidator validator, final String name) {
+        final String dir = validator.getPlan().getParams().getAsString(name);
+        if (StringUtil.isBlank(dir)) {
+            return;
+        }
+        try {
+            final Path path = Paths.get(dir.trim());
+            if (Files.exists(path) && !Files.isDirectory(path)) {
+                validator.addError(name, "'" + dir.trim() + "' is not a directory");
+            } else {
+                validator.getPlan().put(name, path);
+            }
+        } catch (final InvalidPathException e) {
+            validator.addError(name, "'" + dir.trim() + "' is not a valid path");
+        }
+    }
+
+    /**
+     * Split a comma-separated list of field names.
+     * @param value The list.
+     * @return The trimmed field names, without blank ones.
+     */
+    protected static List<String> splitFields(final String value) {
+        final List<String> fields = new ArrayList<>();
+        for (final String field : value.split(",")) {
+            if (StringUtil.isNotBlank(field)) {
+                fields.add(field.trim());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Create the pipeline of this run.
+     * @param context The run context.
+     * @param plan The plan of the run.
+     * @return The pipeline, or null if pipelining is disabled.
+     */
+    protected RecordPipeline newRecordPipeline(final RunContext context, final RunPlan plan) {
+        final int depth = plan.getInt(PIPELINE_DEPTH_PARAM, 0);
+        if (depth <= 0) {
+            return null;
+        }
+        // The sink stage stores the previous record while the transform stage
+        // prepares the next one; each keeps its stats key in its own RecordParams.
+        return new RecordPipeline(context, depth, (index, source) -> storeRecord(context, source, index),
+                entry -> storeEntry(context, entry));
+    }
+
+    /**
+     * Create the content limit of this run.
+     * @param plan The plan of the run.
+     * @return The content limit, or null if the text fields are not limited.
+     */
+    protected ContentLimit newContentLimit(final RunPlan plan) {
+        final int maxSize = plan.getInt(CONTENT_MAX_SIZE_PARAM, 0);
+        if (maxSize <= 0) {
+            return null;
+        }
+        return new ContentLimit(maxSize, plan.get(CONTENT_OVERSIZE_PARAM, ContentLimit.Action.class, ContentLimit.Action.TRUNCATE));
+    }
+
+    /**
+     * Create the asynchronous callback of this run.
+     * @param context The run context.
+     * @param plan The plan of the run.
+     * @return The asynchronous callback, or null if the documents are stored synchronously.
+     */
+    protected AsyncIndexUpdateCallback newAsyncIndexUpdateCallback(final RunContext context, final RunPlan plan) {
+        final int size = plan.getInt(ASYNC_STORE_SIZE_PARAM, 0);
+        if (size <= 0) {
+            return null;
+        }
+        return new AsyncIndexUpdateCallback(context.getCallback(), newExecutorService(plan, size), size);
+    }
+
+    /**
+     * Create the spill buffer of this run and find the documents that an
+     * earlier run left on disk.
+     * @param context The run context.
+     * @param stateId The id of the state files of this run.
+     * @param plan The plan of the run.
+     * @return The spill buffer, or null if the documents are stored by the thread that prepares them.
+     */
+    protected SpillBuffer newSpillBuffer(final RunContext context, final String stateId, final RunPlan plan) {
+        final Path dir = plan.get(SPILL_DIR_PARAM, Path.class, null);
+        if (dir == null) {
+            return null;
+        }
+        final CrawlerStatsHelper crawlerStatsHelper = context.getCrawlerStatsHelper();
+        final SpillBuffer spillBuffer = new SpillBuffer(context, dir, stateId,
+                (int) plan.getLong(SPILL_MEMORY_SIZE_PARAM, DEFAULT_SPILL_MEMORY_SIZE),
+                (int) plan.getLong(SPILL_SEGMENT_SIZE_PARAM, DEFAULT_SPILL_SEGMENT_SIZE), entry -> {
+                    // A document of an earlier run was never begun in this run.
+                    if (entry.getIndex() < 0) {
+                        crawlerStatsHelper.begin(entry.getStatsKey());
+                    }
+                    return storeEntry(context, entry);
+                });
+        try {
+            spillBuffer.open();
+        } catch (final IOException e) {
+            throw new DataStoreException("Failed to open the spill buffer in " + dir + ".", e);
+        }
+        return spillBuffer;
+    }
+
+    /**
+     * Create the shard of this run.
+     * @param plan The plan of the run.
+     * @return The shard, or null if the records are not sharded.
+     */
+    protected Shard newShard(final RunPlan plan) {
+        final int count = plan.getInt(SHARD_COUNT_PARAM, 1);
+        if (count <= 1) {
+            return null;
+        }
+        return new Shard(count, plan.getInt(SHARD_INDEX_PARAM, 0), plan.getString(SHARD_FIELD_PARAM));
+    }
+
+    /**
+     * Create the fingerprint store for incremental crawling.
+     *
+     * <p>
+     * The fingerprints are only valid for the scriptMap that built the stored
+     * documents, so they are dropped when the scriptMap changes.
+     * </p>
+     *
+     * @param stateId The id of the state files of this run.
+     * @param plan The plan of the run.
+     * @param scriptMap The script map.
+     * @return The fingerprint store, or null if incremental crawling is disabled.
+     */
+    protected FingerprintStore newFingerprintStore(final String stateId, final RunPlan plan, final Map<String, String> scriptMap) {
+        final Path dir = plan.get(INCREMENTAL_DIR_PARAM, Path.class, null);
+        if (dir == null) {
+            return null;
+        }
+        final List<String> ignoredFields = plan.contains(INCREMENTAL_IGNORE_FIELDS_PARAM) ? plan.getList(INCREMENTAL_IGNORE_FIELDS_PARAM)
+                : splitFields(DEFAULT_INCREMENTAL_IGNORE_FIELDS);
+        return new FingerprintStore(FingerprintStore.getFile(dir, stateId),
+                plan.getString(INCREMENTAL_ID_FIELD_PARAM, DEFAULT_INCREMENTAL_ID_FIELD), plan.getString(INCREMENTAL_TIMESTAMP_FIELD_PARAM),
+                new HashSet<>(ignoredFields), FingerprintStore.hash(scriptMap));
+    }
+
+    /**
+     * Create the sink of the failed records of this run.
+     * @param dataConfig The data configuration.
+     * @param plan The plan of the run.
+     * @return The failure sink.
+     */
+    protected FailureSink newFailureSink(final DataConfig dataConfig, final RunPlan plan) {
+        return new FailureSink(ComponentUtil.getComponent(FailureUrlService.class), dataConfig,
+                (int) plan.getLong(FAILURE_BATCH_SIZE_PARAM, DEFAULT_FAILURE_BATCH_SIZE),
+                plan.getLong(FAILURE_BATCH_INTERVAL_PARAM, DEFAULT_FAILURE_BATCH_INTERVAL), plan.getDouble(FAILURE_ABORT_RATE_PARAM, 0),
+                (int) plan.getLong(FAILURE_ABORT_WINDOW_PARAM, DEFAULT_FAILURE_ABORT_WINDOW));
+    }
+
+    /**
+     * Create the dedup filter of this run.
+     * @param plan The plan of the run.
+     * @return The dedup filter, or null if deduplication is disabled.
+     */
+    protected DedupFilter newDedupFilter(final RunPlan plan) {
+        final String field = plan.getString(DEDUP_FIELD_PARAM);
+        if (field == null) {
+            return null;
+        }
+        return new DedupFilter(field, (int) plan.getLong(DEDUP_MAX_SIZE_PARAM, DEFAULT_DEDUP_MAX_SIZE));
+    }
+
+    /**
+     * Create the rate limiter of this run.
+     * @param plan The plan of the run.
+     * @return The rate limiter, or null if the rate is unlimited.
+     */
+    protected RateLimiter newRateLimiter(final RunPlan plan) {
+        final double maxRate = plan.getDouble(RATE_LIMIT_PARAM, 0);
+        if (maxRate <= 0) {
+            final long readInterval = plan.getLong(READ_INTERVAL_PARAM, 0L);
+            if (readInterval <= 0) {
+                return null;
+            }
+            // readInterval paused after every record, so it is the same as a
+            // rate limit without a burst. Its pace never adapts, as before.
+            final double rate = 1000.0 / readInterval;
+            return new RateLimiter(rate, rate, plan.getDouble(RATE_BURST_PARAM, 1), 0L, 0);
+        }
+        return new RateLimiter(maxRate, plan.getDouble(RATE_MIN_PARAM, maxRate / 10), plan.getDouble(RATE_BURST_PARAM, maxRate),
+                TimeUnit.MILLISECONDS.toNanos(plan.getLong(RATE_LATENCY_THRESHOLD_PARAM, 0L)),
+                plan.getDouble(RATE_ERROR_THRESHOLD_PARAM, DEFAULT_RATE_ERROR_THRESHOLD));
+    }
+
+    /**
+     * Create the checkpoint of this run.
+     * @param stateId The id of the state files of this run.
+     * @param plan The plan of the run.
+     * @return The checkpoint, or null if checkpoints are disabled.
+     */
+    protected Checkpoint newCheckpoint(final String stateId, final RunPlan plan) {
+        final Path dir = plan.get(CHECKPOINT_DIR_PARAM, Path.class, null);
+        if (dir == null) {
+            return null;
+        }
+        final int interval = (int) plan.getLong(CHECKPOINT_INTERVAL_PARAM, DEFAULT_CHECKPOINT_INTERVAL);
+        return new Checkpoint(Checkpoint.getFile(dir, stateId), interval);
+    }
+
+    /**
+     * Compile the scriptMap for this run.
+     * @param scriptType The script type.
+     * @param scriptMap The script map.
+     * @param plan The plan of the run, with the {@code script.cache.*} settings.
+     * @return The compiled script map.
+     */
+    protected ScriptPlan newScriptPlan(final String scriptType, final Map<String, String> scriptMap, final RunPlan plan) {
+        final Map<String, List<String>> cacheFields = new HashMap<>();
+        for (final String fieldName : scriptMap.keySet()) {
+            if (plan.contains(SCRIPT_CACHE_PREFIX + fieldName)) {
+                cacheFields.put(fieldName, plan.getList(SCRIPT_CACHE_PREFIX + fieldName));
+            }
+        }
+        if (cacheFields.isEmpty()) {
+            return new ScriptPlan(scriptType, scriptMap);
+        }
+        final int cacheSize = (int) plan.getLong(SCRIPT_CACHE_SIZE_PARAM, DEFAULT_SCRIPT_CACHE_SIZE);
+        final ScriptPlan scriptPlan = new ScriptPlan(scriptType, scriptMap, cacheFields, new ScriptCache(cacheSize));
+        for (final ScriptPlan.Entry entry : scriptPlan.getEntries()) {
+            if (cacheFields.containsKey(entry.getName()) && entry.getCacheFields() == null) {
+                logger.warn("{}{} is not an expression and is not cached.", SCRIPT_CACHE_PREFIX, entry.getName());
+            }
+        }
+        return scriptPlan;
+    }
+
+    /**
+     * Create the executor service that runs the record workers in parallel mode.
+     * @param plan The plan of the run.
+     * @param threadSize The number of worker threads.
+     * @return The executor service.
      */
-    protected int getDataSize(final DataStoreParams paramMap) {
-        final String value = paramMap.getAsString(DATA_SIZE_PARAM);
-        if (value != null) {
-            try {
-                return Integer.parseInt(value);
-            } catch (final NumberFormatException e) {
-                logger.warn("Invalid {} value: '{}'. Using default: {}.", DATA_SIZE_PARAM, value, DEFAULT_DATA_SIZE);
+    protected ExecutorService newExecutorService(final RunPlan plan, final int threadSize) {
+        if (plan.getBoolean(VIRTUAL_THREAD_PARAM, false)) {
+            // The semaphore in storeData limits the concurrency of virtual threads.
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(threadSize);
+    }
+
+    /**
+     * Shut down the executor service and wait until the running workers finish.
+     * @param executorService The executor service.
+     */
+    protected void shutdown(final ExecutorService executorService) {
+        executorService.shutdown();
+        try {
+            while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for the record workers to finish...");
             }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for the record workers.", e);
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
         }
-        return DEFAULT_DATA_SIZE;
+    }
+
+    /**
+     * Open the source of the records of this run.
+     *
+     * <p>
+     * CUSTOMIZE: Replace this with a {@link RecordSource} that reads from the
+     * external system, for example by running a query and walking its cursor,
+     * or by fetching the next page of an API when the current one is consumed.
+     * This example generates {@code data.size} synthetic records on demand with
+     * {@link #createSourceRecord(int)}.
+     * </p>
+     *
+     * @param plan The plan of the run.
+     * @return The record source. It is closed at the end of the run.
+     */
+    protected RecordSource openRecordSource(final RunPlan plan) {
+        // The load generator replaces the sample records for capacity tests; the
+        // target rate is rate.limit.
+        final LoadGenerator loadGenerator = newLoadGenerator(plan);
+        final IntFunction<Map<String, Object>> generator = loadGenerator != null ? loadGenerator::newRecord : this::createSourceRecord;
+
+        // Without data.size, a timed load test runs until load.duration ends.
+        final long duration = TimeUnit.SECONDS.toNanos(plan.getLong(LOAD_DURATION_PARAM, 0L));
+        final int dataSize = duration > 0 && !plan.contains(DATA_SIZE_PARAM) ? Integer.MAX_VALUE : getDataSize(plan);
+
+        // source.latency simulates a slow external system, for example to
+        // measure the gain of pipeline.depth.
+        final long latency = plan.getLong(SOURCE_LATENCY_PARAM, 0L);
+        if (latency > 0) {
+            return new GeneratedRecordSource(dataSize, index -> {
+                sleep(latency);
+                return generator.apply(index);
+            }, duration);
+        }
+        return new GeneratedRecordSource(dataSize, generator, duration);
+    }
+
+    /**
+     * Create the load generator of this run.
+     * @param plan The plan of the run.
+     * @return The load generator, or null if no {@code load.*} record parameter is set.
+     */
+    protected LoadGenerator newLoadGenerator(final RunPlan plan) {
+        if (!plan.contains(LOAD_FIELD_COUNT_PARAM) && !plan.contains(LOAD_BODY_SIZE_PARAM) && !plan.contains(LOAD_UNICODE_PARAM)
+                && !plan.contains(LOAD_BODY_DISTRIBUTION_PARAM) && !plan.contains(LOAD_SEED_PARAM)) {
+            return null;
+        }
+        // Without a seed every run gets a new one. It is logged, so that the run
+        // can be repeated with the same records.
+        final long seed = plan.contains(LOAD_SEED_PARAM) ? plan.getLong(LOAD_SEED_PARAM, 0L) : System.nanoTime();
+        final LoadGenerator loadGenerator = new LoadGenerator(seed, plan.getInt(LOAD_FIELD_COUNT_PARAM, 0),
+                (int) plan.getLong(LOAD_BODY_SIZE_PARAM, DEFAULT_LOAD_BODY_SIZE),
+                plan.get(LOAD_BODY_DISTRIBUTION_PARAM, LoadGenerator.Distribution.class, LoadGenerator.Distribution.FIXED),
+                plan.get(LOAD_UNICODE_PARAM, LoadGenerator.UnicodeMix.class, LoadGenerator.UnicodeMix.parse(DEFAULT_LOAD_UNICODE)));
+        logger.info("Generating records with {}", loadGenerator);
+        return loadGenerator;
+    }
+
+    /**
+     * Get the number of source records to generate.
+     * @param plan The plan of the run.
+     * @return The number of records to generate.
+     */
+    protected int getDataSize(final RunPlan plan) {
+        return plan.getInt(DATA_SIZE_PARAM, DEFAULT_DATA_SIZE);
     }
 
     /**
@@ -241,25 +1479,32 @@ public class ExampleDataStore extends AbstractDataStore {
      * CUSTOMIZE: This method represents one row/object/item retrieved from the
      * external system. The keys of the returned map are the source field names
      * that an administrator can reference from the scriptMap (e.g. {@code title},
-     * {@code body}, {@code url}).
+     * {@code body}, {@code url}). When every record has the same fields, a
+     * {@link SchemaRecord} avoids storing and hashing the field names per
+     * record; otherwise any map can be returned. A large field, for example a
+     * document body, can be a {@link LazyField} that is only read when a
+     * script refers to it.
      * </p>
      *
      * @param index The index of the record.
      * @return The source record as a map of field name to value.
      */
     protected Map<String, Object> createSourceRecord(final int index) {
-        final Map<String, Object> source = new HashMap<>();
-        source.put("id", Integer.toString(index));
-        source.put("title", "Sample " + index);
-        source.put("body", "Sample body text for record " + index);
-        source.put("url", "http://fess.codelibs.org/?sample=" + index);
-        source.put("created", new Date());
+        // The fields are always the same, so the record is an array of values
+        // in the slots of SOURCE_SCHEMA instead of a hash map.
+        final SchemaRecord source = SOURCE_SCHEMA.newRecord();
+        source.set(ID_SLOT, Integer.toString(index));
+        source.set(TITLE_SLOT, "Sample " + index);
+        source.set(BODY_SLOT, "Sample body text for record " + index);
+        source.set(URL_SLOT, "http://fess.codelibs.org/?sample=" + index);
+        source.set(CREATED_SLOT, new Date());
         return source;
     }
 
     /**
      * For testing purposes: collect the synthetic source records that would be
-     * generated for the given size.
+     * generated for the given size. Unlike {@link #openRecordSource}, this holds
+     * every record in memory.
      * @param dataSize The number of records to generate.
      * @return The list of source records.
      */
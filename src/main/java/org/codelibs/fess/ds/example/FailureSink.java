@@ -0,0 +1,274 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.app.service.FailureUrlService;
+import org.codelibs.fess.opensearch.config.exentity.CrawlingConfig;
+
+/**
+ * Writes the failed records of a run to the {@link FailureUrlService}.
+ *
+ * <p>
+ * With a batch size of 1, every failure is written synchronously on the record
+ * thread. When a source goes bad, failures arrive in bursts; with a larger
+ * batch size, the failures are queued and a writer thread stores them in
+ * batches of up to {@code batchSize}, or after {@code flushInterval}
+ * milliseconds, so the record threads do not wait for the writes. Every
+ * failure is still written on its own, so the error count of a failure URL is
+ * the same in both modes, and it is written under the name of the thread that
+ * reported it.
+ * </p>
+ *
+ * <p>
+ * The sink also acts as a circuit breaker: the outcomes of the records are
+ * counted in windows of {@code abortWindow} records, and when the failure
+ * ratio of a window exceeds {@code abortRate}, the circuit opens and
+ * {@link #failed(String, String, Throwable)} tells the caller to abort the
+ * run.
+ * </p>
+ */
+public class FailureSink implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(FailureSink.class);
+
+    /** The element that stops the writer thread. */
+    private static final Failure END = new Failure(null, null, null, null);
+
+    private final FailureUrlService failureUrlService;
+
+    private final CrawlingConfig crawlingConfig;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final double abortRate;
+
+    private final int abortWindow;
+
+    private final BlockingQueue<Failure> queue;
+
+    private final Thread writerThread;
+
+    private long windowCount;
+
+    private long windowFailureCount;
+
+    private volatile boolean open;
+
+    private long failureCount;
+
+    private long writeCount;
+
+    /**
+     * Constructor.
+     * @param failureUrlService The failure URL service.
+     * @param crawlingConfig The configuration the failures belong to.
+     * @param batchSize The maximum number of failures written at once (1 writes synchronously).
+     * @param flushInterval The maximum time in milliseconds a failure waits to be written.
+     * @param abortRate The failure ratio above which the circuit opens (0 disables the circuit breaker).
+     * @param abortWindow The number of records per circuit breaker window.
+     */
+    public FailureSink(final FailureUrlService failureUrlService, final CrawlingConfig crawlingConfig, final int batchSize,
+            final long flushInterval, final double abortRate, final int abortWindow) {
+        this.failureUrlService = failureUrlService;
+        this.crawlingConfig = crawlingConfig;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.abortRate = abortRate;
+        this.abortWindow = Math.max(1, abortWindow);
+        if (this.batchSize > 1) {
+            queue = new ArrayBlockingQueue<>(this.batchSize * 4);
+            writerThread = Thread.ofPlatform().name("FailureSink").daemon().start(this::runWriter);
+        } else {
+            queue = null;
+            writerThread = null;
+        }
+    }
+
+    /**
+     * Report a record that was handled successfully.
+     */
+    public void succeeded() {
+        if (abortRate > 0) {
+            count(false);
+        }
+    }
+
+    /**
+     * Report a failed record. The failure is written asynchronously, unless
+     * the batch size is 1.
+     * @param errorName The error name.
+     * @param url The URL of the record.
+     * @param cause The failure.
+     * @return false if the circuit is open and the run should be aborted, otherwise true.
+     */
+    public boolean failed(final String errorName, final String url, final Throwable cause) {
+        final Failure failure = new Failure(errorName, url, cause, Thread.currentThread().getName());
+        synchronized (this) {
+            failureCount++;
+        }
+        if (queue == null) {
+            write(List.of(failure));
+        } else {
+            try {
+                queue.put(failure);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                write(List.of(failure));
+            }
+        }
+        return abortRate <= 0 || !count(true);
+    }
+
+    private synchronized boolean count(final boolean failed) {
+        windowCount++;
+        if (failed) {
+            windowFailureCount++;
+        }
+        if (windowCount >= abortWindow) {
+            if (!open && (double) windowFailureCount / windowCount > abortRate) {
+                open = true;
+                logger.error("Opened the circuit: {} of the last {} records failed, which exceeds the failure rate {}.", windowFailureCount,
+                        windowCount, abortRate);
+            }
+            windowCount = 0;
+            windowFailureCount = 0;
+        }
+        return open;
+    }
+
+    /**
+     * @return true if the failure rate exceeded the limit.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Write the queued failures and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        if (writerThread == null) {
+            return;
+        }
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while writing the failures.", e);
+            writerThread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        final List<Failure> batch = new ArrayList<>(batchSize);
+        boolean running = true;
+        while (running) {
+            try {
+                final Failure first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (final InterruptedException e) {
+                logger.warn("Interrupted the failure writer.", e);
+                queue.drainTo(batch);
+                running = false;
+            }
+            if (batch.remove(END)) {
+                queue.drainTo(batch);
+                batch.remove(END);
+                running = false;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write failures one by one. Each write counts as one error of the URL.
+     * @param failures The failures.
+     */
+    private void write(final List<Failure> failures) {
+        final Thread thread = Thread.currentThread();
+        final String threadName = thread.getName();
+        for (final Failure failure : failures) {
+            try {
+                // The failure URL service records the name of the current thread.
+                thread.setName(failure.threadName);
+                failureUrlService.store(crawlingConfig, failure.errorName, failure.url, failure.cause);
+                synchronized (this) {
+                    writeCount++;
+                }
+            } catch (final RuntimeException e) {
+                logger.warn("Failed to store the failure of {}: {}", failure.url, failure.errorName, e);
+            } finally {
+                thread.setName(threadName);
+            }
+        }
+    }
+
+    /**
+     * @return The number of reported failures.
+     */
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return The number of writes to the failure URL service.
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FailureSink [failures=" + failureCount + ", writes=" + writeCount + ", open=" + open + "]";
+    }
+
+    /**
+     * A failed record waiting to be written.
+     */
+    private static final class Failure {
+        private final String errorName;
+
+        private final String url;
+
+        private final Throwable cause;
+
+        private final String threadName;
+
+        Failure(final String errorName, final String url, final Throwable cause, final String threadName) {
+            this.errorName = errorName;
+            this.url = url;
+            this.cause = cause;
+            this.threadName = threadName;
+        }
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A compact, file-backed store of record fingerprints for incremental crawls.
+ *
+ * <p>
+ * For every record id the store keeps a 64-bit hash of the id, a 64-bit hash
+ * of the source fields and the modification timestamp of the record (if the
+ * source has one), i.e. 24 bytes per record in memory and on disk. A record
+ * whose fingerprint matches the one saved by the previous run is unchanged
+ * and does not need to be evaluated and indexed again.
+ * </p>
+ *
+ * <p>
+ * The fingerprint of a record is only updated after the record has been
+ * stored, so a record that failed is processed again by the next run. The
+ * file also keeps a hash of the mapping (the scriptMap) that the documents
+ * were built with: when the mapping changes, the saved fingerprints are
+ * dropped and every record is processed again. The file is replaced with an
+ * atomic rename. All methods are thread-safe.
+ * </p>
+ */
+public class FingerprintStore {
+
+    private static final Logger logger = LogManager.getLogger(FingerprintStore.class);
+
+    /** The magic number of the fingerprint file. */
+    protected static final int MAGIC = 0x46504632; // "FPF2"
+
+    /** The timestamp of a record without a timestamp field. */
+    protected static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    /** The id hash of an empty slot. */
+    private static final long EMPTY = 0L;
+
+    /** The fingerprint file. */
+    protected final Path file;
+
+    /** The source field that identifies a record. */
+    protected final String idField;
+
+    /** The source field that holds the modification timestamp, or null. */
+    protected final String timestampField;
+
+    /** The source fields that are not part of the content hash. */
+    protected final Set<String> ignoredFields;
+
+    /** The hash of the mapping that the documents are built with. */
+    protected final long mappingHash;
+
+    /** The id hashes (open addressing, 0 means empty). */
+    protected long[] ids;
+
+    /** The content hashes. */
+    protected long[] hashes;
+
+    /** The timestamps. */
+    protected long[] timestamps;
+
+    /** The number of fingerprints. */
+    protected int size;
+
+    /** The number of records skipped because they were unchanged. */
+    protected final LongAdder unchangedCount = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param file The fingerprint file.
+     * @param idField The source field that identifies a record.
+     * @param timestampField The source field that holds the modification timestamp, or null.
+     * @param ignoredFields The source fields that are not part of the content hash.
+     */
+    public FingerprintStore(final Path file, final String idField, final String timestampField, final Set<String> ignoredFields) {
+        this(file, idField, timestampField, ignoredFields, 0L);
+    }
+
+    /**
+     * Constructor.
+     * @param file The fingerprint file.
+     * @param idField The source field that identifies a record.
+     * @param timestampField The source field that holds the modification timestamp, or null.
+     * @param ignoredFields The source fields that are not part of the content hash.
+     * @param mappingHash The hash of the mapping that the documents are built with, such as {@code hash(scriptMap)}.
+     */
+    public FingerprintStore(final Path file, final String idField, final String timestampField, final Set<String> ignoredFields,
+            final long mappingHash) {
+        this.file = file;
+        this.idField = idField;
+        this.timestampField = timestampField;
+        this.ignoredFields = ignoredFields;
+        this.mappingHash = mappingHash;
+        allocate(1024);
+    }
+
+    /**
+     * Create the fingerprint file path for a data configuration.
+     * @param dir The fingerprint directory.
+     * @param configId The data configuration id, or null.
+     * @return The fingerprint file.
+     */
+    public static Path getFile(final Path dir, final String configId) {
+        final String name = configId == null ? "default" : configId.replaceAll("[^A-Za-z0-9_.\\-]", "_");
+        return dir.resolve(name + ".fingerprints");
+    }
+
+    /**
+     * Compute the fingerprint of a source record.
+     * @param source The source record.
+     * @return The fingerprint, or null if the record has no id.
+     */
+    public Fingerprint fingerprint(final Map<String, Object> source) {
+        final Object id = source.get(idField);
+        if (id == null) {
+            return null;
+        }
+        long digest = 0;
+        for (final Map.Entry<String, Object> entry : source.entrySet()) {
+            final String name = entry.getKey();
+            if (!name.equals(timestampField) && !ignoredFields.contains(name)) {
+                // Summing mixed field hashes makes the result independent of the field order.
+                digest += mix(hash(name) * 31 + hash(entry.getValue()));
+            }
+        }
+        return new Fingerprint(nonEmpty(mix(hash(id))), digest, toTimestamp(timestampField != null ? source.get(timestampField) : null));
+    }
+
+    /**
+     * Check whether a record is unchanged since it was last stored.
+     * @param fingerprint The fingerprint of the record.
+     * @return true if the content hash is the same and the timestamp is not newer.
+     */
+    public synchronized boolean isUnchanged(final Fingerprint fingerprint) {
+        final int slot = find(fingerprint.getId());
+        if (ids[slot] == EMPTY || hashes[slot] != fingerprint.getHash()
+                || fingerprint.getTimestamp() != NO_TIMESTAMP && fingerprint.getTimestamp() > timestamps[slot]) {
+            return false;
+        }
+        unchangedCount.increment();
+        return true;
+    }
+
+    /**
+     * Save the fingerprint of a record that has been stored.
+     * @param fingerprint The fingerprint of the record.
+     */
+    public synchronized void update(final Fingerprint fingerprint) {
+        int slot = find(fingerprint.getId());
+        if (ids[slot] == EMPTY) {
+            if ((size + 1) * 4 > ids.length * 3) {
+                rehash(ids.length * 2);
+                slot = find(fingerprint.getId());
+            }
+            ids[slot] = fingerprint.getId();
+            size++;
+        }
+        hashes[slot] = fingerprint.getHash();
+        timestamps[slot] = fingerprint.getTimestamp();
+    }
+
+    /**
+     * Load the fingerprints saved by the previous run. A missing or unreadable
+     * file, or a file saved with another mapping, starts with an empty store.
+     */
+    public synchronized void load() {
+        allocate(1024);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown file format.");
+            }
+            if (in.readLong() != mappingHash) {
+                logger.info("The mapping changed since the fingerprints {} were saved. All records are processed.", file);
+                return;
+            }
+            final int count = in.readInt();
+            allocate(Math.max(1024, Integer.highestOneBit(Math.max(1, count)) * 4));
+            for (int i = 0; i < count; i++) {
+                update(new Fingerprint(in.readLong(), in.readLong(), in.readLong()));
+            }
+        } catch (final IOException e) {
+            logger.warn("Failed to read the fingerprints {}. All records are processed.", file, e);
+            allocate(1024);
+        }
+    }
+
+    /**
+     * Write the fingerprints to the file.
+     */
+    public synchronized void save() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(mappingHash);
+                out.writeInt(size);
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] != EMPTY) {
+                        out.writeLong(ids[i]);
+                        out.writeLong(hashes[i]);
+                        out.writeLong(timestamps[i]);
+                    }
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            logger.warn("Failed to save the fingerprints {}.", file, e);
+        }
+    }
+
+    /**
+     * @return The number of fingerprints.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of records skipped because they were unchanged.
+     */
+    public long getUnchangedCount() {
+        return unchangedCount.sum();
+    }
+
+    /**
+     * @return The fingerprint file.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    private void allocate(final int capacity) {
+        ids = new long[capacity];
+        hashes = new long[capacity];
+        timestamps = new long[capacity];
+        size = 0;
+    }
+
+    private int find(final long id) {
+        final int mask = ids.length - 1;
+        int slot = (int) (id ^ id >>> 32) & mask;
+        while (ids[slot] != EMPTY && ids[slot] != id) {
+            slot = slot + 1 & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldIds = ids;
+        final long[] oldHashes = hashes;
+        final long[] oldTimestamps = timestamps;
+        allocate(capacity);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                final int slot = find(oldIds[i]);
+                ids[slot] = oldIds[i];
+                hashes[slot] = oldHashes[i];
+                timestamps[slot] = oldTimestamps[i];
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Hash a field value. Character data is hashed by content, so the result is
+     * stable across JVM runs. A {@link LazyField} is hashed by its version, so
+     * it is not read. A map, such as a scriptMap, is hashed independently of
+     * the order of its entries.
+     * @param value The value.
+     * @return The hash.
+     */
+    protected static long hash(final Object value) {
+        if (value == null) {
+            return 0x9E3779B97F4A7C15L;
+        }
+        if (value instanceof final CharSequence cs) {
+            long h = 0xCBF29CE484222325L;
+            for (int i = 0; i < cs.length(); i++) {
+                h ^= cs.charAt(i);
+                h *= 0x100000001B3L;
+            }
+            return h;
+        }
+        if (value instanceof final Date date) {
+            return mix(date.getTime());
+        }
+        if (value instanceof final LazyField field) {
+            return hash(field.getVersion());
+        }
+        if (value instanceof final Collection<?> collection) {
+            long h = 1;
+            for (final Object element : collection) {
+                h = h * 31 + hash(element);
+            }
+            return h;
+        }
+        if (value instanceof final Map<?, ?> map) {
+            long h = 0;
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                h += mix(hash(entry.getKey()) * 31 + hash(entry.getValue()));
+            }
+            return h;
+        }
+        return hash(value.toString());
+    }
+
+    /**
+     * Convert a timestamp field value to epoch milliseconds.
+     * @param value The value.
+     * @return The timestamp, or {@link #NO_TIMESTAMP}.
+     */
+    protected static long toTimestamp(final Object value) {
+        if (value instanceof final Date date) {
+            return date.getTime();
+        }
+        if (value instanceof final Number number) {
+            return number.longValue();
+        }
+        return NO_TIMESTAMP;
+    }
+
+    /**
+     * Spread the bits of a hash (the finalizer of MurmurHash3).
+     * @param h The hash.
+     * @return The mixed hash.
+     */
+    protected static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long nonEmpty(final long id) {
+        return id == EMPTY ? 1L : id;
+    }
+
+    /**
+     * The fingerprint of one record.
+     */
+    public static class Fingerprint {
+        private final long id;
+
+        private final long hash;
+
+        private final long timestamp;
+
+        /**
+         * Constructor.
+         * @param id The hash of the record id.
+         * @param hash The hash of the source fields.
+         * @param timestamp The modification timestamp, or {@link FingerprintStore#NO_TIMESTAMP}.
+         */
+        public Fingerprint(final long id, final long hash, final long timestamp) {
+            this.id = id;
+            this.hash = hash;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @return The hash of the record id.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return The hash of the source fields.
+         */
+        public long getHash() {
+            return hash;
+        }
+
+        /**
+         * @return The modification timestamp, or {@link FingerprintStore#NO_TIMESTAMP}.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
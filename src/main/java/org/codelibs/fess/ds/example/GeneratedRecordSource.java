@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * A {@link RecordSource} that generates each record on demand from its index.
+ *
+ * <p>
+ * This is the source of {@link ExampleDataStore}: records are created by
+ * {@link ExampleDataStore#createSourceRecord(int)} only when they are read, so
+ * no record is held in memory by the source.
+ * </p>
+ *
+ * <p>
+ * With a duration, the source ends when the duration has passed since it was
+ * created, even if fewer than {@code size} records were read.
+ * </p>
+ */
+public class GeneratedRecordSource implements RecordSource {
+
+    /** The number of records. */
+    protected final int size;
+
+    /** Creates the record for an index. */
+    protected final IntFunction<Map<String, Object>> generator;
+
+    /** The time in nanoseconds after which no record is returned, or 0 for no limit. */
+    protected final long duration;
+
+    /** The time the source was created. */
+    protected final long startTime;
+
+    /** The index of the next record. */
+    protected int position;
+
+    /**
+     * Constructor.
+     * @param size The number of records.
+     * @param generator Creates the record for an index.
+     */
+    public GeneratedRecordSource(final int size, final IntFunction<Map<String, Object>> generator) {
+        this(size, generator, 0L);
+    }
+
+    /**
+     * Constructor.
+     * @param size The maximum number of records.
+     * @param generator Creates the record for an index.
+     * @param duration The time in nanoseconds after which the source ends, or 0 for no limit.
+     */
+    public GeneratedRecordSource(final int size, final IntFunction<Map<String, Object>> generator, final long duration) {
+        this.size = size;
+        this.generator = generator;
+        this.duration = duration;
+        startTime = System.nanoTime();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < size && (duration <= 0 || System.nanoTime() - startTime < duration);
+    }
+
+    @Override
+    public int skip(final int count) {
+        final int skipped = Math.max(0, Math.min(count, size - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        // The position moves forward first, so a failing record is not read again.
+        return generator.apply(position++);
+    }
+}
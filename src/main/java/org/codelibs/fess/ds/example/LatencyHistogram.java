@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent latency histogram with log-linear buckets, in the style of
+ * HdrHistogram.
+ *
+ * <p>
+ * Every power of two is split into {@code 2^(SUB_BUCKET_BITS - 1)} linear
+ * buckets, so a recorded value is reported with a relative error below
+ * {@code 1 / 2^(SUB_BUCKET_BITS - 1)} (about 3%) over the whole range of
+ * {@code long}. The buckets are allocated once; recording a value only
+ * increments counters and allocates nothing, so it can be called for every
+ * record from any thread.
+ * </p>
+ */
+public class LatencyHistogram {
+
+    /** The number of bits of a value that select its linear sub-bucket. */
+    protected static final int SUB_BUCKET_BITS = 6;
+
+    /** The number of values below which every value has its own bucket. */
+    protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** The number of buckets per power of two above {@link #SUB_BUCKET_COUNT}. */
+    protected static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    /** The total number of buckets. */
+    protected static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder totalCount = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Default constructor.
+     */
+    public LatencyHistogram() {
+        // nothing
+    }
+
+    /**
+     * Record a value.
+     * @param nanos The latency in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(getBucketIndex(value));
+        totalCount.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @param value A non-negative value.
+     * @return The index of the bucket of the value.
+     */
+    protected static int getBucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index The index of a bucket.
+     * @return The highest value that falls into the bucket.
+     */
+    protected static long getBucketUpperBound(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        final long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+        // For the last bucket this wraps around to Long.MAX_VALUE.
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return The sum of the recorded values in nanoseconds.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return The mean of the recorded values in nanoseconds, or 0 if there are none.
+     */
+    public double getMean() {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * @return The highest recorded value in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the value at a percentile. The result is the upper bound of the
+     * bucket that contains the percentile, but never above the highest
+     * recorded value.
+     * @param percentile The percentile between 0 and 100.
+     * @return The value in nanoseconds, or 0 if there are no values.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+            if (count >= rank) {
+                return Math.min(getBucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + toMillis(Math.round(getMean())) + "ms, p50=" + toMillis(getValueAtPercentile(50))
+                + "ms, p90=" + toMillis(getValueAtPercentile(90)) + "ms, p99=" + toMillis(getValueAtPercentile(99)) + "ms, max="
+                + toMillis(getMax()) + "ms";
+    }
+
+    private static String toMillis(final long nanos) {
+        return String.format("%.3f", (double) nanos / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.codelibs.fess.crawler.exception.CrawlingAccessException;
+
+/**
+ * A large text field of a source record that is read only when a script
+ * refers to it.
+ *
+ * <p>
+ * Put a {@code LazyField} into the source record instead of the content, for
+ * example a document body behind a URL or a BLOB column. The
+ * {@link ResultMapView} loads it the first time the field is read, through a
+ * {@link Reader} so that at most {@link ContentLimit#getMaxSize()} + 1
+ * characters are ever held in memory. The loaded value is kept, so a field
+ * referenced by several scripts is read once. A script engine that copies
+ * the {@code resultMap}, such as Fess's Groovy engine, reads every field, so
+ * the content is only left unread for records whose scripts are all field
+ * references or cache hits; see {@link ResultMapView}.
+ * </p>
+ *
+ * <p>
+ * In incremental mode the {@link FingerprintStore} hashes the version of the
+ * field, for example a last-modified time or an ETag, instead of reading the
+ * content. Without a version, a change of the content alone is not detected.
+ * </p>
+ */
+public class LazyField {
+
+    /** The size of the read buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Opens the content of a field.
+     */
+    @FunctionalInterface
+    public interface Opener {
+        /**
+         * @return A reader of the content; it is closed after the content was read.
+         * @throws IOException if the content cannot be opened.
+         */
+        Reader open() throws IOException;
+    }
+
+    private final Object version;
+
+    private final Opener opener;
+
+    private String value;
+
+    private boolean loaded;
+
+    /**
+     * Constructor.
+     * @param opener Opens the content.
+     */
+    public LazyField(final Opener opener) {
+        this(null, opener);
+    }
+
+    /**
+     * Constructor.
+     * @param version The version of the content, or null.
+     * @param opener Opens the content.
+     */
+    public LazyField(final Object version, final Opener opener) {
+        this.version = version;
+        this.opener = opener;
+    }
+
+    /**
+     * @return The version of the content, or null.
+     */
+    public Object getVersion() {
+        return version;
+    }
+
+    /**
+     * Read the content, or return it if it was read before.
+     * @param name The field name.
+     * @param contentLimit The limit of the content, or null.
+     * @return The content, limited by the content limit.
+     * @throws CrawlingAccessException if the content cannot be read.
+     */
+    public synchronized String load(final String name, final ContentLimit contentLimit) {
+        if (!loaded) {
+            value = read(name, contentLimit);
+            loaded = true;
+        }
+        return value;
+    }
+
+    /**
+     * @return true if the content was read.
+     */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    private String read(final String name, final ContentLimit contentLimit) {
+        // One character more than the limit tells whether the content is longer.
+        final long limit = contentLimit != null ? contentLimit.getMaxSize() + 1L : Long.MAX_VALUE;
+        final StringBuilder buf = new StringBuilder((int) Math.min(limit, BUFFER_SIZE));
+        try (Reader reader = opener.open()) {
+            final char[] chars = new char[(int) Math.min(limit, BUFFER_SIZE)];
+            int length;
+            while (buf.length() < limit && (length = reader.read(chars, 0, (int) Math.min(chars.length, limit - buf.length()))) != -1) {
+                buf.append(chars, 0, length);
+            }
+        } catch (final IOException e) {
+            throw new CrawlingAccessException("Failed to read the field " + name + ".", e);
+        }
+        return contentLimit != null ? contentLimit.apply(name, buf) : buf.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return loaded ? "LazyField [length=" + value.length() + "]" : "LazyField [not loaded]";
+    }
+}
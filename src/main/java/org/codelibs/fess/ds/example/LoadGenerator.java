@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic source records of a configurable shape, for capacity
+ * tests of the indexing path.
+ *
+ * <p>
+ * A record has the fields {@code id}, {@code title}, {@code body},
+ * {@code url} and {@code created}, plus {@code fieldCount} extra text fields
+ * {@code field0}, {@code field1}, .... The body length in characters follows
+ * a {@link Distribution} around {@code bodySize}, and the words of the text
+ * fields are written in a weighted mix of {@link Script}s.
+ * </p>
+ *
+ * <p>
+ * The random values of a record only depend on the seed and the index of the
+ * record, so a run with the same seed produces the same records, also when it
+ * is resumed from a checkpoint or split into shards. Only {@code created}
+ * is the time the record was generated.
+ * </p>
+ */
+public class LoadGenerator {
+
+    /** The upper bound of a log-normal body size, as a multiple of the mean. */
+    protected static final int MAX_BODY_FACTOR = 16;
+
+    /**
+     * The distribution of the body sizes.
+     */
+    public enum Distribution {
+        /** Every body has the mean size. */
+        FIXED,
+        /** Uniform between 0 and twice the mean size. */
+        UNIFORM,
+        /** Log-normal with the mean size and a long tail, like real documents. */
+        LOGNORMAL;
+
+        /**
+         * Parse a distribution name, ignoring case.
+         * @param value The name, e.g. {@code lognormal}.
+         * @return The distribution.
+         * @throws IllegalArgumentException if the name is unknown.
+         */
+        public static Distribution parse(final String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * A writing system the words are taken from.
+     */
+    public enum Script {
+        /** Lower case ASCII letters. */
+        ASCII(0x61, 0x7A),
+        /** Latin letters with diacritics. */
+        LATIN(0xE0, 0xF6),
+        /** Greek lower case letters. */
+        GREEK(0x3B1, 0x3C9),
+        /** Cyrillic lower case letters. */
+        CYRILLIC(0x430, 0x44F),
+        /** CJK unified ideographs. */
+        CJK(0x4E00, 0x9FFF),
+        /** Emoticons, outside the Basic Multilingual Plane (surrogate pairs). */
+        EMOJI(0x1F600, 0x1F64F);
+
+        private final int first;
+
+        private final int last;
+
+        Script(final int first, final int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * @param random The random generator.
+         * @return A random code point of this script.
+         */
+        public int nextCodePoint(final SplittableRandom random) {
+            return random.nextInt(first, last + 1);
+        }
+    }
+
+    private final long seed;
+
+    private final int fieldCount;
+
+    private final int bodySize;
+
+    private final Distribution distribution;
+
+    private final UnicodeMix unicodeMix;
+
+    private final RecordSchema schema;
+
+    /**
+     * Constructor.
+     * @param seed The random seed.
+     * @param fieldCount The number of extra fields.
+     * @param bodySize The mean body size in characters.
+     * @param distribution The distribution of the body sizes.
+     * @param unicodeMix The weighted scripts, e.g. {@code ascii:90,cjk:5,emoji:5}.
+     * @throws IllegalArgumentException if the unicode mix is invalid.
+     */
+    public LoadGenerator(final long seed, final int fieldCount, final int bodySize, final Distribution distribution,
+            final String unicodeMix) {
+        this(seed, fieldCount, bodySize, distribution, UnicodeMix.parse(unicodeMix));
+    }
+
+    /**
+     * Constructor.
+     * @param seed The random seed.
+     * @param fieldCount The number of extra fields.
+     * @param bodySize The mean body size in characters.
+     * @param distribution The distribution of the body sizes.
+     * @param unicodeMix The weighted scripts.
+     */
+    public LoadGenerator(final long seed, final int fieldCount, final int bodySize, final Distribution distribution,
+            final UnicodeMix unicodeMix) {
+        this.seed = seed;
+        this.fieldCount = Math.max(0, fieldCount);
+        this.bodySize = Math.max(0, bodySize);
+        this.distribution = distribution;
+        this.unicodeMix = unicodeMix;
+
+        final String[] fieldNames = new String[5 + this.fieldCount];
+        fieldNames[0] = "id";
+        fieldNames[1] = "title";
+        fieldNames[2] = "body";
+        fieldNames[3] = "url";
+        fieldNames[4] = "created";
+        for (int i = 0; i < this.fieldCount; i++) {
+            fieldNames[5 + i] = "field" + i;
+        }
+        schema = new RecordSchema(fieldNames);
+    }
+
+    /**
+     * Generate the record for an index.
+     * @param index The index of the record.
+     * @return The record.
+     */
+    public SchemaRecord newRecord(final int index) {
+        final SplittableRandom random = new SplittableRandom(FingerprintStore.mix(seed + index));
+        final SchemaRecord record = schema.newRecord();
+        record.set(0, Integer.toString(index));
+        record.set(1, newText(random, 10 + random.nextInt(50)));
+        record.set(2, newText(random, nextBodySize(random)));
+        record.set(3, "http://fess.codelibs.org/?sample=" + index);
+        record.set(4, new Date());
+        for (int i = 0; i < fieldCount; i++) {
+            record.set(5 + i, newText(random, 5 + random.nextInt(20)));
+        }
+        return record;
+    }
+
+    /**
+     * Draw the size of a body.
+     * @param random The random generator of the record.
+     * @return The size in characters.
+     */
+    protected int nextBodySize(final SplittableRandom random) {
+        if (bodySize == 0) {
+            return 0;
+        }
+        return switch (distribution) {
+        case FIXED -> bodySize;
+        case UNIFORM -> random.nextInt(2 * bodySize + 1);
+        case LOGNORMAL -> {
+            // With sigma = 1 the mean of exp(mu + sigma * Z) is exp(mu + 1/2).
+            final double mu = Math.log(bodySize) - 0.5;
+            yield (int) Math.min(Math.exp(mu + random.nextGaussian()), (double) bodySize * MAX_BODY_FACTOR);
+        }
+        };
+    }
+
+    /**
+     * Generate text of space-separated words.
+     * @param random The random generator of the record.
+     * @param length The length in characters.
+     * @return The text.
+     */
+    protected String newText(final SplittableRandom random, final int length) {
+        final StringBuilder buf = new StringBuilder(length);
+        while (buf.length() < length) {
+            if (buf.length() > 0) {
+                buf.append(' ');
+            }
+            final Script script = unicodeMix.next(random);
+            final int wordLength = 2 + random.nextInt(9);
+            for (int i = 0; i < wordLength; i++) {
+                final int codePoint = script.nextCodePoint(random);
+                if (buf.length() + Character.charCount(codePoint) > length) {
+                    break;
+                }
+                buf.appendCodePoint(codePoint);
+            }
+            if (buf.length() == length - 1) {
+                buf.append(' ');
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return The schema of the generated records.
+     */
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return The random seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadGenerator [seed=" + seed + ", fieldCount=" + fieldCount + ", bodySize=" + bodySize + ", distribution="
+                + distribution + ", scripts=" + unicodeMix.size() + "]";
+    }
+
+    /**
+     * A weighted mix of {@link Script}s.
+     */
+    public static final class UnicodeMix {
+        private final Script[] scripts;
+
+        private final int[] cumulativeWeights;
+
+        private UnicodeMix(final Script[] scripts, final int[] cumulativeWeights) {
+            this.scripts = scripts;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+
+        /**
+         * Parse a unicode mix.
+         * @param value The weighted scripts, e.g. {@code ascii:90,cjk:5,emoji:5}. A script without a weight has the weight 1.
+         * @return The unicode mix.
+         * @throws IllegalArgumentException if the unicode mix is invalid.
+         */
+        public static UnicodeMix parse(final String value) {
+            final List<Script> scriptList = new ArrayList<>();
+            final List<Integer> weightList = new ArrayList<>();
+            for (final String part : value.split(",")) {
+                if (part.isBlank()) {
+                    continue;
+                }
+                final int pos = part.indexOf(':');
+                scriptList.add(Script.valueOf((pos < 0 ? part : part.substring(0, pos)).trim().toUpperCase(Locale.ROOT)));
+                final int weight = pos < 0 ? 1 : Integer.parseInt(part.substring(pos + 1).trim());
+                if (weight <= 0) {
+                    throw new IllegalArgumentException("The weight of " + part.trim() + " must be positive.");
+                }
+                weightList.add(weight);
+            }
+            if (scriptList.isEmpty()) {
+                throw new IllegalArgumentException("No script in " + value);
+            }
+            final Script[] scripts = scriptList.toArray(new Script[0]);
+            final int[] cumulativeWeights = new int[scripts.length];
+            int total = 0;
+            for (int i = 0; i < scripts.length; i++) {
+                if (weightList.get(i) > Integer.MAX_VALUE - total) {
+                    throw new IllegalArgumentException("The weights of " + value + " are too large.");
+                }
+                total += weightList.get(i);
+                cumulativeWeights[i] = total;
+            }
+            return new UnicodeMix(scripts, cumulativeWeights);
+        }
+
+        /**
+         * @param random The random generator of the record.
+         * @return A script drawn by the weights.
+         */
+        public Script next(final SplittableRandom random) {
+            if (scripts.length == 1) {
+                return scripts[0];
+            }
+            final int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return scripts[i];
+                }
+            }
+            return scripts[scripts.length - 1];
+        }
+
+        /**
+         * @return The number of scripts.
+         */
+        public int size() {
+            return scripts.length;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.entity.DataStoreParams;
+
+/**
+ * Checks the parameters of a run before it starts.
+ *
+ * <p>
+ * Replacing an invalid value by its default and logging a warning is easy to
+ * miss when a job runs for hours. The validator collects every invalid value
+ * instead, so that a misconfigured run fails before the first record is read,
+ * with one message that lists all problems. A missing or blank parameter is
+ * not checked; its default applies.
+ * </p>
+ *
+ * <p>
+ * Every check parses the value once and puts a valid value into the
+ * {@link RunPlan} of the validator, from which the run takes it.
+ * </p>
+ */
+public class ParamValidator {
+
+    private final DataStoreParams paramMap;
+
+    private final RunPlan plan;
+
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Constructor.
+     * @param paramMap The parameters to check.
+     */
+    public ParamValidator(final DataStoreParams paramMap) {
+        this.paramMap = paramMap;
+        plan = new RunPlan(paramMap);
+    }
+
+    /**
+     * @return The plan with the valid values of the checked parameters.
+     */
+    public RunPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Check an integer parameter.
+     * @param name The parameter name.
+     * @param min The smallest valid value.
+     * @param max The largest valid value.
+     * @return The value, or null if the parameter is not set or invalid.
+     */
+    public Long checkLong(final String name, final long min, final long max) {
+        final String value = getValue(name);
+        if (value == null) {
+            return null;
+        }
+        final long number;
+        try {
+            number = Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            addError(name, "'" + value + "' is not an integer");
+            return null;
+        }
+        return checkRange(name, number, min, max) ? put(name, number) : null;
+    }
+
+    /**
+     * Check a decimal parameter.
+     * @param name The parameter name.
+     * @param min The smallest valid value.
+     * @param max The largest valid value.
+     * @return The value, or null if the parameter is not set or invalid.
+     */
+    public Double checkDouble(final String name, final double min, final double max) {
+        final String value = getValue(name);
+        if (value == null) {
+            return null;
+        }
+        final double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            addError(name, "'" + value + "' is not a number");
+            return null;
+        }
+        if (!Double.isFinite(number)) {
+            addError(name, "'" + value + "' is not a finite number");
+            return null;
+        }
+        return checkRange(name, number, min, max) ? put(name, number) : null;
+    }
+
+    /**
+     * Check a boolean parameter.
+     * @param name The parameter name.
+     * @return The value, or null if the parameter is not set or invalid.
+     */
+    public Boolean checkBoolean(final String name) {
+        return parse(name, value -> {
+            if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                throw new IllegalArgumentException();
+            }
+            return Boolean.valueOf(value);
+        }, "true or false");
+    }
+
+    /**
+     * Check a parameter whose value is the name of an enum constant, ignoring case.
+     * @param <E> The enum type.
+     * @param name The parameter name.
+     * @param type The enum type.
+     * @return The value, or null if the parameter is not set or invalid.
+     */
+    public <E extends Enum<E>> E checkEnum(final String name, final Class<E> type) {
+        final List<String> names = new ArrayList<>();
+        for (final E constant : type.getEnumConstants()) {
+            names.add(constant.name().toLowerCase(Locale.ROOT));
+        }
+        return parse(name, value -> Enum.valueOf(type, value.toUpperCase(Locale.ROOT)), "one of " + String.join(", ", names));
+    }
+
+    /**
+     * Check a text parameter. Any value that is not blank is valid.
+     * @param name The parameter name.
+     * @return The trimmed value, or null if the parameter is not set.
+     */
+    public String checkString(final String name) {
+        final String value = getValue(name);
+        return value != null ? put(name, value) : null;
+    }
+
+    /**
+     * Check a parameter with a parser.
+     * @param name The parameter name.
+     * @param parser The parser. It throws an {@link IllegalArgumentException} if the value is invalid.
+     * @param expected What a valid value is, used in the error message, e.g. {@code "a list of script:weight"}.
+     */
+    public void check(final String name, final Consumer<String> parser, final String expected) {
+        parse(name, value -> {
+            parser.accept(value);
+            return value;
+        }, expected);
+    }
+
+    /**
+     * Check a parameter with a parser that returns the parsed value.
+     * @param <T> The type of the value.
+     * @param name The parameter name.
+     * @param parser The parser. It throws an {@link IllegalArgumentException} if the value is invalid.
+     * @param expected What a valid value is, used in the error message, e.g. {@code "a list of script:weight"}.
+     * @return The parsed value, or null if the parameter is not set or invalid.
+     */
+    public <T> T parse(final String name, final Function<String, T> parser, final String expected) {
+        final String value = getValue(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return put(name, parser.apply(value));
+        } catch (final IllegalArgumentException e) {
+            addError(name, "'" + value + "' is not " + expected);
+            return null;
+        }
+    }
+
+    /**
+     * Add an error found by a check that is not covered by this class, such as
+     * a relation between two parameters.
+     * @param name The parameter name.
+     * @param message The error message.
+     */
+    public void addError(final String name, final String message) {
+        errors.add(name + ": " + message + ".");
+    }
+
+    /**
+     * Get the errors found so far.
+     * @return The errors, in the order in which they were found.
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    private <T> T put(final String name, final T value) {
+        plan.put(name, value);
+        return value;
+    }
+
+    private boolean checkRange(final String name, final long number, final long min, final long max) {
+        if (number < min) {
+            addError(name, number + " is less than " + min);
+            return false;
+        }
+        if (number > max) {
+            addError(name, number + " is greater than " + max);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkRange(final String name, final double number, final double min, final double max) {
+        if (number < min) {
+            addError(name, format(number) + " is less than " + format(min));
+            return false;
+        }
+        if (number > max) {
+            addError(name, format(number) + " is greater than " + format(max));
+            return false;
+        }
+        return true;
+    }
+
+    private String getValue(final String name) {
+        final String value = paramMap.getAsString(name);
+        return StringUtil.isBlank(value) ? null : value.trim();
+    }
+
+    private static String format(final double number) {
+        return number == (long) number ? Long.toString((long) number) : Double.toString(number);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The aggregate figures of one {@link ExampleDataStore#storeData} run.
+ *
+ * <p>
+ * The {@link LatencyHistogram} of each {@link Stage} shows where the time of a
+ * record goes; the counters show how many records were read, stored, skipped
+ * or failed. {@code CrawlerStatsHelper} records the events of single records,
+ * while these figures summarize the whole run. All methods are thread-safe and
+ * recording allocates nothing, except for the first exception of a type.
+ * </p>
+ */
+public class PipelineMetrics {
+
+    /**
+     * The stages of the pipeline of a record.
+     */
+    public enum Stage {
+        /** Reading the record from the {@link RecordSource}. */
+        READ,
+        /** Preparing the record: fingerprint check and resultMap building. */
+        PREPARE,
+        /** Evaluating the scriptMap into the dataMap. */
+        EVALUATE,
+        /** Storing the dataMap through the callback. */
+        STORE
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    private final LongAdder recordCount = new LongAdder();
+
+    private final LongAdder storedCount = new LongAdder();
+
+    private final LongAdder byteCount = new LongAdder();
+
+    private final LongAdder skippedCount = new LongAdder();
+
+    private final LongAdder duplicateCount = new LongAdder();
+
+    private final Map<String, LongAdder> exceptionCounts = new ConcurrentHashMap<>();
+
+    private final long startTime = System.nanoTime();
+
+    /** The time when the run finished, or Long.MIN_VALUE while it is in progress. */
+    private volatile long endTime = Long.MIN_VALUE;
+
+    /**
+     * Default constructor.
+     */
+    public PipelineMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Record the latency of a stage of a record.
+     * @param stage The stage.
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(final Stage stage, final long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Report a record that was read from the source.
+     * @param nanos The time spent reading it.
+     */
+    public void read(final long nanos) {
+        recordCount.increment();
+        record(Stage.READ, nanos);
+    }
+
+    /**
+     * Report a document that the callback stored.
+     * @param nanos The time spent in the callback.
+     * @param bytes The estimated size of the document.
+     */
+    public void stored(final long nanos, final long bytes) {
+        storedCount.increment();
+        byteCount.add(bytes);
+        record(Stage.STORE, nanos);
+    }
+
+    /**
+     * Report a record that was skipped, for example because it is unchanged.
+     */
+    public void skipped() {
+        skippedCount.increment();
+    }
+
+    /**
+     * Report a record that was dropped as a duplicate of an earlier record.
+     */
+    public void duplicate() {
+        duplicateCount.increment();
+    }
+
+    /**
+     * Report a record that failed.
+     * @param t The exception.
+     */
+    public void failed(final Throwable t) {
+        exceptionCounts.computeIfAbsent(t.getClass().getName(), k -> new LongAdder()).increment();
+    }
+
+    /**
+     * @param stage The stage.
+     * @return The latency histogram of the stage.
+     */
+    public LatencyHistogram getHistogram(final Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * @return The number of records read from the source.
+     */
+    public long getRecordCount() {
+        return recordCount.sum();
+    }
+
+    /**
+     * @return The number of documents stored through the callback.
+     */
+    public long getStoredCount() {
+        return storedCount.sum();
+    }
+
+    /**
+     * @return The estimated size in bytes of the stored documents.
+     */
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    /**
+     * @return The number of skipped records.
+     */
+    public long getSkippedCount() {
+        return skippedCount.sum();
+    }
+
+    /**
+     * @return The number of records dropped as duplicates.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    /**
+     * @return The number of failed records by exception class name, sorted by name.
+     */
+    public Map<String, Long> getExceptionCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        exceptionCounts.forEach((k, v) -> counts.put(k, v.sum()));
+        return counts;
+    }
+
+    /**
+     * Mark the run as finished, so that the elapsed time stops growing. Only
+     * the first call has an effect.
+     */
+    public synchronized void finish() {
+        if (endTime == Long.MIN_VALUE) {
+            endTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return The time in nanoseconds since the run started, or the duration of the run once it finished.
+     */
+    public long getElapsedTime() {
+        final long end = endTime;
+        return (end != Long.MIN_VALUE ? end : System.nanoTime()) - startTime;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder(512);
+        buf.append("records=").append(getRecordCount()).append(", stored=").append(getStoredCount()).append(", bytes=")
+                .append(getByteCount()).append(", skipped=").append(getSkippedCount()).append(", duplicates=")
+                .append(getDuplicateCount()).append(", exceptions=")
+                .append(getExceptionCounts()).append(", elapsed=").append(getElapsedTime() / 1_000_000).append("ms");
+        for (final Stage stage : Stage.values()) {
+            buf.append("\n  ").append(stage).append(": ").append(getHistogram(stage));
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+
+/**
+ * A prepared document waiting to be stored: the document built by the
+ * scripts, with the stats key, the parameters and the fingerprint of its
+ * source record.
+ *
+ * <p>
+ * It is handed from the thread that prepares a record to the thread that
+ * stores it by the {@link RecordPipeline}, the {@link SpillBuffer} and the
+ * {@link AsyncIndexUpdateCallback}.
+ * </p>
+ */
+public class PreparedDocument {
+
+    private final int index;
+
+    private final StatsKeyObject statsKey;
+
+    private final DataStoreParams paramMap;
+
+    private final Map<String, Object> dataMap;
+
+    private final long size;
+
+    private final FingerprintStore.Fingerprint fingerprint;
+
+    /**
+     * Constructor.
+     * @param index The index of the source record.
+     * @param statsKey The stats key of the record.
+     * @param paramMap The parameters passed to the callback.
+     * @param dataMap The document.
+     */
+    public PreparedDocument(final int index, final StatsKeyObject statsKey, final DataStoreParams paramMap,
+            final Map<String, Object> dataMap) {
+        this(index, statsKey, paramMap, dataMap, null);
+    }
+
+    /**
+     * Constructor.
+     * @param index The index of the source record.
+     * @param statsKey The stats key of the record.
+     * @param paramMap The parameters passed to the callback.
+     * @param dataMap The document.
+     * @param fingerprint The fingerprint to save once the document is stored, or null.
+     */
+    public PreparedDocument(final int index, final StatsKeyObject statsKey, final DataStoreParams paramMap,
+            final Map<String, Object> dataMap, final FingerprintStore.Fingerprint fingerprint) {
+        this.index = index;
+        this.statsKey = statsKey;
+        this.paramMap = paramMap;
+        this.dataMap = dataMap;
+        this.fingerprint = fingerprint;
+        size = estimateSize(dataMap);
+    }
+
+    /**
+     * @return The index of the source record.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The stats key of the record.
+     */
+    public StatsKeyObject getStatsKey() {
+        return statsKey;
+    }
+
+    /**
+     * @return The parameters passed to the callback.
+     */
+    public DataStoreParams getParamMap() {
+        return paramMap;
+    }
+
+    /**
+     * @return The document.
+     */
+    public Map<String, Object> getDataMap() {
+        return dataMap;
+    }
+
+    /**
+     * @return The estimated size of the document in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The fingerprint to save once the document is stored, or null.
+     */
+    public FingerprintStore.Fingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Estimate the size of a document in bytes. Only character data is counted
+     * precisely; other values are counted as a fixed-size field.
+     * @param dataMap The document.
+     * @return The estimated size in bytes.
+     */
+    public static long estimateSize(final Map<String, Object> dataMap) {
+        long size = 0;
+        for (final Map.Entry<String, Object> entry : dataMap.entrySet()) {
+            size += entry.getKey().length() * 2L + estimateValueSize(entry.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateValueSize(final Object value) {
+        if (value instanceof final CharSequence cs) {
+            return cs.length() * 2L;
+        }
+        if (value instanceof final Collection<?> collection) {
+            long size = 0;
+            for (final Object element : collection) {
+                size += estimateValueSize(element);
+            }
+            return size;
+        }
+        return 16;
+    }
+}
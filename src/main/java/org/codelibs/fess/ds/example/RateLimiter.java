@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An adaptive token bucket that limits how fast records are read.
+ *
+ * <p>
+ * The bucket holds up to {@code burst} tokens and is refilled at the current
+ * rate. Reading a record takes one token, so records are only delayed when the
+ * bucket is empty, not one by one. When the bucket is empty, a token is
+ * reserved in advance and the caller sleeps until it is due. This keeps the
+ * rate correct with several readers.
+ * </p>
+ *
+ * <p>
+ * The rate adapts to the health of the index: the outcome and latency of each
+ * stored record are collected in windows of {@link #ADAPT_INTERVAL_NANOS}. If
+ * the average store latency or the error ratio of a window is above its
+ * threshold, the rate is halved (not below the minimum rate). Otherwise it
+ * grows by a tenth of the maximum rate, up to the maximum rate.
+ * </p>
+ */
+public class RateLimiter {
+
+    /** The length of an adaptation window. */
+    protected static final long ADAPT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** The maximum rate in records per second. */
+    protected final double maxRate;
+
+    /** The minimum rate in records per second. */
+    protected final double minRate;
+
+    /** The maximum number of tokens. */
+    protected final double burst;
+
+    /** The average store latency above which the rate is reduced (0 means disabled). */
+    protected final long latencyThresholdNanos;
+
+    /** The error ratio above which the rate is reduced (0 means disabled). */
+    protected final double errorThreshold;
+
+    /** The current rate in records per second. */
+    protected double rate;
+
+    /** The available tokens; negative when tokens are reserved in advance. */
+    protected double tokens;
+
+    /** The time of the last refill. */
+    protected long lastRefillTime;
+
+    /** The start of the current adaptation window. */
+    protected long windowStartTime;
+
+    /** The number of stored records in the current window. */
+    protected long windowCount;
+
+    /** The number of failed records in the current window. */
+    protected long windowErrorCount;
+
+    /** The sum of the store latencies in the current window. */
+    protected long windowLatencyNanos;
+
+    /**
+     * Constructor.
+     * @param maxRate The maximum rate in records per second.
+     * @param minRate The minimum rate in records per second. It must be greater than 0, so that the rate never drops to 0.
+     * @param burst The maximum number of records that may be read without waiting.
+     * @param latencyThresholdNanos The average store latency above which the rate is reduced (0 means disabled).
+     * @param errorThreshold The error ratio above which the rate is reduced (0 means disabled).
+     */
+    public RateLimiter(final double maxRate, final double minRate, final double burst, final long latencyThresholdNanos,
+            final double errorThreshold) {
+        if (!(maxRate > 0 && minRate > 0)) {
+            throw new IllegalArgumentException("Invalid rate: maxRate=" + maxRate + ", minRate=" + minRate);
+        }
+        this.maxRate = maxRate;
+        this.minRate = Math.min(minRate, maxRate);
+        this.burst = Math.max(1, burst);
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.errorThreshold = errorThreshold;
+        rate = maxRate;
+        tokens = this.burst;
+        lastRefillTime = System.nanoTime();
+        windowStartTime = lastRefillTime;
+    }
+
+    /**
+     * Take a token, waiting until one is available.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        final long waitNanos;
+        synchronized (this) {
+            refill(System.nanoTime());
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Record the outcome of a stored record.
+     * @param latencyNanos The time spent in the callback, or 0 if unknown.
+     * @param failed true if the record failed.
+     */
+    public synchronized void record(final long latencyNanos, final boolean failed) {
+        windowCount++;
+        windowLatencyNanos += latencyNanos;
+        if (failed) {
+            windowErrorCount++;
+        }
+        final long now = System.nanoTime();
+        if (now - windowStartTime >= ADAPT_INTERVAL_NANOS) {
+            adapt(now);
+        }
+    }
+
+    /**
+     * Adjust the rate from the current window and start a new window.
+     * @param now The current time.
+     */
+    protected void adapt(final long now) {
+        refill(now);
+        final boolean slow = latencyThresholdNanos > 0 && windowLatencyNanos / windowCount > latencyThresholdNanos;
+        final boolean failing = errorThreshold > 0 && (double) windowErrorCount / windowCount > errorThreshold;
+        if (slow || failing) {
+            rate = Math.max(minRate, rate / 2);
+        } else {
+            rate = Math.min(maxRate, rate + maxRate / 10);
+        }
+        windowStartTime = now;
+        windowCount = 0;
+        windowErrorCount = 0;
+        windowLatencyNanos = 0;
+    }
+
+    private void refill(final long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefillTime) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefillTime = now;
+    }
+
+    /**
+     * @return The current rate in records per second.
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RateLimiter [rate=" + rate + ", maxRate=" + maxRate + ", minRate=" + minRate + ", burst=" + burst + "]";
+    }
+}
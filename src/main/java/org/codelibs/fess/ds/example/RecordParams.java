@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+
+import org.codelibs.fess.Constants;
+import org.codelibs.fess.entity.DataStoreParams;
+
+/**
+ * The parameters that are passed to {@code callback.store} with the document
+ * of one record.
+ *
+ * <p>
+ * The callback reads the stats key of a document from its parameters, under
+ * {@link Constants#CRAWLER_STATS_KEY}. Putting the key into the
+ * {@link DataStoreParams} of the run would let records that are processed at
+ * the same time overwrite each other's key, and copying the parameters for
+ * every record costs a map per record. Instead, the parameters of a record
+ * are read from the read-only parameter snapshot of the run with the stats
+ * key of the record on top, and copied on write: the first {@link #put} or
+ * {@link #asMap()} copies them into the map of this {@link DataStoreParams},
+ * which every method uses from then on. Values put by the callback therefore
+ * only belong to the record, as the run parameters are shared by records that
+ * are processed at the same time.
+ * </p>
+ */
+public class RecordParams extends DataStoreParams {
+
+    private final Map<String, Object> paramSnapshot;
+
+    private final Object statsKey;
+
+    /** True once the parameters are copied into the map of the superclass. */
+    private boolean copied;
+
+    /**
+     * Constructor.
+     * @param paramSnapshot The read-only parameter snapshot of the run, created by {@link ResultMapView#snapshot(DataStoreParams)}.
+     * @param statsKey The stats key of the record.
+     */
+    public RecordParams(final Map<String, Object> paramSnapshot, final Object statsKey) {
+        this.paramSnapshot = paramSnapshot;
+        this.statsKey = statsKey;
+    }
+
+    /**
+     * @return The stats key of the record.
+     */
+    public Object getStatsKey() {
+        return statsKey;
+    }
+
+    @Override
+    public Object get(final String key) {
+        if (copied) {
+            return super.get(key);
+        }
+        return Constants.CRAWLER_STATS_KEY.equals(key) ? statsKey : paramSnapshot.get(key);
+    }
+
+    @Override
+    public String getAsString(final String key) {
+        final Object value = get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    public String getAsString(final String key, final String defaultValue) {
+        final String value = getAsString(key);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public void put(final String key, final Object value) {
+        copy();
+        super.put(key, value);
+    }
+
+    @Override
+    public Map<String, Object> asMap() {
+        copy();
+        return super.asMap();
+    }
+
+    @Override
+    public DataStoreParams newInstance() {
+        copy();
+        return super.newInstance();
+    }
+
+    /**
+     * Copy the parameters into the map of the superclass, once.
+     */
+    protected void copy() {
+        if (!copied) {
+            final Map<String, Object> params = super.asMap();
+            params.putAll(paramSnapshot);
+            params.put(Constants.CRAWLER_STATS_KEY, statsKey);
+            copied = true;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A three-stage pipeline that overlaps reading, transforming and storing
+ * records.
+ *
+ * <p>
+ * The crawler thread reads the records and passes them to the transform
+ * thread, which builds the resultMap and evaluates the scriptMap, and hands
+ * the prepared documents to the sink thread, which stores them through the
+ * callback. The stages are linked by bounded {@link SpscRingBuffer}s, so the
+ * next record can be read while the previous one is still being stored, and a
+ * slow stage blocks the stage in front of it instead of letting records pile
+ * up. Each stage runs on a single thread, so the records are stored in source
+ * order.
+ * </p>
+ *
+ * <p>
+ * When the run is stopped, for example by an aborting record, the transform
+ * stage drops the records that were read but not started, and the sink stage
+ * passes the remaining documents to the {@link Sink} so that it can finish
+ * their stats without storing them.
+ * </p>
+ *
+ * <p>
+ * A stage that fails with an error stops the run and releases the threads
+ * that wait for it: a failed transform stage ends the sink stage after the
+ * documents already handed off, a failed sink stage interrupts the transform
+ * stage, and the crawler thread stops waiting once the transform stage has
+ * ended, so {@link #finish()} always returns.
+ * </p>
+ */
+public class RecordPipeline {
+
+    private static final Logger logger = LogManager.getLogger(RecordPipeline.class);
+
+    /** The element that marks the end of the records. */
+    private static final Object END = new Object();
+
+    /** The interval in milliseconds at which the crawler thread checks the transform stage while waiting. */
+    private static final long STAGE_CHECK_MILLIS = 100L;
+
+    /**
+     * The transform stage.
+     */
+    public interface Transformer {
+        /**
+         * Transform a record and hand the document to the sink with
+         * {@link RecordPipeline#handOff(PreparedDocument)}.
+         * @param index The index of the record.
+         * @param source The source record.
+         * @return false if the crawl was aborted by this record, otherwise true.
+         */
+        boolean transform(int index, Map<String, Object> source);
+    }
+
+    /**
+     * The sink stage.
+     */
+    public interface Sink {
+        /**
+         * Store a prepared document. It is also called for the documents left
+         * in the pipeline after the run was stopped.
+         * @param entry The prepared document.
+         * @return false if the crawl was aborted by this document, otherwise true.
+         */
+        boolean store(PreparedDocument entry);
+    }
+
+    private final RunContext context;
+
+    private final Transformer transformer;
+
+    private final Sink sink;
+
+    private final SpscRingBuffer<Object> sourceQueue;
+
+    private final SpscRingBuffer<Object> sinkQueue;
+
+    private Thread transformThread;
+
+    private Thread sinkThread;
+
+    /**
+     * Constructor.
+     * @param context The run context.
+     * @param depth The number of records that may wait between two stages.
+     * @param transformer The transform stage.
+     * @param sink The sink stage.
+     */
+    public RecordPipeline(final RunContext context, final int depth, final Transformer transformer, final Sink sink) {
+        this.context = context;
+        this.transformer = transformer;
+        this.sink = sink;
+        sourceQueue = new SpscRingBuffer<>(depth);
+        sinkQueue = new SpscRingBuffer<>(depth);
+    }
+
+    /**
+     * Start the transform and sink threads.
+     * @param name The prefix of the thread names.
+     */
+    public void start(final String name) {
+        transformThread = Thread.ofPlatform().name(name + "-transform").daemon().start(this::runTransform);
+        sinkThread = Thread.ofPlatform().name(name + "-sink").daemon().start(this::runSink);
+    }
+
+    /**
+     * Pass a record that was read to the transform stage, waiting while the
+     * stage is busy. Called by the crawler thread.
+     * @param index The index of the record.
+     * @param source The source record.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void read(final int index, final Map<String, Object> source) throws InterruptedException {
+        putSource(new Item(index, source));
+    }
+
+    /**
+     * Pass a prepared document to the sink stage, waiting while the stage is
+     * busy. Called by the {@link Transformer}.
+     * @param entry The prepared document.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void handOff(final PreparedDocument entry) throws InterruptedException {
+        sinkQueue.put(entry);
+    }
+
+    /**
+     * Signal the end of the records and wait until both stages are done.
+     * Called by the crawler thread.
+     */
+    public void finish() {
+        try {
+            putSource(END);
+            transformThread.join();
+            sinkThread.join();
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for the pipeline.", e);
+            context.stop();
+            transformThread.interrupt();
+            sinkThread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pass an element to the transform stage, or drop it if the stage has
+     * ended, which only happens after the run was stopped.
+     */
+    private void putSource(final Object element) throws InterruptedException {
+        while (!sourceQueue.offer(element, STAGE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!transformThread.isAlive()) {
+                return;
+            }
+        }
+    }
+
+    private void runTransform() {
+        try {
+            while (true) {
+                final Object element = sourceQueue.take();
+                if (element == END) {
+                    sinkQueue.put(END);
+                    return;
+                }
+                if (context.isRunning()) {
+                    final Item item = (Item) element;
+                    try {
+                        if (!transformer.transform(item.index, item.source)) {
+                            context.stop();
+                        }
+                    } catch (final RuntimeException e) {
+                        logger.warn("Failed to transform record:{}.", item.index, e);
+                        context.stop();
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted the transform stage.", e);
+            context.stop();
+        } catch (final Throwable t) {
+            logger.error("The transform stage failed.", t);
+            context.stop();
+            try {
+                // The sink stage finishes the documents already handed off.
+                sinkQueue.put(END);
+            } catch (final InterruptedException e) {
+                logger.warn("Interrupted while ending the sink stage.", e);
+                sinkThread.interrupt();
+            }
+        }
+    }
+
+    private void runSink() {
+        try {
+            while (true) {
+                final Object element = sinkQueue.take();
+                if (element == END) {
+                    return;
+                }
+                final PreparedDocument entry = (PreparedDocument) element;
+                try {
+                    if (!sink.store(entry)) {
+                        context.stop();
+                    }
+                } catch (final RuntimeException e) {
+                    logger.warn("Failed to store record:{}.", entry.getIndex(), e);
+                    context.stop();
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted the sink stage.", e);
+            context.stop();
+        } catch (final Throwable t) {
+            logger.error("The sink stage failed.", t);
+            context.stop();
+            // The transform stage may be waiting for room in the sink queue.
+            transformThread.interrupt();
+        }
+    }
+
+    /**
+     * A record waiting for the transform stage.
+     */
+    private static final class Item {
+        private final int index;
+
+        private final Map<String, Object> source;
+
+        Item(final int index, final Map<String, Object> source) {
+            this.index = index;
+            this.source = source;
+        }
+    }
+}
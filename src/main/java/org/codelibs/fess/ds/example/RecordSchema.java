@@ -0,0 +1,99 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed set of fields of the records of a source.
+ *
+ * <p>
+ * Each field name is assigned a slot index once, when the schema is created.
+ * The records of the schema ({@link SchemaRecord}) then only hold an array of
+ * values: they neither hash nor store the field names, and code that knows the
+ * slot of a field, such as {@link ScriptPlan}, reads the value directly.
+ * </p>
+ */
+public class RecordSchema {
+
+    private final String[] fieldNames;
+
+    private final Map<String, Integer> slots;
+
+    /**
+     * Constructor.
+     * @param fieldNames The field names, in slot order. They must be unique.
+     */
+    public RecordSchema(final String... fieldNames) {
+        this.fieldNames = fieldNames.clone();
+        final Map<String, Integer> map = new HashMap<>((int) (fieldNames.length / 0.75f) + 1);
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (map.put(fieldNames[i], i) != null) {
+                throw new IllegalArgumentException("Duplicate field: " + fieldNames[i]);
+            }
+        }
+        slots = map;
+    }
+
+    /**
+     * Get the slot of a field.
+     * @param fieldName The field name.
+     * @return The slot, or -1 if the field is not part of the schema.
+     */
+    public int indexOf(final Object fieldName) {
+        final Integer slot = slots.get(fieldName);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * @param slot The slot.
+     * @return The name of the field in the slot.
+     */
+    public String getFieldName(final int slot) {
+        return fieldNames[slot];
+    }
+
+    /**
+     * @return The field names, in slot order.
+     */
+    public List<String> getFieldNames() {
+        return Collections.unmodifiableList(Arrays.asList(fieldNames));
+    }
+
+    /**
+     * @return The number of fields.
+     */
+    public int size() {
+        return fieldNames.length;
+    }
+
+    /**
+     * Create an empty record of this schema.
+     * @return The record, with all values null.
+     */
+    public SchemaRecord newRecord() {
+        return new SchemaRecord(this, new Object[fieldNames.length]);
+    }
+
+    @Override
+    public String toString() {
+        return "RecordSchema " + Arrays.toString(fieldNames);
+    }
+}
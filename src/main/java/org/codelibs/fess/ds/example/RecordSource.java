@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A pull-based, lazily evaluated stream of source records.
+ *
+ * <p>
+ * {@link ExampleDataStore#storeData} reads records one at a time with
+ * {@link #hasNext()} and {@link #next()} and closes the source at the end of
+ * the run, so an implementation only needs to hold the current record (a
+ * database cursor, an API page, a file reader, etc.) and memory stays constant
+ * regardless of the number of records.
+ * </p>
+ *
+ * <p>
+ * A source is read by a single thread. If {@link #next()} throws, the failure
+ * is reported for that record and reading continues, so an implementation must
+ * move past the failed record before throwing.
+ * </p>
+ */
+public interface RecordSource extends Iterator<Map<String, Object>>, AutoCloseable {
+
+    /**
+     * Move past the given number of records without returning them. This is
+     * used to resume a run from a checkpoint and to pass over the records of
+     * other shards. The default reads and discards the records, including the
+     * ones that fail to read; a source that can seek (an offset in a query, a
+     * page number) should override it. A source that cannot skip may return 0,
+     * and the records are then read one by one.
+     * @param count The number of records to skip.
+     * @return The number of records actually skipped.
+     */
+    default int skip(final int count) {
+        int skipped = 0;
+        while (skipped < count && hasNext()) {
+            try {
+                next();
+            } catch (final RuntimeException e) {
+                // The record is discarded anyway, and the source has already
+                // moved past it.
+            }
+            skipped++;
+        }
+        return skipped;
+    }
+
+    /**
+     * Release the resources of the source. The default does nothing.
+     */
+    @Override
+    default void close() {
+        // nothing
+    }
+}
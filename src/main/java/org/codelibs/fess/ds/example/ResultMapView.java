@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.codelibs.fess.Constants;
+import org.codelibs.fess.entity.DataStoreParams;
+
+/**
+ * A read-only {@code resultMap} that layers the fields of one source record
+ * over a snapshot of the parameters taken once per run.
+ *
+ * <p>
+ * It has the same content as a map built by copying the parameters and then
+ * putting all source fields, but nothing is copied per record: lookups check
+ * the source record first, then the stats key of the record, then the
+ * parameter snapshot. The iteration order is also the same: the parameters
+ * first (with overridden values), then the source fields that are not
+ * parameters.
+ * </p>
+ *
+ * <p>
+ * Source values are resolved when they are read: a {@link LazyField} is
+ * loaded, and text longer than the {@link ContentLimit} is truncated or
+ * rejected. A field that is never read is never loaded or checked.
+ * </p>
+ *
+ * <p>
+ * Iterating the view, for example to copy it, reads every field and so loads
+ * every {@link LazyField}. Script engines that copy their bindings do this:
+ * Fess's {@code GroovyEngine} copies the {@code resultMap} for every
+ * expression it evaluates. A lazy field is therefore only left unread for a
+ * record whose scriptMap entries are all field references, which
+ * {@link ScriptPlan} looks up with {@link #get(Object)}, or cached expressions
+ * that hit the {@link ScriptCache}.
+ * </p>
+ *
+ * <p>
+ * A view can be pointed at the next record with
+ * {@link #reset(Object, Map)}, so that one view serves all the records of a
+ * thread. It must therefore not be kept after the scripts of a record were
+ * evaluated.
+ * </p>
+ */
+public class ResultMapView extends AbstractMap<String, Object> {
+
+    /** The parameter snapshot, without the stats key. */
+    protected final Map<String, Object> params;
+
+    /** The stats key of the record. */
+    protected Object statsKey;
+
+    /** The source record. */
+    protected Map<String, Object> source;
+
+    /** The limit of the text fields, or null. */
+    protected final ContentLimit contentLimit;
+
+    /** The oversize fields of the record that were already counted by the content limit. */
+    private Set<Object> limitedFields;
+
+    /**
+     * Constructor.
+     * @param params The parameter snapshot created by {@link #snapshot(DataStoreParams)}.
+     * @param statsKey The stats key of the record, or null.
+     * @param source The source record.
+     */
+    public ResultMapView(final Map<String, Object> params, final Object statsKey, final Map<String, Object> source) {
+        this(params, statsKey, source, null);
+    }
+
+    /**
+     * Constructor.
+     * @param params The parameter snapshot created by {@link #snapshot(DataStoreParams)}.
+     * @param statsKey The stats key of the record, or null.
+     * @param source The source record.
+     * @param contentLimit The limit of the text fields, or null.
+     */
+    public ResultMapView(final Map<String, Object> params, final Object statsKey, final Map<String, Object> source,
+            final ContentLimit contentLimit) {
+        this.params = params;
+        this.statsKey = statsKey;
+        this.source = source;
+        this.contentLimit = contentLimit;
+    }
+
+    /**
+     * Point this view at another record.
+     * @param statsKey The stats key of the record, or null.
+     * @param source The source record.
+     */
+    public void reset(final Object statsKey, final Map<String, Object> source) {
+        this.statsKey = statsKey;
+        this.source = source;
+        if (limitedFields != null) {
+            limitedFields.clear();
+        }
+    }
+
+    /**
+     * @return The source record.
+     */
+    public Map<String, Object> getSource() {
+        return source;
+    }
+
+    /**
+     * Take a read-only snapshot of the parameters. The per-record stats key is
+     * left out because each view provides its own.
+     * @param paramMap The parameters.
+     * @return The snapshot.
+     */
+    public static Map<String, Object> snapshot(final DataStoreParams paramMap) {
+        final Map<String, Object> map = new LinkedHashMap<>(paramMap.asMap());
+        map.remove(Constants.CRAWLER_STATS_KEY);
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Resolve a value of the source record: load a {@link LazyField} and apply
+     * the content limit.
+     * @param key The field name.
+     * @param value The value in the source record.
+     * @return The value the scripts see.
+     */
+    public Object resolve(final Object key, final Object value) {
+        if (value instanceof final LazyField field) {
+            return field.load(String.valueOf(key), contentLimit);
+        }
+        if (contentLimit != null && value instanceof final String text) {
+            if (!contentLimit.exceeds(text)) {
+                return text;
+            }
+            // A field that several scripts read is counted once per record.
+            if (limitedFields == null) {
+                limitedFields = new HashSet<>();
+            }
+            return contentLimit.apply(String.valueOf(key), text, limitedFields.add(key));
+        }
+        return value;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final Object value = source.get(key);
+        if (value != null || source.containsKey(key)) {
+            return resolve(key, value);
+        }
+        if (statsKey != null && Constants.CRAWLER_STATS_KEY.equals(key)) {
+            return statsKey;
+        }
+        return params.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return source.containsKey(key) || statsKey != null && Constants.CRAWLER_STATS_KEY.equals(key) || params.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        int size = params.size();
+        if (statsKey != null && !params.containsKey(Constants.CRAWLER_STATS_KEY)) {
+            size++;
+        }
+        for (final String key : source.keySet()) {
+            if (!isParamKey(key)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return params.isEmpty() && statsKey == null && source.isEmpty();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ResultMapView.this.size();
+            }
+        };
+    }
+
+    private boolean isParamKey(final String key) {
+        return params.containsKey(key) || statsKey != null && Constants.CRAWLER_STATS_KEY.equals(key);
+    }
+
+    /**
+     * Iterates the parameters, the stats key and the remaining source fields.
+     */
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        private final Iterator<String> paramIterator = params.keySet().iterator();
+
+        private boolean statsKeyPending = statsKey != null && !params.containsKey(Constants.CRAWLER_STATS_KEY);
+
+        private final Iterator<Entry<String, Object>> sourceIterator = source.entrySet().iterator();
+
+        private Entry<String, Object> next;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (paramIterator.hasNext()) {
+                final String key = paramIterator.next();
+                next = new SimpleImmutableEntry<>(key, get(key));
+                return true;
+            }
+            if (statsKeyPending) {
+                statsKeyPending = false;
+                next = new SimpleImmutableEntry<>(Constants.CRAWLER_STATS_KEY, get(Constants.CRAWLER_STATS_KEY));
+                return true;
+            }
+            while (sourceIterator.hasNext()) {
+                final Entry<String, Object> entry = sourceIterator.next();
+                if (!isParamKey(entry.getKey())) {
+                    next = new SimpleImmutableEntry<>(entry.getKey(), resolve(entry.getKey(), entry.getValue()));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry<String, Object> entry = next;
+            next = null;
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+
+/**
+ * The state of one {@link ExampleDataStore#storeData} run that is shared by
+ * every record.
+ *
+ * <p>
+ * The collaborators are set once before the first record is read. The
+ * optional stages ({@link Checkpoint},
+ * {@link FingerprintStore}, {@link RateLimiter}, {@link RecordPipeline},
+ * {@link AsyncIndexUpdateCallback}, {@link SpillBuffer},
+ * {@link ContentLimit}) are null when they are disabled. The
+ * {@link FailureSink} is always set by {@link ExampleDataStore#storeData}.
+ * The running flag may be cleared by any thread.
+ * </p>
+ *
+ * <p>
+ * It also provides the per-record structures. The {@code resultMap} view is
+ * reused by every record of a thread, because it is only read while the
+ * scripts of the record are evaluated. The {@link RecordParams} of a record
+ * carry its stats key to the callback. The {@code dataMap} is a new map for
+ * each record: once it is passed to {@code callback.store}, it belongs to the
+ * callback, which may keep it (Fess holds the documents until the bulk
+ * request is sent). It is presized for the default fields, the scriptMap
+ * fields and the fields that the callback adds, so that it is never resized.
+ * </p>
+ */
+public class RunContext {
+
+    /** The number of fields that the callback adds to a document, such as the document id. */
+    protected static final int CALLBACK_FIELD_SIZE = 8;
+
+    private final DataConfig dataConfig;
+
+    private final IndexUpdateCallback callback;
+
+    private final CrawlerStatsHelper crawlerStatsHelper;
+
+    private final Map<String, Object> paramSnapshot;
+
+    private final ScriptPlan scriptPlan;
+
+    private final Map<String, Object> defaultDataMap;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    private final String statsKeyPrefix;
+
+    private final int dataMapCapacity;
+
+    private final ThreadLocal<ResultMapView> resultMapView;
+
+    private Checkpoint checkpoint;
+
+    private FingerprintStore fingerprintStore;
+
+    private RateLimiter rateLimiter;
+
+    private RecordPipeline pipeline;
+
+    private FailureSink failureSink;
+
+    private AsyncIndexUpdateCallback asyncCallback;
+
+    private SpillBuffer spillBuffer;
+
+    private ContentLimit contentLimit;
+
+    /**
+     * Constructor.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to store the documents.
+     * @param crawlerStatsHelper The crawler stats helper.
+     * @param paramSnapshot The read-only parameter snapshot of this run.
+     * @param scriptPlan The compiled script map.
+     * @param defaultDataMap The default data map.
+     */
+    public RunContext(final DataConfig dataConfig, final IndexUpdateCallback callback, final CrawlerStatsHelper crawlerStatsHelper,
+            final Map<String, Object> paramSnapshot, final ScriptPlan scriptPlan, final Map<String, Object> defaultDataMap) {
+        this.dataConfig = dataConfig;
+        this.callback = callback;
+        this.crawlerStatsHelper = crawlerStatsHelper;
+        this.paramSnapshot = paramSnapshot;
+        this.scriptPlan = scriptPlan;
+        this.defaultDataMap = defaultDataMap;
+        statsKeyPrefix = dataConfig.getId() + "#";
+        final int fieldSize = defaultDataMap.size() + scriptPlan.getEntries().length + CALLBACK_FIELD_SIZE;
+        dataMapCapacity = (int) (fieldSize / 0.75f) + 1;
+        resultMapView = ThreadLocal.withInitial(() -> new ResultMapView(paramSnapshot, null, Collections.emptyMap(), contentLimit));
+    }
+
+    /**
+     * Create the stats key of a record.
+     * @param index The index of the record.
+     * @return The stats key.
+     */
+    public StatsKeyObject newStatsKey(final int index) {
+        return new StatsKeyObject(statsKeyPrefix + index);
+    }
+
+    /**
+     * Create the parameters that are passed to the callback with the document
+     * of a record. They carry the stats key of the record without changing the
+     * parameters of the run, so records on different threads never see each
+     * other's key.
+     * @param statsKey The stats key of the record.
+     * @return The parameters of the record.
+     */
+    public RecordParams newRecordParams(final StatsKeyObject statsKey) {
+        return new RecordParams(paramSnapshot, statsKey);
+    }
+
+    /**
+     * Get the resultMap of a record. The view belongs to the current thread
+     * and is reused by its next record.
+     * @param statsKey The stats key of the record.
+     * @param source The source record.
+     * @return The resultMap.
+     */
+    public ResultMapView getResultMap(final Object statsKey, final Map<String, Object> source) {
+        final ResultMapView view = resultMapView.get();
+        view.reset(statsKey, source);
+        return view;
+    }
+
+    /**
+     * Release the resultMap of the current thread, so that it does not keep
+     * the last record reachable.
+     */
+    public void releaseResultMap() {
+        resultMapView.get().reset(null, Collections.emptyMap());
+    }
+
+    /**
+     * Remove the resultMap of the current thread when the thread has finished
+     * its part of the run. The crawler thread outlives the run, so its view
+     * would otherwise stay in the thread for as long as the thread lives.
+     */
+    public void removeResultMap() {
+        resultMapView.remove();
+    }
+
+    /**
+     * Create the dataMap of a record, filled with the default fields.
+     * @return A new dataMap that is large enough for all fields of the document.
+     */
+    public Map<String, Object> newDataMap() {
+        final Map<String, Object> dataMap = new HashMap<>(dataMapCapacity);
+        dataMap.putAll(defaultDataMap);
+        return dataMap;
+    }
+
+    /**
+     * @return true until the run is stopped.
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Stop the run: no further records are read.
+     */
+    public void stop() {
+        running.set(false);
+    }
+
+    /**
+     * Mark a record as completely handled (stored or reported as failed).
+     * @param index The index of the record.
+     */
+    public void complete(final int index) {
+        if (checkpoint != null) {
+            checkpoint.complete(index);
+        }
+    }
+
+    /**
+     * Report a document that the callback stored.
+     * @param latencyNanos The time spent in the callback.
+     * @param bytes The estimated size of the document.
+     */
+    public void stored(final long latencyNanos, final long bytes) {
+        metrics.stored(latencyNanos, bytes);
+        if (failureSink != null) {
+            failureSink.succeeded();
+        }
+        if (rateLimiter != null) {
+            rateLimiter.record(latencyNanos, false);
+        }
+    }
+
+    /**
+     * Report a record that failed.
+     * @param t The exception.
+     */
+    public void failed(final Throwable t) {
+        metrics.failed(t);
+        if (rateLimiter != null) {
+            rateLimiter.record(0, true);
+        }
+    }
+
+    /**
+     * @return The metrics of this run.
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The data configuration.
+     */
+    public DataConfig getDataConfig() {
+        return dataConfig;
+    }
+
+    /**
+     * @return The callback to store the documents.
+     */
+    public IndexUpdateCallback getCallback() {
+        return callback;
+    }
+
+    /**
+     * @return The crawler stats helper.
+     */
+    public CrawlerStatsHelper getCrawlerStatsHelper() {
+        return crawlerStatsHelper;
+    }
+
+    /**
+     * @return The read-only parameter snapshot of this run.
+     */
+    public Map<String, Object> getParamSnapshot() {
+        return paramSnapshot;
+    }
+
+    /**
+     * @return The compiled script map.
+     */
+    public ScriptPlan getScriptPlan() {
+        return scriptPlan;
+    }
+
+    /**
+     * @return The default data map.
+     */
+    public Map<String, Object> getDefaultDataMap() {
+        return defaultDataMap;
+    }
+
+    /**
+     * @return The checkpoint, or null if checkpoints are disabled.
+     */
+    public Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @param checkpoint The checkpoint, or null to disable checkpoints.
+     */
+    public void setCheckpoint(final Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * @return The fingerprint store, or null if incremental crawling is disabled.
+     */
+    public FingerprintStore getFingerprintStore() {
+        return fingerprintStore;
+    }
+
+    /**
+     * @param fingerprintStore The fingerprint store, or null to disable incremental crawling.
+     */
+    public void setFingerprintStore(final FingerprintStore fingerprintStore) {
+        this.fingerprintStore = fingerprintStore;
+    }
+
+    /**
+     * @return The rate limiter, or null if the rate is unlimited.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @param rateLimiter The rate limiter, or null for an unlimited rate.
+     */
+    public void setRateLimiter(final RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @return The pipeline, or null if pipelining is disabled.
+     */
+    public RecordPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @param pipeline The pipeline, or null to disable pipelining.
+     */
+    public void setPipeline(final RecordPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * @return The sink of the failed records.
+     */
+    public FailureSink getFailureSink() {
+        return failureSink;
+    }
+
+    /**
+     * @param failureSink The sink of the failed records.
+     */
+    public void setFailureSink(final FailureSink failureSink) {
+        this.failureSink = failureSink;
+    }
+
+    /**
+     * @return The asynchronous callback, or null if the documents are stored synchronously.
+     */
+    public AsyncIndexUpdateCallback getAsyncCallback() {
+        return asyncCallback;
+    }
+
+    /**
+     * @param asyncCallback The asynchronous callback, or null.
+     */
+    public void setAsyncCallback(final AsyncIndexUpdateCallback asyncCallback) {
+        this.asyncCallback = asyncCallback;
+    }
+
+    /**
+     * @return The spill buffer, or null if the documents are stored by the thread that prepares them.
+     */
+    public SpillBuffer getSpillBuffer() {
+        return spillBuffer;
+    }
+
+    /**
+     * @param spillBuffer The spill buffer, or null.
+     */
+    public void setSpillBuffer(final SpillBuffer spillBuffer) {
+        this.spillBuffer = spillBuffer;
+    }
+
+    /**
+     * @return The limit of the text fields, or null if they are not limited.
+     */
+    public ContentLimit getContentLimit() {
+        return contentLimit;
+    }
+
+    /**
+     * Set the limit of the text fields. It must be set before the first record
+     * is handled.
+     * @param contentLimit The limit of the text fields, or null.
+     */
+    public void setContentLimit(final ContentLimit contentLimit) {
+        this.contentLimit = contentLimit;
+    }
+}
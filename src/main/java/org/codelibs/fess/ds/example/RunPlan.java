@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.entity.DataStoreParams;
+
+/**
+ * The parameters of a run, parsed and checked once before the run starts.
+ *
+ * <p>
+ * A {@link ParamValidator} parses every parameter it checks and puts the
+ * valid value into the plan. The factories of the data store then take the
+ * values from the plan instead of parsing the parameters again, so there is no
+ * per-factory fallback for an invalid value: a run with an invalid value never
+ * gets a plan. A parameter that is missing, blank or not checked has no value,
+ * and its default applies.
+ * </p>
+ */
+public class RunPlan {
+
+    private final DataStoreParams paramMap;
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    /**
+     * Constructor.
+     * @param paramMap The parameters of the run.
+     */
+    public RunPlan(final DataStoreParams paramMap) {
+        this.paramMap = paramMap;
+    }
+
+    /**
+     * @return The parameters of the run, as they were given.
+     */
+    public DataStoreParams getParams() {
+        return paramMap;
+    }
+
+    /**
+     * Set the parsed value of a parameter.
+     * @param name The parameter name.
+     * @param value The value.
+     */
+    public void put(final String name, final Object value) {
+        values.put(name, value);
+    }
+
+    /**
+     * @param name The parameter name.
+     * @return true if the parameter has a parsed value.
+     */
+    public boolean contains(final String name) {
+        return values.containsKey(name);
+    }
+
+    /**
+     * Get the parsed value of a parameter.
+     * @param <T> The type of the value.
+     * @param name The parameter name.
+     * @param type The type of the value.
+     * @param defaultValue The value if the parameter has none.
+     * @return The value.
+     */
+    public <T> T get(final String name, final Class<T> type, final T defaultValue) {
+        final Object value = values.get(name);
+        return value != null ? type.cast(value) : defaultValue;
+    }
+
+    /**
+     * @param name The parameter name.
+     * @param defaultValue The value if the parameter has none.
+     * @return The value of an integer parameter.
+     */
+    public long getLong(final String name, final long defaultValue) {
+        return get(name, Long.class, defaultValue);
+    }
+
+    /**
+     * @param name The parameter name.
+     * @param defaultValue The value if the parameter has none.
+     * @return The value of an integer parameter that was checked to fit an int.
+     */
+    public int getInt(final String name, final int defaultValue) {
+        return Math.toIntExact(get(name, Long.class, (long) defaultValue));
+    }
+
+    /**
+     * @param name The parameter name.
+     * @param defaultValue The value if the parameter has none.
+     * @return The value of a decimal parameter.
+     */
+    public double getDouble(final String name, final double defaultValue) {
+        return get(name, Double.class, defaultValue);
+    }
+
+    /**
+     * @param name The parameter name.
+     * @param defaultValue The value if the parameter has none.
+     * @return The value of a boolean parameter.
+     */
+    public boolean getBoolean(final String name, final boolean defaultValue) {
+        return get(name, Boolean.class, defaultValue);
+    }
+
+    /**
+     * @param name The parameter name.
+     * @return The trimmed value of a text parameter, or null if it has none.
+     */
+    public String getString(final String name) {
+        return get(name, String.class, null);
+    }
+
+    /**
+     * @param name The parameter name.
+     * @param defaultValue The value if the parameter has none.
+     * @return The trimmed value of a text parameter.
+     */
+    public String getString(final String name, final String defaultValue) {
+        return get(name, String.class, defaultValue);
+    }
+
+    /**
+     * @param name The parameter name.
+     * @return The value of a list parameter, or null if it has none.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getList(final String name) {
+        return (List<String>) values.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return "RunPlan " + values;
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A source record of a {@link RecordSchema}, stored as an array of values.
+ *
+ * <p>
+ * The record is also a mutable {@link Map} from field name to value, so that
+ * it can be used wherever a source record is expected and the scriptMap can
+ * reference its fields by name. Every field of the schema is present in the
+ * map, with a null value if it was not set, until it is removed. Fields
+ * outside the schema, for example the ones a subclass adds to the record of
+ * {@code createSourceRecord}, are kept in a separate map after the schema
+ * fields.
+ * </p>
+ */
+public class SchemaRecord extends AbstractMap<String, Object> {
+
+    /** The value of a schema field that was removed from the record. */
+    private static final Object ABSENT = new Object();
+
+    private final RecordSchema schema;
+
+    private final Object[] values;
+
+    private int absentCount;
+
+    /** The fields outside the schema, created when the first one is added. */
+    private Map<String, Object> extraFields;
+
+    /**
+     * Constructor.
+     * @param schema The schema.
+     * @param values The values, in slot order. The array is used as is.
+     */
+    public SchemaRecord(final RecordSchema schema, final Object[] values) {
+        if (values.length != schema.size()) {
+            throw new IllegalArgumentException("Expected " + schema.size() + " values, but got " + values.length);
+        }
+        this.schema = schema;
+        this.values = values;
+    }
+
+    /**
+     * @return The schema of the record.
+     */
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @param slot The slot of a field.
+     * @return The value of the field, or null if it was removed.
+     */
+    public Object get(final int slot) {
+        final Object value = values[slot];
+        return value == ABSENT ? null : value;
+    }
+
+    /**
+     * @param slot The slot of a field.
+     * @param value The value of the field.
+     */
+    public void set(final int slot, final Object value) {
+        if (values[slot] == ABSENT) {
+            absentCount--;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * @param slot The slot of a field.
+     * @return true if the field is in the record, false if it was removed.
+     */
+    public boolean contains(final int slot) {
+        return values[slot] != ABSENT;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final int slot = schema.indexOf(key);
+        if (slot >= 0) {
+            return get(slot);
+        }
+        return extraFields != null ? extraFields.get(key) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        final int slot = schema.indexOf(key);
+        if (slot >= 0) {
+            return contains(slot);
+        }
+        return extraFields != null && extraFields.containsKey(key);
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        final int slot = schema.indexOf(key);
+        if (slot < 0) {
+            if (extraFields == null) {
+                extraFields = new LinkedHashMap<>();
+            }
+            return extraFields.put(key, value);
+        }
+        final Object old = get(slot);
+        set(slot, value);
+        return old;
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        final int slot = schema.indexOf(key);
+        if (slot < 0) {
+            return extraFields != null ? extraFields.remove(key) : null;
+        }
+        final Object old = get(slot);
+        if (values[slot] != ABSENT) {
+            values[slot] = ABSENT;
+            absentCount++;
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, ABSENT);
+        absentCount = values.length;
+        extraFields = null;
+    }
+
+    @Override
+    public int size() {
+        return values.length - absentCount + (extraFields != null ? extraFields.size() : 0);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return SchemaRecord.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates the schema fields in slot order, then the other fields.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int slot = nextSlot(0);
+
+        private int lastSlot = -1;
+
+        private Iterator<Entry<String, Object>> extraIterator;
+
+        @Override
+        public boolean hasNext() {
+            return slot < values.length || extraIterator().hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (slot < values.length) {
+                lastSlot = slot;
+                slot = nextSlot(slot + 1);
+                return new SlotEntry(lastSlot);
+            }
+            lastSlot = -1;
+            return extraIterator().next();
+        }
+
+        @Override
+        public void remove() {
+            if (lastSlot >= 0) {
+                if (values[lastSlot] == ABSENT) {
+                    throw new IllegalStateException();
+                }
+                values[lastSlot] = ABSENT;
+                absentCount++;
+            } else {
+                extraIterator().remove();
+            }
+        }
+
+        private int nextSlot(final int from) {
+            int next = from;
+            while (next < values.length && values[next] == ABSENT) {
+                next++;
+            }
+            return next;
+        }
+
+        private Iterator<Entry<String, Object>> extraIterator() {
+            if (extraIterator == null) {
+                extraIterator = extraFields != null ? extraFields.entrySet().iterator() : Collections.emptyIterator();
+            }
+            return extraIterator;
+        }
+    }
+
+    /**
+     * An entry of a schema field that writes through to the record.
+     */
+    private final class SlotEntry implements Entry<String, Object> {
+        private final int slot;
+
+        SlotEntry(final int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return schema.getFieldName(slot);
+        }
+
+        @Override
+        public Object getValue() {
+            return get(slot);
+        }
+
+        @Override
+        public Object setValue(final Object value) {
+            final Object old = get(slot);
+            set(slot, value);
+            return old;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof final Entry<?, ?> e && getKey().equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
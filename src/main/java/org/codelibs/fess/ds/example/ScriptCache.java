@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A size-bounded, least recently used cache of script results for one run.
+ *
+ * <p>
+ * An entry of the scriptMap that the administrator marks as deterministic
+ * produces the same value for the same input fields, for example a lookup of
+ * reference data by a category or an author id. {@link ScriptPlan} then
+ * evaluates it once per distinct input and takes the value from this cache
+ * for the other records.
+ * </p>
+ *
+ * <p>
+ * The cache is split into segments by the hash of the key, each an
+ * access-ordered {@link LinkedHashMap} with its own lock, so that parallel
+ * workers rarely wait for each other. A value is computed outside the lock;
+ * two threads that miss the same key at the same time both evaluate it.
+ * Cached values are shared by the documents, so a cached script must return
+ * an immutable value such as a string or a number.
+ * </p>
+ */
+public class ScriptCache {
+
+    /** The maximum number of segments. */
+    protected static final int MAX_SEGMENTS = 16;
+
+    /** The minimum number of values of a segment, so that a small cache is exactly least recently used. */
+    protected static final int MIN_SEGMENT_SIZE = 64;
+
+    /** Stands for a cached null value. */
+    private static final Object NULL = new Object();
+
+    private final int maxSize;
+
+    private final Segment[] segments;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param maxSize The maximum number of cached values.
+     */
+    public ScriptCache(final int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        final int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(Math.max(1, this.maxSize / MIN_SEGMENT_SIZE)));
+        final int segmentSize = (this.maxSize + count - 1) / count;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    /**
+     * Create the key of a script and its input values.
+     * @param entry The scriptMap entry.
+     * @param values The values of the input fields.
+     * @return The key.
+     */
+    public static Key newKey(final ScriptPlan.Entry entry, final Object[] values) {
+        return new Key(entry, values);
+    }
+
+    /**
+     * Get the cached value of a key, or compute and cache it.
+     * @param key The key.
+     * @param loader Computes the value.
+     * @return The value, which may be null.
+     */
+    public Object get(final Key key, final Supplier<Object> loader) {
+        final Segment segment = segments[(key.hash ^ key.hash >>> 16) & segments.length - 1];
+        Object value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hitCount.increment();
+            return value == NULL ? null : value;
+        }
+        missCount.increment();
+        value = loader.get();
+        synchronized (segment) {
+            segment.put(key, value != null ? value : NULL);
+        }
+        return value;
+    }
+
+    /**
+     * @return The number of cached values.
+     */
+    public int size() {
+        int size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The maximum number of cached values.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of values taken from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return The number of values that were computed.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return The number of values removed to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        final long hits = getHitCount();
+        final long total = hits + getMissCount();
+        return "ScriptCache [size=" + size() + ", maxSize=" + maxSize + ", hits=" + hits + ", misses=" + getMissCount() + ", hitRate="
+                + (total > 0 ? hits * 100 / total : 0) + "%, evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * The key of a cached value: a scriptMap entry and the values of its input
+     * fields.
+     */
+    public static final class Key {
+        private final ScriptPlan.Entry entry;
+
+        private final Object[] values;
+
+        private final int hash;
+
+        Key(final ScriptPlan.Entry entry, final Object[] values) {
+            this.entry = entry;
+            this.values = values;
+            hash = System.identityHashCode(entry) * 31 + Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof final Key other && hash == other.hash && entry == other.entry && Arrays.equals(values, other.values);
+        }
+    }
+
+    /**
+     * A least recently used segment of the cache.
+     */
+    private final class Segment extends LinkedHashMap<Key, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        Segment(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Object> eldest) {
+            if (size() > maxSize) {
+                evictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
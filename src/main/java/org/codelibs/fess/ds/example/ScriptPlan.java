@@ -0,0 +1,375 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.script.ScriptEngine;
+import org.codelibs.fess.util.ComponentUtil;
+
+/**
+ * A scriptMap compiled once per run.
+ *
+ * <p>
+ * Every scriptMap entry is classified when the plan is created:
+ * </p>
+ * <ul>
+ * <li>an empty template always produces an empty string,</li>
+ * <li>a template that looks like a field name, such as {@code title}, is a
+ * reference,</li>
+ * <li>anything else is an expression. The script engine is resolved once, on
+ * the first expression, and is responsible for caching the compiled form of
+ * the template.</li>
+ * </ul>
+ *
+ * <p>
+ * The result is the same as calling
+ * {@code AbstractDataStore#convertValue(String, String, Map)} for each entry:
+ * whatever its kind, a template that is a key of the {@code resultMap} is
+ * resolved by a direct lookup, so a field name with a space or non-ASCII
+ * characters is never passed to the script engine, and a template that is
+ * not a key is evaluated by the script engine. If the source record is a
+ * {@link SchemaRecord}, the slot of the field is resolved on the first record
+ * and the value is read from the slot. The kind only tells whether the script
+ * engine may be needed and which entries may be cached. The plan counts how
+ * many evaluations took each path and is safe to use from several threads.
+ * </p>
+ *
+ * <p>
+ * An expression that is marked as deterministic, with the input fields it
+ * depends on, is evaluated once per distinct combination of input values;
+ * the other records take the value from the {@link ScriptCache}.
+ * </p>
+ */
+public class ScriptPlan {
+
+    /** Templates that look like a single field name. Other keys of the resultMap are still looked up. */
+    protected static final Pattern FIELD_REFERENCE_PATTERN = Pattern.compile("[\\p{Alpha}_$][\\p{Alnum}_$.\\-]*");
+
+    /** The script type used to evaluate expressions. */
+    protected final String scriptType;
+
+    /** The compiled scriptMap entries. */
+    protected final Entry[] entries;
+
+    /** The cache of the deterministic expressions, or null. */
+    protected final ScriptCache cache;
+
+    /** The script engine, resolved on the first expression. */
+    protected volatile ScriptEngine scriptEngine;
+
+    /** The number of values produced by a direct field lookup. */
+    protected final LongAdder referenceCount = new LongAdder();
+
+    /** The number of values produced by the script engine. */
+    protected final LongAdder scriptCount = new LongAdder();
+
+    /** The number of values produced by an empty template. */
+    protected final LongAdder emptyCount = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param scriptType The script type used to evaluate expressions.
+     * @param scriptMap The scriptMap (index field name to template).
+     */
+    public ScriptPlan(final String scriptType, final Map<String, String> scriptMap) {
+        this(scriptType, scriptMap, Collections.emptyMap(), null);
+    }
+
+    /**
+     * Constructor.
+     * @param scriptType The script type used to evaluate expressions.
+     * @param scriptMap The scriptMap (index field name to template).
+     * @param cacheFields The input fields of the deterministic expressions, by index field name.
+     * Entries that are not expressions are never cached.
+     * @param cache The cache of the deterministic expressions, or null to disable caching.
+     */
+    public ScriptPlan(final String scriptType, final Map<String, String> scriptMap, final Map<String, List<String>> cacheFields,
+            final ScriptCache cache) {
+        this.scriptType = scriptType;
+        this.cache = cache;
+        entries = new Entry[scriptMap.size()];
+        int i = 0;
+        for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
+            final Kind kind = classify(entry.getValue());
+            final List<String> fields = kind == Kind.SCRIPT && cache != null ? cacheFields.get(entry.getKey()) : null;
+            entries[i++] = new Entry(entry.getKey(), entry.getValue(), kind, fields != null ? fields.toArray(new String[0]) : null);
+        }
+    }
+
+    /**
+     * Classify a template.
+     * @param template The template.
+     * @return The kind of the template.
+     */
+    protected Kind classify(final String template) {
+        if (StringUtil.isEmpty(template)) {
+            return Kind.EMPTY;
+        }
+        if (FIELD_REFERENCE_PATTERN.matcher(template).matches()) {
+            return Kind.REFERENCE;
+        }
+        return Kind.SCRIPT;
+    }
+
+    /**
+     * Evaluate every entry against the resultMap and put the non-null values
+     * into the dataMap.
+     * @param resultMap The parameters and the source record fields.
+     * @param dataMap The document to fill.
+     */
+    public void evaluate(final Map<String, Object> resultMap, final Map<String, Object> dataMap) {
+        for (final Entry entry : entries) {
+            final Object value = evaluate(entry, resultMap);
+            if (value != null) {
+                dataMap.put(entry.getName(), value);
+            }
+        }
+    }
+
+    /**
+     * Evaluate one entry.
+     * @param entry The entry.
+     * @param resultMap The parameters and the source record fields.
+     * @return The value, or null.
+     */
+    protected Object evaluate(final Entry entry, final Map<String, Object> resultMap) {
+        if (entry.getKind() == Kind.EMPTY) {
+            emptyCount.increment();
+            return StringUtil.EMPTY;
+        }
+        // Like convertValue, any template that is a key of the resultMap is
+        // looked up, also when it does not look like a field name. The source
+        // record comes first in the resultMap, so a field of its schema is
+        // always taken from the record.
+        if (resultMap instanceof final ResultMapView view && view.getSource() instanceof final SchemaRecord record) {
+            final int slot = entry.getSlot(record.getSchema());
+            if (slot >= 0 && record.contains(slot)) {
+                referenceCount.increment();
+                return view.resolve(entry.getTemplate(), record.get(slot));
+            }
+        }
+        final Object value = resultMap.get(entry.getTemplate());
+        if (value != null || resultMap.containsKey(entry.getTemplate())) {
+            referenceCount.increment();
+            return value;
+        }
+        final String[] cacheFields = entry.getCacheFields();
+        if (cacheFields != null) {
+            final Object[] values = new Object[cacheFields.length];
+            for (int i = 0; i < cacheFields.length; i++) {
+                values[i] = resultMap.get(cacheFields[i]);
+            }
+            return cache.get(ScriptCache.newKey(entry, values), () -> {
+                scriptCount.increment();
+                return evaluateScript(entry.getTemplate(), resultMap);
+            });
+        }
+        scriptCount.increment();
+        return evaluateScript(entry.getTemplate(), resultMap);
+    }
+
+    /**
+     * Evaluate an expression with the script engine.
+     * @param template The expression.
+     * @param resultMap The parameters and the source record fields.
+     * @return The value, or null.
+     */
+    protected Object evaluateScript(final String template, final Map<String, Object> resultMap) {
+        return getScriptEngine().evaluate(template, resultMap);
+    }
+
+    /**
+     * Resolve the script engine before the first record if any entry is an
+     * expression, so that an unknown script type fails the run at once instead
+     * of every record.
+     */
+    public void prepare() {
+        for (final Entry entry : entries) {
+            if (entry.getKind() == Kind.SCRIPT) {
+                getScriptEngine();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the script engine for the script type.
+     * @return The script engine.
+     */
+    protected ScriptEngine getScriptEngine() {
+        ScriptEngine engine = scriptEngine;
+        if (engine == null) {
+            engine = ComponentUtil.getScriptEngineFactory().getScriptEngine(scriptType);
+            scriptEngine = engine;
+        }
+        return engine;
+    }
+
+    /**
+     * @return The compiled entries.
+     */
+    public Entry[] getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The number of values produced by a direct field lookup.
+     */
+    public long getReferenceCount() {
+        return referenceCount.sum();
+    }
+
+    /**
+     * @return The number of values produced by the script engine.
+     */
+    public long getScriptCount() {
+        return scriptCount.sum();
+    }
+
+    /**
+     * @return The number of values produced by an empty template.
+     */
+    public long getEmptyCount() {
+        return emptyCount.sum();
+    }
+
+    /**
+     * @return The cache of the deterministic expressions, or null.
+     */
+    public ScriptCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptPlan [entries=" + entries.length + ", referenceCount=" + getReferenceCount() + ", scriptCount=" + getScriptCount()
+                + ", emptyCount=" + getEmptyCount() + (cache != null ? ", cache=" + cache : "") + "]";
+    }
+
+    /**
+     * The kind of a scriptMap template.
+     */
+    public enum Kind {
+        /** An empty template. */
+        EMPTY,
+        /** A plain field reference. */
+        REFERENCE,
+        /** An expression evaluated by the script engine. */
+        SCRIPT
+    }
+
+    /**
+     * A compiled scriptMap entry.
+     */
+    public static class Entry {
+        private final String name;
+
+        private final String template;
+
+        private final Kind kind;
+
+        private final String[] cacheFields;
+
+        private volatile Slot slot;
+
+        /**
+         * Constructor.
+         * @param name The index field name.
+         * @param template The template.
+         * @param kind The kind of the template.
+         */
+        public Entry(final String name, final String template, final Kind kind) {
+            this(name, template, kind, null);
+        }
+
+        /**
+         * Constructor.
+         * @param name The index field name.
+         * @param template The template.
+         * @param kind The kind of the template.
+         * @param cacheFields The input fields of a deterministic expression, or null if it is not cached.
+         */
+        public Entry(final String name, final String template, final Kind kind, final String[] cacheFields) {
+            this.name = name;
+            this.template = template;
+            this.kind = kind;
+            this.cacheFields = cacheFields;
+        }
+
+        /**
+         * @return The index field name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The template.
+         */
+        public String getTemplate() {
+            return template;
+        }
+
+        /**
+         * @return The kind of the template.
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The input fields of a deterministic expression, or null if it is not cached.
+         */
+        public String[] getCacheFields() {
+            return cacheFields;
+        }
+
+        /**
+         * Get the slot of the referenced field in a schema. The slot is
+         * resolved once and reused while the records have the same schema.
+         * @param schema The schema of the source record.
+         * @return The slot, or -1 if the field is not part of the schema.
+         */
+        public int getSlot(final RecordSchema schema) {
+            Slot current = slot;
+            if (current == null || current.schema != schema) {
+                current = new Slot(schema, schema.indexOf(template));
+                slot = current;
+            }
+            return current.index;
+        }
+    }
+
+    /**
+     * The slot of a field in a schema.
+     */
+    private static final class Slot {
+        private final RecordSchema schema;
+
+        private final int index;
+
+        Slot(final RecordSchema schema, final int index) {
+            this.schema = schema;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+
+/**
+ * The slice of the record space that one crawler node handles.
+ *
+ * <p>
+ * The records are split into {@code count} disjoint shards, so that several
+ * crawler nodes (or several data configurations) can crawl the same source
+ * without coordinating: each one is configured with the same count and a
+ * different index. A record belongs to a shard either by its position in the
+ * source ({@code position % count}) or, when a field is set, by the hash of
+ * the value of that field. Position-based sharding lets a source skip the
+ * records of other shards without reading them; field-based sharding keeps a
+ * record in the same shard when records are inserted or removed.
+ * </p>
+ *
+ * <p>
+ * After a crawl, Fess deletes the documents of the data configuration that
+ * were not stored in the crawl session. A shard never stores the documents of
+ * the other shards, so shards that share one data configuration on several
+ * nodes delete each other's documents, unless that cleanup is turned off.
+ * Give every shard its own data configuration to keep the cleanup.
+ * </p>
+ */
+public class Shard {
+
+    private final int count;
+
+    private final int index;
+
+    private final String field;
+
+    /**
+     * Constructor.
+     * @param count The number of shards.
+     * @param index The index of this shard, from 0 to count - 1.
+     * @param field The field whose value selects the shard, or null to select the shard by position.
+     */
+    public Shard(final int count, final int index, final String field) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + " of " + count);
+        }
+        this.count = count;
+        this.index = index;
+        this.field = field;
+    }
+
+    /**
+     * @return true if the shard of a record is selected by its position.
+     */
+    public boolean isPositionBased() {
+        return field == null;
+    }
+
+    /**
+     * Get the number of records from a position to the next record of this
+     * shard, for position-based sharding.
+     * @param position The position in the source.
+     * @return The number of records of other shards before the next record of this shard.
+     */
+    public int getGap(final int position) {
+        return Math.floorMod(index - position, count);
+    }
+
+    /**
+     * Check if a record belongs to this shard.
+     * @param position The position of the record in the source.
+     * @param source The source record.
+     * @return true if the record belongs to this shard.
+     */
+    public boolean accepts(final int position, final Map<String, Object> source) {
+        if (field == null) {
+            return position % count == index;
+        }
+        // Records without a value all belong to the first shard, so that the
+        // union of the shards is still the whole source.
+        final Object value = source.get(field);
+        return (value == null ? 0 : Math.floorMod(mix(value.toString().hashCode()), count)) == index;
+    }
+
+    /**
+     * Spread the bits of a hash code, because {@link String#hashCode()} of
+     * sequential ids differs only in the low bits.
+     * @param hash The hash code.
+     * @return The mixed hash code.
+     */
+    protected static int mix(final int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return The number of shards.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The index of this shard.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The field whose value selects the shard, or null.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return A name that is unique among the shards of the same count, such as {@code shard1of4}.
+     */
+    public String getName() {
+        return "shard" + index + "of" + count;
+    }
+
+    @Override
+    public String toString() {
+        return "Shard [index=" + index + ", count=" + count + ", field=" + field + "]";
+    }
+}
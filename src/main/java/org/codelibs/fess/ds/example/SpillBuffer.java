@@ -0,0 +1,872 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+
+/**
+ * An unbounded queue of prepared documents between the threads that prepare
+ * them and a store thread that passes them to the callback, which keeps at
+ * most {@code memorySize} documents on the heap.
+ *
+ * <p>
+ * {@link #put(PreparedDocument)} never waits for the store thread, so the
+ * source is read at its own rate when the index slows down, for example
+ * during segment merges. Up to {@code memorySize} documents wait in memory.
+ * Beyond that, documents are encoded in a compact binary format and appended
+ * to memory-mapped segment files of {@code segmentSize} bytes in the spill
+ * directory, until the store thread has caught up. The documents are stored
+ * in the order in which they were put.
+ * </p>
+ *
+ * <p>
+ * A segment file is deleted once all its documents were stored. Its header
+ * holds the position of the first document that was not stored yet, which
+ * the store thread moves forward before it takes the next document while the
+ * run is running. The segments left by a run that crashed or was stopped are
+ * found by {@link #open()}, and their documents from that position on are
+ * stored again before the new ones, with the index {@code -1} because they do
+ * not belong to the records of the new run:
+ * </p>
+ * <ul>
+ * <li>After a crash, the document that was being stored is stored again,
+ * which replaces it with the same content. The header is not forced to disk,
+ * so after a power failure earlier documents of the segment may be stored
+ * again as well.</li>
+ * <li>After a stop, the documents that were not stored are replayed. If the
+ * run uses a checkpoint, the next run also crawls their records again, so
+ * they are stored twice with the same content.</li>
+ * <li>Documents that were still in memory are not replayed; use a checkpoint
+ * to crawl them again.</li>
+ * </ul>
+ *
+ * <p>
+ * A segment that cannot be read, for example after a disk error, is renamed
+ * to {@code *.spill.corrupt} with an error in the log, and its remaining
+ * documents are skipped, so that it does not stop every later run.
+ * </p>
+ *
+ * <p>
+ * The values of a document are written as strings, numbers, decimals,
+ * booleans, dates, lists, arrays of strings and maps. Other character
+ * sequences, numbers, dates, collections and arrays are written as the
+ * nearest of these, and any other object as its {@code toString()}, so that
+ * no document is rejected only because it was spilled.
+ * Objects are not written with Java serialization, because deserializing the
+ * files in the spill directory could then create objects of any class on the
+ * class path. Every length read from a segment is checked against the bytes
+ * that are left, so a corrupt file is detected instead of causing a huge
+ * allocation.
+ * </p>
+ *
+ * <p>
+ * A segment is unmapped when it is released, before its file is deleted, so
+ * that the disk space is freed at once instead of when the buffer is garbage
+ * collected, and so that the file can be deleted on platforms that do not
+ * delete a mapped file.
+ * </p>
+ */
+public class SpillBuffer {
+
+    private static final Logger logger = LogManager.getLogger(SpillBuffer.class);
+
+    /** The file name extension of the segment files. */
+    protected static final String SUFFIX = ".spill";
+
+    /** The file name extension of a segment file that cannot be read. */
+    protected static final String CORRUPT_SUFFIX = ".corrupt";
+
+    /** The size of the length that precedes each encoded document. */
+    private static final int LENGTH_SIZE = 4;
+
+    /** The first int of a segment file. */
+    private static final int MAGIC = 0x53504C31;
+
+    /** The size of the segment header: the magic and the position of the first document that was not stored. */
+    private static final int HEADER_SIZE = 8;
+
+    /** The position of the read position in the segment header. */
+    private static final int READ_POSITION_OFFSET = 4;
+
+    /** How long {@link #finish()} waits for an interrupted store thread. */
+    private static final long STOP_TIMEOUT_MILLIS = 10_000L;
+
+    private static final byte NULL = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte LONG = 2;
+
+    private static final byte INTEGER = 3;
+
+    private static final byte DOUBLE = 4;
+
+    private static final byte FLOAT = 5;
+
+    private static final byte BOOLEAN = 6;
+
+    private static final byte DATE = 7;
+
+    private static final byte LIST = 8;
+
+    private static final byte STRING_ARRAY = 9;
+
+    private static final byte MAP = 10;
+
+    // 11 was a Java-serialized object, which is no longer read.
+
+    private static final byte DECIMAL = 12;
+
+    /** Unsafe.invokeCleaner, which unmaps a buffer, or null if the JVM has none. */
+    private static final Method INVOKE_CLEANER;
+
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Segments are unmapped by the garbage collector.", e);
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private final RunContext context;
+
+    private final Path dir;
+
+    private final String name;
+
+    private final int memorySize;
+
+    private final int segmentSize;
+
+    private final RecordPipeline.Sink sink;
+
+    private final ArrayDeque<PreparedDocument> memory = new ArrayDeque<>();
+
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+
+    /** The number of documents on disk that were not taken yet. */
+    private long diskCount;
+
+    private long diskBytes;
+
+    private long maxDiskBytes;
+
+    private long spilledCount;
+
+    private long replayedCount;
+
+    private long nextSequence;
+
+    private boolean finished;
+
+    private Thread storeThread;
+
+    /**
+     * Constructor.
+     * @param context The run context.
+     * @param dir The directory of the segment files.
+     * @param stateId The id of the state files of this run.
+     * @param memorySize The number of documents kept in memory before documents are written to disk.
+     * @param segmentSize The size of a segment file in bytes.
+     * @param sink The sink that stores a document. It is called by the store thread, in order.
+     */
+    public SpillBuffer(final RunContext context, final Path dir, final String stateId, final int memorySize, final int segmentSize,
+            final RecordPipeline.Sink sink) {
+        this.context = context;
+        this.dir = dir;
+        name = stateId == null ? "default" : stateId.replaceAll("[^A-Za-z0-9_.\\-]", "_");
+        this.memorySize = Math.max(0, memorySize);
+        this.segmentSize = Math.max(1024, segmentSize);
+        this.sink = sink;
+    }
+
+    /**
+     * Get the file of a segment.
+     * @param sequence The sequence number of the segment.
+     * @return The segment file.
+     */
+    public Path getFile(final long sequence) {
+        return dir.resolve(name + "." + sequence + SUFFIX);
+    }
+
+    /**
+     * Find the segments left by an earlier run. Their documents are stored
+     * before the documents put by this run.
+     * @return The number of documents to replay.
+     * @throws IOException if the directory cannot be created or a segment cannot be read.
+     */
+    public synchronized long open() throws IOException {
+        Files.createDirectories(dir);
+        final TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, name + ".*" + SUFFIX)) {
+            for (final Path file : stream) {
+                final String fileName = file.getFileName().toString();
+                final String sequence = fileName.substring(name.length() + 1, fileName.length() - SUFFIX.length());
+                if (!sequence.isEmpty() && sequence.chars().allMatch(Character::isDigit)) {
+                    files.put(Long.parseLong(sequence), file);
+                }
+            }
+        }
+        for (final Map.Entry<Long, Path> entry : files.entrySet()) {
+            nextSequence = entry.getKey() + 1;
+            final Segment segment = Segment.open(entry.getValue());
+            if (segment.count < 0) {
+                quarantine(segment, "it is not a valid segment", 0, null);
+                continue;
+            }
+            if (segment.count == 0) {
+                unmap(segment.buffer);
+                Files.deleteIfExists(segment.file);
+                continue;
+            }
+            segments.add(segment);
+            diskCount += segment.count;
+            diskBytes += segment.writePosition - segment.readPosition;
+            replayedCount += segment.count;
+        }
+        maxDiskBytes = diskBytes;
+        if (replayedCount > 0) {
+            logger.info("Replaying {} documents of {} segments in {}", replayedCount, segments.size(), dir);
+        }
+        return replayedCount;
+    }
+
+    /**
+     * Start the store thread.
+     * @param threadName The prefix of the thread name.
+     */
+    public void start(final String threadName) {
+        storeThread = Thread.ofPlatform().name(threadName + "-spill").daemon().start(this::runStore);
+    }
+
+    /**
+     * Add a prepared document. It is kept in memory, or written to disk if
+     * there are {@code memorySize} documents in memory or documents on disk
+     * already. Never waits for the store thread.
+     * @param entry The prepared document.
+     * @throws IOException if the document cannot be written to disk.
+     */
+    public void put(final PreparedDocument entry) throws IOException {
+        synchronized (this) {
+            checkNotFinished();
+            if (diskCount == 0 && memory.size() < memorySize) {
+                memory.add(entry);
+                notifyAll();
+                return;
+            }
+        }
+        // Encoding is the expensive part, so it runs outside the lock. Concurrent
+        // producers have no order among themselves anyway.
+        final byte[] bytes = encode(entry);
+        synchronized (this) {
+            checkNotFinished();
+            write(bytes);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Signal that no more documents are put, and wait until the store thread
+     * has stored all of them. When the run was stopped, the remaining
+     * documents are not stored and the segment files are kept for the next
+     * run.
+     */
+    public void finish() {
+        synchronized (this) {
+            finished = true;
+            notifyAll();
+        }
+        if (storeThread != null && !joinStoreThread()) {
+            // The thread may still be in the callback or take the next document.
+            logger.warn("The store thread of the spill buffer did not end within {}ms. Its documents are left to it.",
+                    STOP_TIMEOUT_MILLIS);
+            return;
+        }
+        final List<PreparedDocument> remaining;
+        synchronized (this) {
+            remaining = new ArrayList<>(memory);
+            memory.clear();
+            while (!segments.isEmpty()) {
+                release(segments.poll());
+            }
+        }
+        // Only left if the store thread failed; the stopped run finishes their stats.
+        for (final PreparedDocument entry : remaining) {
+            sink.store(entry);
+        }
+    }
+
+    /**
+     * Wait until the store thread ends. If this thread is interrupted, the run
+     * is stopped and the store thread is interrupted and waited for again,
+     * for a limited time.
+     * @return true if the store thread ended.
+     */
+    private boolean joinStoreThread() {
+        try {
+            storeThread.join();
+            return true;
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while waiting for the spill buffer.", e);
+            context.stop();
+            storeThread.interrupt();
+        }
+        try {
+            storeThread.join(STOP_TIMEOUT_MILLIS);
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted again while waiting for the spill buffer.", e);
+        } finally {
+            Thread.currentThread().interrupt();
+        }
+        return !storeThread.isAlive();
+    }
+
+    /**
+     * @return The number of documents that were written to disk by this run.
+     */
+    public synchronized long getSpilledCount() {
+        return spilledCount;
+    }
+
+    /**
+     * @return The number of documents of an earlier run that were replayed.
+     */
+    public synchronized long getReplayedCount() {
+        return replayedCount;
+    }
+
+    /**
+     * @return The largest number of bytes on disk at the same time.
+     */
+    public synchronized long getMaxDiskBytes() {
+        return maxDiskBytes;
+    }
+
+    /**
+     * @return The number of documents waiting in memory or on disk.
+     */
+    public synchronized long getPendingCount() {
+        return memory.size() + diskCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpillBuffer [dir=" + dir + ", memorySize=" + memorySize + ", segmentSize=" + segmentSize + ", spilled=" + spilledCount
+                + ", replayed=" + replayedCount + ", maxDiskBytes=" + maxDiskBytes + "]";
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("The spill buffer is finished.");
+        }
+    }
+
+    private void write(final byte[] bytes) throws IOException {
+        final int size = LENGTH_SIZE + bytes.length;
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.sealed || segment.writePosition + size > segment.buffer.capacity()) {
+            if (segment != null) {
+                segment.sealed = true;
+            }
+            segment = Segment.create(getFile(nextSequence++), Math.max(segmentSize, HEADER_SIZE + size));
+            segments.add(segment);
+        }
+        // The length is written last, so a document that was only partly written
+        // when the process died is not replayed.
+        segment.buffer.put(segment.writePosition + LENGTH_SIZE, bytes);
+        segment.buffer.putInt(segment.writePosition, bytes.length);
+        segment.writePosition += size;
+        segment.count++;
+        diskCount++;
+        spilledCount++;
+        diskBytes += size;
+        maxDiskBytes = Math.max(maxDiskBytes, diskBytes);
+    }
+
+    private void runStore() {
+        try {
+            PreparedDocument entry;
+            while ((entry = take()) != null) {
+                try {
+                    if (!sink.store(entry)) {
+                        context.stop();
+                    }
+                } catch (final RuntimeException e) {
+                    logger.warn("Failed to store record:{}.", entry.getIndex(), e);
+                    context.stop();
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted the spill buffer.", e);
+            context.stop();
+        }
+    }
+
+    /**
+     * Take the next document, waiting until one is put. Called by the store
+     * thread after the previous document was stored, which acknowledges it.
+     * A segment that cannot be read is skipped.
+     * @return The document, or null if the buffer is finished and empty.
+     */
+    private PreparedDocument take() throws InterruptedException {
+        while (true) {
+            final Segment segment;
+            final byte[] bytes;
+            synchronized (this) {
+                // A segment whose documents were all taken is done now, because the
+                // last one was stored before this call.
+                while (!segments.isEmpty() && segments.peekFirst().isConsumed()) {
+                    release(segments.poll());
+                }
+                // The documents before the read position were stored. A stopped run
+                // does not store the documents it takes, so they are replayed.
+                if (!segments.isEmpty() && context.isRunning()) {
+                    segments.peekFirst().acknowledge();
+                }
+                while (memory.isEmpty() && diskCount == 0) {
+                    if (finished) {
+                        return null;
+                    }
+                    wait();
+                }
+                // Documents in memory were put before any document on disk.
+                if (!memory.isEmpty()) {
+                    return memory.poll();
+                }
+                segment = segments.peekFirst();
+                final int length = segment.buffer.getInt(segment.readPosition);
+                if (length <= 0 || length > segment.writePosition - segment.readPosition - LENGTH_SIZE) {
+                    quarantine(segment, "invalid length " + length + " at " + segment.readPosition, segment.count - segment.taken, null);
+                    continue;
+                }
+                bytes = new byte[length];
+                segment.buffer.get(segment.readPosition + LENGTH_SIZE, bytes);
+                segment.readPosition += LENGTH_SIZE + length;
+                segment.taken++;
+                diskCount--;
+                diskBytes -= LENGTH_SIZE + length;
+            }
+            try {
+                return decode(bytes, segment.replayed);
+            } catch (final IOException | RuntimeException e) {
+                synchronized (this) {
+                    // The document that failed is lost as well.
+                    quarantine(segment, "a document cannot be decoded", segment.count - segment.taken + 1, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Give up a segment that cannot be read: skip its remaining documents and
+     * rename its file, so that later runs do not replay it again.
+     * @param segment The segment.
+     * @param reason Why the segment cannot be read.
+     * @param lost The number of documents of the segment that are not stored.
+     * @param cause The exception, or null.
+     */
+    private void quarantine(final Segment segment, final String reason, final int lost, final Throwable cause) {
+        if (segments.remove(segment)) {
+            diskCount -= segment.count - segment.taken;
+            diskBytes -= segment.writePosition - segment.readPosition;
+        }
+        unmap(segment.buffer);
+        final Path target = segment.file.resolveSibling(segment.file.getFileName() + CORRUPT_SUFFIX);
+        logger.error("Failed to read {}: {}. Skipped {} documents and moved the file to {}.", segment.file, reason, lost, target, cause);
+        try {
+            Files.move(segment.file, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            logger.warn("Failed to move {}.", segment.file, e);
+        }
+    }
+
+    private void release(final Segment segment) {
+        // The buffer is only used under the lock, by a segment in the queue.
+        unmap(segment.buffer);
+        // The segments of a stopped run hold documents that were not stored.
+        if (!context.isRunning()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (final IOException e) {
+            logger.warn("Failed to delete {}.", segment.file, e);
+        }
+    }
+
+    /**
+     * Unmap a segment buffer. It must not be used afterwards.
+     * @param buffer The buffer.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Failed to unmap a segment.", e);
+        }
+    }
+
+    /**
+     * Encode a prepared document.
+     * @param entry The document.
+     * @return The encoded document.
+     * @throws IOException if the document cannot be written.
+     */
+    protected static byte[] encode(final PreparedDocument entry) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(entry.getSize() + 64, Integer.MAX_VALUE - 8));
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entry.getIndex());
+        writeString(out, entry.getStatsKey().getId());
+        writeString(out, entry.getStatsKey().getUrl());
+        final FingerprintStore.Fingerprint fingerprint = entry.getFingerprint();
+        out.writeBoolean(fingerprint != null);
+        if (fingerprint != null) {
+            out.writeLong(fingerprint.getId());
+            out.writeLong(fingerprint.getHash());
+            out.writeLong(fingerprint.getTimestamp());
+        }
+        writeValue(out, entry.getDataMap());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a prepared document.
+     * @param bytes The encoded document.
+     * @param replayed Whether the document belongs to an earlier run.
+     * @return The document, with the index -1 if it belongs to an earlier run.
+     * @throws IOException if the document cannot be decoded.
+     */
+    @SuppressWarnings("unchecked")
+    protected PreparedDocument decode(final byte[] bytes, final boolean replayed) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        final int index = in.readInt();
+        final StatsKeyObject statsKey = new StatsKeyObject(readString(in));
+        final String url = readString(in);
+        if (url != null) {
+            statsKey.setUrl(url);
+        }
+        final FingerprintStore.Fingerprint fingerprint =
+                in.readBoolean() ? new FingerprintStore.Fingerprint(in.readLong(), in.readLong(), in.readLong()) : null;
+        final Map<String, Object> dataMap = (Map<String, Object>) readValue(in);
+        return new PreparedDocument(replayed ? -1 : index, statsKey, context.newRecordParams(statsKey), dataMap, fingerprint);
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        final byte[] bytes = new byte[checkLength(in, length)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeValue(final DataOutputStream out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof final CharSequence s) {
+            // Includes Groovy's GString.
+            out.writeByte(STRING);
+            writeString(out, s.toString());
+        } else if (value instanceof final Long l) {
+            out.writeByte(LONG);
+            out.writeLong(l);
+        } else if (value instanceof final Integer i) {
+            out.writeByte(INTEGER);
+            out.writeInt(i);
+        } else if (value instanceof final Double d) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(d);
+        } else if (value instanceof final Float f) {
+            out.writeByte(FLOAT);
+            out.writeFloat(f);
+        } else if (value instanceof Short || value instanceof Byte) {
+            out.writeByte(INTEGER);
+            out.writeInt(((Number) value).intValue());
+        } else if (value instanceof final BigDecimal d) {
+            out.writeByte(DECIMAL);
+            writeString(out, d.toString());
+        } else if (value instanceof final BigInteger i) {
+            out.writeByte(DECIMAL);
+            writeString(out, i.toString());
+        } else if (value instanceof final Number n) {
+            writeNumber(out, n);
+        } else if (value instanceof final Boolean b) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(b);
+        } else if (value instanceof final Date d) {
+            // A java.sql.Timestamp loses its nanoseconds, as in the index.
+            out.writeByte(DATE);
+            out.writeLong(d.getTime());
+        } else if (value instanceof final String[] array) {
+            out.writeByte(STRING_ARRAY);
+            out.writeInt(array.length);
+            for (final String element : array) {
+                writeString(out, element);
+            }
+        } else if (value instanceof final Collection<?> collection) {
+            // A set or another collection is read back as a list.
+            out.writeByte(LIST);
+            out.writeInt(collection.size());
+            for (final Object element : collection) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof final Object[] array) {
+            out.writeByte(LIST);
+            out.writeInt(array.length);
+            for (final Object element : array) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof final Map<?, ?> map) {
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            // Such as java.time values, which the index reads from their text.
+            out.writeByte(STRING);
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeNumber(final DataOutputStream out, final Number value) throws IOException {
+        final BigDecimal decimal;
+        try {
+            decimal = new BigDecimal(value.toString());
+        } catch (final NumberFormatException e) {
+            // A number that is not written as a decimal, such as NaN.
+            out.writeByte(DOUBLE);
+            out.writeDouble(value.doubleValue());
+            return;
+        }
+        out.writeByte(DECIMAL);
+        writeString(out, decimal.toString());
+    }
+
+    private static Object readValue(final DataInputStream in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case LONG:
+            return in.readLong();
+        case INTEGER:
+            return in.readInt();
+        case DOUBLE:
+            return in.readDouble();
+        case FLOAT:
+            return in.readFloat();
+        case BOOLEAN:
+            return in.readBoolean();
+        case DATE:
+            return new Date(in.readLong());
+        case LIST: {
+            final int size = checkLength(in, in.readInt());
+            final List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        }
+        case STRING_ARRAY: {
+            final String[] array = new String[checkLength(in, in.readInt())];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = readString(in);
+            }
+            return array;
+        }
+        case MAP: {
+            final int size = checkLength(in, in.readInt());
+            final Map<String, Object> map = new LinkedHashMap<>((int) (size / 0.75f) + 1);
+            for (int i = 0; i < size; i++) {
+                map.put(readString(in), readValue(in));
+            }
+            return map;
+        }
+        case DECIMAL:
+            try {
+                return new BigDecimal(readString(in));
+            } catch (final RuntimeException e) {
+                throw new IOException("Invalid decimal in a spilled value.", e);
+            }
+        default:
+            throw new IOException("Unknown type of a spilled value: " + type);
+        }
+    }
+
+    /**
+     * Check a length or a number of elements read from an encoded document.
+     * Every byte or element takes at least one byte, so it cannot be larger
+     * than the rest of the document, which is at most one segment.
+     */
+    private static int checkLength(final DataInputStream in, final int length) throws IOException {
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid length of a spilled value: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+        private final Path file;
+
+        private final MappedByteBuffer buffer;
+
+        private final boolean replayed;
+
+        private int writePosition;
+
+        private int readPosition;
+
+        /** The number of documents from the read position at open, or -1 if the file is not a valid segment. */
+        private int count;
+
+        /** The number of documents that were taken. */
+        private int taken;
+
+        /** Whether no more documents are written to this segment. */
+        private boolean sealed;
+
+        private Segment(final Path file, final MappedByteBuffer buffer, final boolean replayed) {
+            this.file = file;
+            this.buffer = buffer;
+            this.replayed = replayed;
+        }
+
+        /**
+         * Create a new segment file.
+         */
+        static Segment create(final Path file, final int size) throws IOException {
+            final Segment segment;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                segment = new Segment(file, channel.map(MapMode.READ_WRITE, 0, size), false);
+            }
+            segment.buffer.putInt(0, MAGIC);
+            segment.writePosition = HEADER_SIZE;
+            segment.readPosition = HEADER_SIZE;
+            segment.acknowledge();
+            return segment;
+        }
+
+        /**
+         * Open a segment file of an earlier run and count the complete
+         * documents that were not stored.
+         */
+        static Segment open(final Path file) throws IOException {
+            final Segment segment;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = new Segment(file, channel.map(MapMode.READ_WRITE, 0, channel.size()), true);
+            }
+            segment.sealed = true;
+            final int capacity = segment.buffer.capacity();
+            if (capacity < HEADER_SIZE || segment.buffer.getInt(0) != MAGIC) {
+                segment.count = -1;
+                return segment;
+            }
+            int position = segment.buffer.getInt(READ_POSITION_OFFSET);
+            if (position < HEADER_SIZE || position > capacity) {
+                segment.count = -1;
+                return segment;
+            }
+            segment.readPosition = position;
+            while (position + LENGTH_SIZE <= capacity) {
+                final int length = segment.buffer.getInt(position);
+                if (length <= 0 || length > capacity - position - LENGTH_SIZE) {
+                    break;
+                }
+                position += LENGTH_SIZE + length;
+                segment.count++;
+            }
+            segment.writePosition = position;
+            return segment;
+        }
+
+        /**
+         * Record in the header that the documents before the read position were stored.
+         */
+        void acknowledge() {
+            buffer.putInt(READ_POSITION_OFFSET, readPosition);
+        }
+
+        /**
+         * @return true if no more documents are written and all were taken.
+         */
+        boolean isConsumed() {
+            return sealed && readPosition == writePosition;
+        }
+    }
+}
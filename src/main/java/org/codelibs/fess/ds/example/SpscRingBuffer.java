@@ -0,0 +1,180 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue for exactly one producer thread and one consumer
+ * thread.
+ *
+ * <p>
+ * The elements are kept in a ring of a power-of-two capacity. The producer
+ * only writes the tail and the consumer only writes the head, so neither needs
+ * a lock or a compare-and-set; ordered writes publish the elements. When the
+ * queue is full or empty, {@link #put(Object)} and {@link #take()} spin
+ * briefly, then yield, then park for intervals that double up to
+ * {@link #MAX_PARK_NANOS}, so an idle stage costs almost no CPU and a busy one
+ * hands over elements without a context switch.
+ * </p>
+ *
+ * @param <E> The type of the elements.
+ */
+public class SpscRingBuffer<E> {
+
+    /** The number of busy-spin rounds before the waiting thread yields. */
+    protected static final int SPIN_LIMIT = 100;
+
+    /** The number of yield rounds before the waiting thread parks. */
+    protected static final int YIELD_LIMIT = 200;
+
+    /** The first park time of a waiting thread in nanoseconds. */
+    protected static final long MIN_PARK_NANOS = 50_000L;
+
+    /** The longest park time of a waiting thread in nanoseconds. */
+    protected static final long MAX_PARK_NANOS = 10_000_000L;
+
+    private final AtomicReferenceArray<E> buffer;
+
+    /** The largest capacity, so that the rounded size is still a positive int. */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param capacity The minimum capacity; it is rounded up to a power of two of at least 2.
+     * @throws IllegalArgumentException if the capacity is greater than {@link #MAX_CAPACITY}.
+     */
+    public SpscRingBuffer(final int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The capacity " + capacity + " is greater than " + MAX_CAPACITY + ".");
+        }
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        buffer = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Add an element if there is room. Called by the producer thread only.
+     * @param element The element, not null.
+     * @return true if the element was added, false if the queue is full.
+     */
+    public boolean offer(final E element) {
+        final long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        buffer.lazySet((int) t & mask, element);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest element if there is one. Called by the consumer thread only.
+     * @return The element, or null if the queue is empty.
+     */
+    public E poll() {
+        final long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        final int offset = (int) h & mask;
+        final E element = buffer.get(offset);
+        buffer.lazySet(offset, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * Add an element, waiting while the queue is full. Called by the producer thread only.
+     * @param element The element, not null.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void put(final E element) throws InterruptedException {
+        for (int round = 0; !offer(element); round++) {
+            idle(round);
+        }
+    }
+
+    /**
+     * Add an element, waiting at most the given time while the queue is full.
+     * Called by the producer thread only.
+     * @param element The element, not null.
+     * @param timeout The time to wait.
+     * @param unit The unit of the timeout.
+     * @return true if the element was added, false if the queue stayed full.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public boolean offer(final E element, final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int round = 0; !offer(element); round++) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            idle(round);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the oldest element, waiting while the queue is empty. Called by the consumer thread only.
+     * @return The element.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public E take() throws InterruptedException {
+        E element;
+        for (int round = 0; (element = poll()) == null; round++) {
+            idle(round);
+        }
+        return element;
+    }
+
+    /**
+     * @return The number of elements in the queue.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return The capacity of the queue.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    private static void idle(final int round) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (round < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (round < SPIN_LIMIT + YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            final int shift = Math.min(round - SPIN_LIMIT - YIELD_LIMIT, 16);
+            LockSupport.parkNanos(Math.min(MIN_PARK_NANOS << shift, MAX_PARK_NANOS));
+        }
+    }
+}
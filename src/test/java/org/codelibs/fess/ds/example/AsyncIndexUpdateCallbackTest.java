@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.entity.DataStoreParams;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link AsyncIndexUpdateCallback}.
+ */
+public class AsyncIndexUpdateCallbackTest extends UnitDsTestCase {
+
+    @Test
+    public void test_storeBlocksAtLimit() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BlockingIndexUpdateCallback callback = new BlockingIndexUpdateCallback(latch);
+        final AsyncIndexUpdateCallback asyncCallback = new AsyncIndexUpdateCallback(callback, Executors.newFixedThreadPool(2), 2);
+
+        asyncCallback.store(new DataStoreParams(), Collections.emptyMap());
+        asyncCallback.store(new DataStoreParams(), Collections.emptyMap());
+        assertEquals(2, asyncCallback.getInFlightCount());
+
+        // The third store waits until one of the pending stores completes.
+        final CompletableFuture<Void> third = CompletableFuture.runAsync(() -> {
+            try {
+                asyncCallback.store(new DataStoreParams(), Collections.emptyMap());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(100L);
+        assertFalse(third.isDone());
+
+        latch.countDown();
+        third.get(10, TimeUnit.SECONDS);
+        asyncCallback.close();
+        assertEquals(3, callback.count.get());
+        assertEquals(0, asyncCallback.getInFlightCount());
+    }
+
+    @Test
+    public void test_storeCompletesExceptionally() throws Exception {
+        final IndexUpdateCallback callback = new BlockingIndexUpdateCallback(null) {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                throw new IllegalStateException("unavailable");
+            }
+        };
+        final AsyncIndexUpdateCallback asyncCallback = new AsyncIndexUpdateCallback(callback, Executors.newSingleThreadExecutor(), 1);
+
+        final CompletableFuture<Long> future = asyncCallback.store(new DataStoreParams(), Collections.emptyMap());
+        boolean thrown = false;
+        try {
+            future.join();
+        } catch (final Exception e) {
+            thrown = e.getCause() instanceof IllegalStateException;
+        }
+        assertTrue(thrown);
+        asyncCallback.close();
+    }
+
+    @Test
+    public void test_closeWaitsForActions() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AsyncIndexUpdateCallback asyncCallback =
+                new AsyncIndexUpdateCallback(new BlockingIndexUpdateCallback(latch), Executors.newFixedThreadPool(4), 4);
+        final AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            asyncCallback.store(new DataStoreParams(), Collections.emptyMap()).whenComplete((storeNanos, t) -> {
+                try {
+                    Thread.sleep(10L);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                completed.incrementAndGet();
+            });
+        }
+        latch.countDown();
+        asyncCallback.close();
+
+        // Actions attached before completion finished before close returned.
+        assertEquals(4, completed.get());
+    }
+
+    /**
+     * Test implementation of {@link IndexUpdateCallback} that counts the
+     * stored documents and waits for a latch before it returns.
+     */
+    private static class BlockingIndexUpdateCallback implements IndexUpdateCallback {
+        private final CountDownLatch latch;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        BlockingIndexUpdateCallback(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+            try {
+                if (latch != null) {
+                    latch.await();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            count.incrementAndGet();
+        }
+
+        @Override
+        public long getExecuteTime() {
+            return 0;
+        }
+
+        @Override
+        public long getDocumentSize() {
+            return count.get();
+        }
+
+        @Override
+        public void commit() {
+            // nothing
+        }
+    }
+}
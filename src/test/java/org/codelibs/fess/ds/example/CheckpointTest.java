@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link Checkpoint}.
+ */
+public class CheckpointTest extends UnitDsTestCase {
+
+    @Test
+    public void test_completeInOrder() throws Exception {
+        final Path dir = Files.createTempDirectory("checkpoint");
+        final Checkpoint checkpoint = new Checkpoint(Checkpoint.getFile(dir, "config1"), 2);
+        assertEquals(0, checkpoint.load());
+
+        checkpoint.complete(0);
+        assertFalse(Files.exists(checkpoint.getFile()));
+        checkpoint.complete(1);
+        // Saved after 2 records.
+        assertTrue(Files.exists(checkpoint.getFile()));
+        assertEquals(2, new Checkpoint(checkpoint.getFile(), 2).load());
+    }
+
+    @Test
+    public void test_completeOutOfOrder() throws Exception {
+        final Path dir = Files.createTempDirectory("checkpoint");
+        final Checkpoint checkpoint = new Checkpoint(Checkpoint.getFile(dir, "config1"), 100);
+        checkpoint.load();
+
+        checkpoint.complete(2);
+        checkpoint.complete(1);
+        // Record 0 is still in progress.
+        assertEquals(0, checkpoint.getPosition());
+        checkpoint.complete(0);
+        assertEquals(3, checkpoint.getPosition());
+        checkpoint.complete(5);
+        assertEquals(3, checkpoint.getPosition());
+
+        checkpoint.save();
+        assertEquals(3, new Checkpoint(checkpoint.getFile(), 100).load());
+        // No temporary file is left behind.
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void test_compact() throws Exception {
+        final Path dir = Files.createTempDirectory("checkpoint");
+        final Checkpoint checkpoint = new Checkpoint(Checkpoint.getFile(dir, "config1"), Integer.MAX_VALUE);
+        checkpoint.load();
+        final int size = Checkpoint.COMPACT_THRESHOLD * 3;
+        checkpoint.complete(size + 1);
+        for (int i = 0; i < size; i++) {
+            checkpoint.complete(i);
+        }
+        assertEquals(size, checkpoint.getPosition());
+        checkpoint.complete(size);
+        assertEquals(size + 2, checkpoint.getPosition());
+    }
+
+    @Test
+    public void test_loadResumesAndDelete() throws Exception {
+        final Path dir = Files.createTempDirectory("checkpoint");
+        final Checkpoint checkpoint = new Checkpoint(Checkpoint.getFile(dir, "config/1"), 1);
+        assertEquals("config_1.checkpoint", checkpoint.getFile().getFileName().toString());
+        checkpoint.load();
+        checkpoint.complete(0);
+        checkpoint.complete(1);
+
+        final Checkpoint resumed = new Checkpoint(checkpoint.getFile(), 1);
+        assertEquals(2, resumed.load());
+        // Records before the loaded position are ignored.
+        resumed.complete(1);
+        assertEquals(2, resumed.getPosition());
+
+        resumed.delete();
+        assertFalse(Files.exists(checkpoint.getFile()));
+        assertEquals(0, new Checkpoint(checkpoint.getFile(), 1).load());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link DedupFilter}.
+ */
+public class DedupFilterTest extends UnitDsTestCase {
+
+    @Test
+    public void test_isDuplicate() {
+        final DedupFilter filter = new DedupFilter("url", 100);
+        assertFalse(filter.isDuplicate(record("http://example.com/1")));
+        assertFalse(filter.isDuplicate(record("http://example.com/2")));
+        assertTrue(filter.isDuplicate(record("http://example.com/1")));
+        assertTrue(filter.isDuplicate(record("http://example.com/1")));
+        assertEquals(2, filter.size());
+        assertEquals(2L, filter.getDuplicateCount());
+    }
+
+    @Test
+    public void test_missingKey() {
+        final DedupFilter filter = new DedupFilter("url", 100);
+        assertFalse(filter.isDuplicate(Collections.emptyMap()));
+        assertFalse(filter.isDuplicate(Collections.emptyMap()));
+        assertEquals(0, filter.size());
+    }
+
+    @Test
+    public void test_manyKeys() {
+        // The set grows from its initial size and keeps telling new keys from duplicates.
+        final DedupFilter filter = new DedupFilter("url", 1_000_000);
+        for (int i = 0; i < 100_000; i++) {
+            assertFalse(filter.isDuplicate(record("http://example.com/" + i)));
+        }
+        for (int i = 0; i < 100_000; i += 7) {
+            assertTrue(filter.isDuplicate(record("http://example.com/" + i)));
+        }
+        assertEquals(100_000, filter.size());
+        assertEquals(262_144L * Long.BYTES, filter.getMemorySize());
+    }
+
+    @Test
+    public void test_full() {
+        // Keys beyond the limit are not remembered, and never reported as duplicates.
+        final DedupFilter filter = new DedupFilter("url", 3);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(filter.isDuplicate(record("http://example.com/" + i)));
+        }
+        assertTrue(filter.isDuplicate(record("http://example.com/2")));
+        assertFalse(filter.isDuplicate(record("http://example.com/4")));
+        assertEquals(3, filter.size());
+        assertEquals(3L, filter.getOverflowCount());
+        assertEquals(1L, filter.getDuplicateCount());
+    }
+
+    @Test
+    public void test_invalidSize() {
+        boolean thrown = false;
+        try {
+            new DedupFilter("url", DedupFilter.MAX_SIZE + 1);
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    private static Map<String, Object> record(final String url) {
+        return Collections.singletonMap("url", url);
+    }
+}
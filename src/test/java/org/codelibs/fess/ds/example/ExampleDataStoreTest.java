@@ -15,21 +15,37 @@
  */
 package org.codelibs.fess.ds.example;
 
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
+import org.codelibs.fess.Constants;
 import org.codelibs.fess.app.service.FailureUrlService;
+import org.codelibs.fess.crawler.exception.MaxLengthExceededException;
 import org.codelibs.fess.ds.callback.IndexUpdateCallback;
 import org.codelibs.fess.entity.DataStoreParams;
 import org.codelibs.fess.opensearch.config.exentity.CrawlingConfig;
 import org.codelibs.fess.opensearch.config.exentity.FailureUrl;
 import org.codelibs.fess.exception.DataStoreCrawlingException;
+import org.codelibs.fess.exception.DataStoreException;
 import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
 import org.codelibs.fess.helper.SystemHelper;
 import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.codelibs.fess.script.ScriptEngine;
 import org.codelibs.fess.util.ComponentUtil;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
@@ -178,6 +194,1355 @@ public class ExampleDataStoreTest extends UnitDsTestCase {
         assertEquals(2, callback.getDataMapList().size());
     }
 
+    @Test
+    public void test_storeData_parallel() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "100");
+        paramMap.put("thread.size", "4");
+        paramMap.put("queue.size", "8");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(100, callback.getDataMapList().size());
+        final Set<Object> urls = new HashSet<>();
+        for (final Map<String, Object> dataMap : callback.getDataMapList()) {
+            urls.add(dataMap.get(fessConfig.getIndexFieldUrl()));
+        }
+        assertEquals(100, urls.size());
+    }
+
+    @Test
+    public void test_storeData_parallelVirtualThread() {
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "50");
+        paramMap.put("thread.size", "8");
+        paramMap.put("virtual.thread", "true");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(50, callback.getDataMapList().size());
+    }
+
+    @Test
+    public void test_storeData_statsKeysParallel() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("thread.size", "8");
+        assertStatsKeys(paramMap);
+    }
+
+    @Test
+    public void test_storeData_statsKeysPipeline() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("pipeline.depth", "4");
+        assertStatsKeys(paramMap);
+    }
+
+    @Test
+    public void test_storeData_statsKeysAsyncStore() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("async.store.size", "8");
+        assertStatsKeys(paramMap);
+    }
+
+    /**
+     * Run 200 records, of which every 7th fails in the callback and every 7th
+     * (shifted) fails in the scripts, and check that the callback, the crawler
+     * stats and the failure records of each record only see its own stats key.
+     */
+    private void assertStatsKeys(final DataStoreParams paramMap) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final int dataSize = 200;
+        final Map<String, Set<String>> statsActions = new ConcurrentHashMap<>();
+        final CrawlerStatsHelper crawlerStatsHelper = new CrawlerStatsHelper() {
+            @Override
+            public void begin(final Object keyObj) {
+                record(keyObj, "begin");
+            }
+
+            @Override
+            public void record(final Object keyObj, final StatsAction action) {
+                record(keyObj, action.name().toLowerCase(Locale.ROOT));
+            }
+
+            @Override
+            public void record(final Object keyObj, final String action) {
+                statsActions.computeIfAbsent(((StatsKeyObject) keyObj).getId(), k -> ConcurrentHashMap.newKeySet()).add(action);
+            }
+
+            @Override
+            public void done(final Object keyObj) {
+                record(keyObj, "done");
+            }
+        };
+        crawlerStatsHelper.init();
+        ComponentUtil.register(crawlerStatsHelper, "crawlerStatsHelper");
+        final List<String> failureUrls = Collections.synchronizedList(new ArrayList<>());
+        ComponentUtil.register(new FailureUrlService() {
+            @Override
+            public FailureUrl store(final CrawlingConfig crawlingConfig, final String errorName, final String url, final Throwable e) {
+                failureUrls.add(url);
+                return null;
+            }
+        }, FailureUrlService.class.getCanonicalName());
+
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                final Map<String, Object> source = super.createSourceRecord(index);
+                if (index % 7 == 5) {
+                    source.put("body", "x".repeat(200));
+                }
+                return source;
+            }
+        };
+        final List<String> mismatches = Collections.synchronizedList(new ArrayList<>());
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams params, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                final int index = Integer.parseInt(url.substring(url.indexOf('=') + 1));
+                final StatsKeyObject statsKey = (StatsKeyObject) params.get(Constants.CRAWLER_STATS_KEY);
+                Thread.yield();
+                if (!statsKey.getId().endsWith("#" + index) || !url.equals(statsKey.getUrl())) {
+                    mismatches.add(url + " " + statsKey.getId());
+                }
+                if (index % 7 == 3) {
+                    throw new DataStoreCrawlingException(url, "failed", null);
+                }
+                super.store(params, dataMap);
+            }
+        };
+        paramMap.put("data.size", Integer.toString(dataSize));
+        paramMap.put("content.max.size", "100");
+        paramMap.put("content.oversize", "reject");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(Collections.emptyList(), new ArrayList<>(mismatches));
+        // The parameters of the run never hold a stats key.
+        assertNull(paramMap.get(Constants.CRAWLER_STATS_KEY));
+        final Set<String> expectedFailures = new HashSet<>();
+        int failureCount = 0;
+        for (int i = 0; i < dataSize; i++) {
+            final boolean storeFailure = i % 7 == 3;
+            final boolean scriptFailure = i % 7 == 5;
+            if (storeFailure) {
+                expectedFailures.add("http://fess.codelibs.org/?sample=" + i);
+            } else if (scriptFailure) {
+                expectedFailures.add("record:" + i);
+            }
+            final String suffix = "#" + i;
+            final List<Set<String>> matches = new ArrayList<>();
+            for (final Map.Entry<String, Set<String>> entry : statsActions.entrySet()) {
+                if (entry.getKey().endsWith(suffix)) {
+                    matches.add(entry.getValue());
+                }
+            }
+            assertEquals(1, matches.size());
+            final Set<String> actions = matches.get(0);
+            assertTrue(actions.contains("begin") && actions.contains("done"));
+            assertEquals(storeFailure || scriptFailure, actions.contains("access_exception"));
+            assertEquals(!storeFailure && !scriptFailure, actions.contains("finished"));
+            if (storeFailure || scriptFailure) {
+                failureCount++;
+            }
+        }
+        assertEquals(dataSize, statsActions.size());
+        assertEquals(dataSize - failureCount, callback.getDataMapList().size());
+        assertEquals(expectedFailures, new HashSet<>(failureUrls));
+        assertEquals(failureCount, failureUrls.size());
+    }
+
+    @Test
+    public void test_storeData_parallelAbortStopsLoop() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final CountDownLatch secondStarted = new CountDownLatch(1);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected boolean storeRecord(final RunContext context, final Map<String, Object> source, final int index) {
+                final boolean running = super.storeRecord(context, source, index);
+                if (!running) {
+                    context.stop();
+                    stopped.countDown();
+                }
+                return running;
+            }
+        };
+        // Record 0 aborts the crawl while record 1 is being stored by the other
+        // worker, which only finishes after the run was stopped.
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                try {
+                    if (url.endsWith("=0")) {
+                        secondStarted.await();
+                        throw new DataStoreCrawlingException(url, "aborted", null, true);
+                    }
+                    secondStarted.countDown();
+                    stopped.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10000");
+        paramMap.put("thread.size", "2");
+        paramMap.put("queue.size", "2");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // The record in progress on the other worker is stored; the queued
+        // records are dropped and the crawler thread reads at most one record
+        // after the queue is full.
+        assertEquals(1, callback.getDataMapList().size());
+        assertEquals("http://fess.codelibs.org/?sample=1", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldUrl()));
+        assertTrue(dataStore.getMetrics().getRecordCount() <= 2 + 2 + 1);
+    }
+
+    @Test
+    public void test_storeData_customRecordSource() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        // A streaming source that reports a read failure for its second record.
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected RecordSource openRecordSource(final RunPlan plan) {
+                return new RecordSource() {
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < 3;
+                    }
+
+                    @Override
+                    public Map<String, Object> next() {
+                        final int index = position++;
+                        if (index == 1) {
+                            throw new IllegalStateException("broken record");
+                        }
+                        final Map<String, Object> source = new HashMap<>();
+                        source.put("title", "Row " + index);
+                        return source;
+                    }
+                };
+            }
+        };
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final Map<String, String> scriptMap = new HashMap<>();
+        scriptMap.put(fessConfig.getIndexFieldTitle(), "title");
+
+        dataStore.storeData(new DataConfig(), callback, new DataStoreParams(), scriptMap, new HashMap<>());
+
+        assertEquals(2, callback.getDataMapList().size());
+        assertEquals("Row 0", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldTitle()));
+        assertEquals("Row 2", callback.getDataMapList().get(1).get(fessConfig.getIndexFieldTitle()));
+    }
+
+    @Test
+    public void test_storeData_shardSkipsBrokenRecords() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        // The default skip reads the other shards' records, and two of them fail.
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected RecordSource openRecordSource(final RunPlan plan) {
+                return new RecordSource() {
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < 9;
+                    }
+
+                    @Override
+                    public Map<String, Object> next() {
+                        final int index = position++;
+                        if (index == 1 || index == 5) {
+                            throw new IllegalStateException("broken record");
+                        }
+                        final Map<String, Object> source = new HashMap<>();
+                        source.put("title", "Row " + index);
+                        return source;
+                    }
+                };
+            }
+        };
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("shard.count", "3");
+        paramMap.put("shard.index", "0");
+        final Map<String, String> scriptMap = new HashMap<>();
+        scriptMap.put(fessConfig.getIndexFieldTitle(), "title");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, scriptMap, new HashMap<>());
+
+        assertEquals(3, callback.getDataMapList().size());
+        assertEquals("Row 0", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldTitle()));
+        assertEquals("Row 3", callback.getDataMapList().get(1).get(fessConfig.getIndexFieldTitle()));
+        assertEquals("Row 6", callback.getDataMapList().get(2).get(fessConfig.getIndexFieldTitle()));
+    }
+
+    @Test
+    public void test_storeData_shardWithSourceThatCannotSkip() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        // A source that skips nothing is read record by record instead.
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected RecordSource openRecordSource(final RunPlan plan) {
+                return new RecordSource() {
+                    private int position;
+
+                    @Override
+                    public boolean hasNext() {
+                        return position < 9;
+                    }
+
+                    @Override
+                    public Map<String, Object> next() {
+                        final Map<String, Object> source = new HashMap<>();
+                        source.put("title", "Row " + position++);
+                        return source;
+                    }
+
+                    @Override
+                    public int skip(final int count) {
+                        return 0;
+                    }
+                };
+            }
+        };
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("shard.count", "3");
+        paramMap.put("shard.index", "1");
+        final Map<String, String> scriptMap = new HashMap<>();
+        scriptMap.put(fessConfig.getIndexFieldTitle(), "title");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, scriptMap, new HashMap<>());
+
+        assertEquals(3, callback.getDataMapList().size());
+        assertEquals("Row 1", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldTitle()));
+        assertEquals("Row 4", callback.getDataMapList().get(1).get(fessConfig.getIndexFieldTitle()));
+        assertEquals("Row 7", callback.getDataMapList().get(2).get(fessConfig.getIndexFieldTitle()));
+    }
+
+    @Test
+    public void test_storeData_changedSourceRecord() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        // A subclass adds and removes fields of the generated record.
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                final Map<String, Object> source = super.createSourceRecord(index);
+                source.put("category", "news");
+                source.remove("created");
+                return source;
+            }
+        };
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "2");
+        final Map<String, String> scriptMap = defaultScriptMap();
+        scriptMap.put(fessConfig.getIndexFieldContent(), "category");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, scriptMap, new HashMap<>());
+
+        assertEquals(2, callback.getDataMapList().size());
+        assertEquals("news", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldContent()));
+        assertEquals("Sample 0", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldTitle()));
+    }
+
+    @Test
+    public void test_openRecordSource() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "3");
+        int count = 0;
+        try (RecordSource recordSource = dataStore.openRecordSource(plan(paramMap))) {
+            while (recordSource.hasNext()) {
+                assertEquals(Integer.toString(count), recordSource.next().get("id"));
+                count++;
+            }
+        }
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void test_storeData_getDataSize() {
+        // A subclass can decide the number of records itself.
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected int getDataSize(final RunPlan plan) {
+                return super.getDataSize(plan) + 2;
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "3");
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(5, callback.getDataMapList().size());
+    }
+
+    @Test
+    public void test_storeData_resumeFromCheckpoint() throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final Path checkpointDir = Files.createTempDirectory("checkpoint");
+        final DataConfig dataConfig = new DataConfig();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        paramMap.put("checkpoint.dir", checkpointDir.toString());
+        paramMap.put("checkpoint.interval", "2");
+
+        // The first run aborts while storing record 4.
+        final TestIndexUpdateCallback abortingCallback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                if (url.endsWith("=4")) {
+                    throw new DataStoreCrawlingException(url, "aborted", null, true);
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        dataStore.storeData(dataConfig, abortingCallback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(4, abortingCallback.getDataMapList().size());
+
+        // The second run resumes at the aborted record and finishes the rest.
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(dataConfig, callback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(6, callback.getDataMapList().size());
+        assertEquals("http://fess.codelibs.org/?sample=4", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldUrl()));
+
+        // A completed run removes the checkpoint, so the next run starts over.
+        final TestIndexUpdateCallback fullCallback = new TestIndexUpdateCallback();
+        dataStore.storeData(dataConfig, fullCallback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(10, fullCallback.getDataMapList().size());
+    }
+
+    @Test
+    public void test_storeData_incremental() throws Exception {
+        final Path incrementalDir = Files.createTempDirectory("incremental");
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        paramMap.put("incremental.dir", incrementalDir.toString());
+
+        final TestIndexUpdateCallback callback1 = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback1, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(10, callback1.getDataMapList().size());
+
+        // Nothing changed: every record is skipped.
+        final TestIndexUpdateCallback callback2 = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback2, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(0, callback2.getDataMapList().size());
+
+        // Only the new records are stored.
+        paramMap.put("data.size", "12");
+        final TestIndexUpdateCallback callback3 = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback3, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(2, callback3.getDataMapList().size());
+
+        // A new mapping changes every document, so every record is stored again.
+        final String contentField = ComponentUtil.getFessConfig().getIndexFieldContent();
+        final Map<String, String> scriptMap = defaultScriptMap();
+        scriptMap.put(contentField, "title");
+        final TestIndexUpdateCallback callback4 = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback4, paramMap, scriptMap, new HashMap<>());
+        assertEquals(12, callback4.getDataMapList().size());
+        assertEquals("Sample 0", callback4.getDataMapList().get(0).get(contentField));
+
+        final TestIndexUpdateCallback callback5 = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback5, paramMap, scriptMap, new HashMap<>());
+        assertEquals(0, callback5.getDataMapList().size());
+    }
+
+    @Test
+    public void test_storeData_incrementalRetriesFailedRecords() throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final Path incrementalDir = Files.createTempDirectory("incremental");
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "5");
+        paramMap.put("incremental.dir", incrementalDir.toString());
+
+        final TestIndexUpdateCallback failingCallback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                if (url.endsWith("=3")) {
+                    throw new DataStoreCrawlingException(url, "failed", null);
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        dataStore.storeData(new DataConfig(), failingCallback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(4, failingCallback.getDataMapList().size());
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(1, callback.getDataMapList().size());
+        assertEquals("http://fess.codelibs.org/?sample=3", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldUrl()));
+    }
+
+    @Test
+    public void test_storeData_rateLimit() {
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "5");
+        paramMap.put("rate.limit", "20");
+        paramMap.put("rate.burst", "1");
+
+        final long startTime = System.currentTimeMillis();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(5, callback.getDataMapList().size());
+        // 4 records wait for a token at 20 records per second.
+        assertTrue(System.currentTimeMillis() - startTime >= 190);
+    }
+
+    @Test
+    public void test_newRateLimiter() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        assertNull(dataStore.newRateLimiter(plan(paramMap)));
+
+        paramMap.put("readInterval", "500");
+        paramMap.put("rate.error.threshold", "0.5");
+        final RateLimiter fixed = dataStore.newRateLimiter(plan(paramMap));
+        assertEquals(2.0, fixed.getRate());
+        // The pace of readInterval does not adapt to failures.
+        fixed.record(0, true);
+        fixed.adapt(System.nanoTime());
+        assertEquals(2.0, fixed.getRate());
+
+        paramMap.put("rate.limit", "100");
+        final RateLimiter adaptive = dataStore.newRateLimiter(plan(paramMap));
+        assertEquals(100.0, adaptive.getRate());
+        adaptive.record(0, true);
+        adaptive.adapt(System.nanoTime());
+        assertEquals(50.0, adaptive.getRate());
+    }
+
+    @Test
+    public void test_storeData_metrics() throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                if (((String) dataMap.get(fessConfig.getIndexFieldUrl())).endsWith("=3")) {
+                    throw new IllegalStateException("failed");
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+
+        assertNull(dataStore.getMetrics());
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        final PipelineMetrics metrics = dataStore.getMetrics();
+        assertEquals(10L, metrics.getRecordCount());
+        assertEquals(9L, metrics.getStoredCount());
+        assertTrue(metrics.getByteCount() > 0);
+        assertEquals(0L, metrics.getSkippedCount());
+        assertEquals(Long.valueOf(1), metrics.getExceptionCounts().get(IllegalStateException.class.getName()));
+        assertEquals(10L, metrics.getHistogram(PipelineMetrics.Stage.READ).getCount());
+        assertEquals(10L, metrics.getHistogram(PipelineMetrics.Stage.PREPARE).getCount());
+        assertEquals(10L, metrics.getHistogram(PipelineMetrics.Stage.EVALUATE).getCount());
+        assertEquals(9L, metrics.getHistogram(PipelineMetrics.Stage.STORE).getCount());
+        // The elapsed time of a finished run does not grow.
+        final long elapsed = metrics.getElapsedTime();
+        assertTrue(elapsed > 0);
+        Thread.sleep(5L);
+        assertEquals(elapsed, metrics.getElapsedTime());
+    }
+
+    @Test
+    public void test_storeData_shards() {
+        assertShardsCoverSource(null);
+        assertShardsCoverSource("id");
+    }
+
+    private void assertShardsCoverSource(final String field) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final List<Object> urls = new ArrayList<>();
+        for (int index = 0; index < 3; index++) {
+            final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+            final DataStoreParams paramMap = new DataStoreParams();
+            paramMap.put("data.size", "100");
+            paramMap.put("shard.count", "3");
+            paramMap.put("shard.index", Integer.toString(index));
+            if (field != null) {
+                paramMap.put("shard.field", field);
+            }
+            dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+            assertTrue(callback.getDataMapList().size() > 0);
+            for (final Map<String, Object> dataMap : callback.getDataMapList()) {
+                urls.add(dataMap.get(fessConfig.getIndexFieldUrl()));
+            }
+        }
+        // The union of the shards is the full crawl without duplicates.
+        assertEquals(100, urls.size());
+        assertEquals(100, new HashSet<>(urls).size());
+    }
+
+    @Test
+    public void test_storeData_shardResumeFromCheckpoint() throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final Path checkpointDir = Files.createTempDirectory("checkpoint");
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "20");
+        paramMap.put("shard.count", "2");
+        paramMap.put("shard.index", "1");
+        paramMap.put("checkpoint.dir", checkpointDir.toString());
+        paramMap.put("checkpoint.interval", "1");
+
+        // Aborts at the third record of the shard (record 5).
+        final TestIndexUpdateCallback abortingCallback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                if (url.endsWith("=5")) {
+                    throw new DataStoreCrawlingException(url, "aborted", null, true);
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataConfig dataConfig = new DataConfig();
+        dataStore.storeData(dataConfig, abortingCallback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(2, abortingCallback.getDataMapList().size());
+        // The checkpoint is kept per shard.
+        assertTrue(Files.exists(Checkpoint.getFile(checkpointDir, dataConfig.getId() + ".shard1of2")));
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(dataConfig, callback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(8, callback.getDataMapList().size());
+        assertEquals("http://fess.codelibs.org/?sample=5", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldUrl()));
+    }
+
+    @Test
+    public void test_newShard() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        assertNull(dataStore.newShard(plan(paramMap)));
+        paramMap.put("shard.count", "4");
+        paramMap.put("shard.index", "3");
+        paramMap.put("shard.field", " id ");
+        assertEquals("shard3of4", dataStore.newShard(plan(paramMap)).getName());
+        // An index outside the shards never gets a plan.
+        paramMap.put("shard.index", "4");
+        boolean thrown = false;
+        try {
+            plan(paramMap);
+        } catch (final DataStoreException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void test_storeData_pipeline() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                threadNames.add(Thread.currentThread().getName());
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "1000");
+        paramMap.put("pipeline.depth", "4");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // Stored on the sink thread in source order.
+        assertEquals(1000, callback.getDataMapList().size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("http://fess.codelibs.org/?sample=" + i, callback.getDataMapList().get(i).get(fessConfig.getIndexFieldUrl()));
+        }
+        assertTrue(threadNames.get(0).endsWith("-sink"));
+    }
+
+    @Test
+    public void test_storeData_pipelineOverlapsStages() {
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                try {
+                    Thread.sleep(5);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "20");
+        paramMap.put("source.latency", "5");
+        paramMap.put("pipeline.depth", "4");
+
+        final long startTime = System.currentTimeMillis();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(20, callback.getDataMapList().size());
+        // Run one after another, reading and storing would take at least 200ms.
+        assertTrue(System.currentTimeMillis() - startTime < 200);
+    }
+
+    @Test
+    public void test_storeData_pipelineAbortStopsLoop() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                super.store(paramMap, dataMap);
+                if (getDataMapList().size() == 2) {
+                    throw new DataStoreCrawlingException((String) dataMap.get(fessConfig.getIndexFieldUrl()), "aborted", null, true);
+                }
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10000");
+        paramMap.put("pipeline.depth", "4");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // Records already in the pipeline are not stored after the abort.
+        assertEquals(2, callback.getDataMapList().size());
+    }
+
+    @Test
+    public void test_storeData_pipelineSinkFailureStopsRun() throws Exception {
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected boolean storeEntry(final RunContext context, final PreparedDocument entry) {
+                throw new Error("sink failed");
+            }
+        };
+        assertPipelineFailureStopsRun();
+    }
+
+    @Test
+    public void test_storeData_pipelineTransformFailureStopsRun() throws Exception {
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected boolean storeRecord(final RunContext context, final Map<String, Object> source, final int index) {
+                if (index == 3) {
+                    throw new Error("transform failed");
+                }
+                return super.storeRecord(context, source, index);
+            }
+        };
+        assertPipelineFailureStopsRun();
+    }
+
+    private void assertPipelineFailureStopsRun() throws Exception {
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10000");
+        paramMap.put("pipeline.depth", "2");
+
+        // A failed stage must not leave the other stages or the crawler waiting.
+        final Thread crawler =
+                new Thread(() -> dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>()));
+        crawler.start();
+        crawler.join(10_000L);
+        assertFalse(crawler.isAlive());
+        assertTrue(callback.getDataMapList().size() <= 3);
+    }
+
+    @Test
+    public void test_storeData_asyncStore() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final List<String> mismatches = Collections.synchronizedList(new ArrayList<>());
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                try {
+                    Thread.sleep(5);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // Every pending store still sees the stats key of its own record.
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                if (!url.equals(((StatsKeyObject) paramMap.get(Constants.CRAWLER_STATS_KEY)).getUrl())) {
+                    mismatches.add(url);
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "40");
+        paramMap.put("async.store.size", "8");
+
+        final long startTime = System.currentTimeMillis();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // All stores are drained before storeData returns.
+        assertEquals(40, callback.getDataMapList().size());
+        assertEquals(40L, dataStore.getMetrics().getStoredCount());
+        assertTrue(mismatches.isEmpty());
+        // One after another, the stores would take at least 200ms.
+        assertTrue(System.currentTimeMillis() - startTime < 200);
+    }
+
+    @Test
+    public void test_storeData_asyncStoreFailure() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                if (url.endsWith("=3")) {
+                    throw new DataStoreCrawlingException(url, "failed", null);
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        paramMap.put("async.store.size", "4");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(9, callback.getDataMapList().size());
+        assertEquals(9L, dataStore.getMetrics().getStoredCount());
+        assertEquals(1L, dataStore.getMetrics().getExceptionCounts().values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void test_storeData_spill() throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final Path spillDir = Files.createTempDirectory("spill");
+        final long[] readTime = new long[1];
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                if (index == 99) {
+                    readTime[0] = System.currentTimeMillis();
+                }
+                return super.createSourceRecord(index);
+            }
+        };
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                try {
+                    Thread.sleep(3);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "100");
+        paramMap.put("spill.dir", spillDir.toString());
+        paramMap.put("spill.memory.size", "5");
+        paramMap.put("spill.segment.size", "4096");
+
+        final long startTime = System.currentTimeMillis();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // The records are read without waiting for the slow index, and stored in order.
+        assertTrue(readTime[0] - startTime < 150);
+        assertTrue(System.currentTimeMillis() - startTime >= 300);
+        assertEquals(100, callback.getDataMapList().size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("http://fess.codelibs.org/?sample=" + i, callback.getDataMapList().get(i).get(fessConfig.getIndexFieldUrl()));
+        }
+        assertEquals(100L, dataStore.getMetrics().getStoredCount());
+        try (Stream<Path> files = Files.list(spillDir)) {
+            assertEquals(0L, files.count());
+        }
+    }
+
+    @Test
+    public void test_storeData_spillReplay() throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final Path spillDir = Files.createTempDirectory("spill");
+        final CountDownLatch allRead = new CountDownLatch(1);
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                if (index == 49) {
+                    allRead.countDown();
+                }
+                return super.createSourceRecord(index);
+            }
+        };
+        // The index fails at record 10, after all records were read and spilled.
+        final TestIndexUpdateCallback abortingCallback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                try {
+                    allRead.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (url.endsWith("=10")) {
+                    throw new DataStoreCrawlingException(url, "aborted", null, true);
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "50");
+        paramMap.put("spill.dir", spillDir.toString());
+        paramMap.put("spill.memory.size", "0");
+        paramMap.put("spill.segment.size", "1024");
+        dataStore.storeData(new DataConfig(), abortingCallback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(10, abortingCallback.getDataMapList().size());
+
+        // The next run stores the documents that were left on disk first.
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        paramMap.put("data.size", "0");
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+        final List<Object> urls = new ArrayList<>();
+        for (final Map<String, Object> dataMap : callback.getDataMapList()) {
+            urls.add(dataMap.get(fessConfig.getIndexFieldUrl()));
+        }
+        for (int i = 10; i < 50; i++) {
+            assertTrue(urls.contains("http://fess.codelibs.org/?sample=" + i));
+        }
+        // Of the stored documents, only those in the segment of the failed one are stored again.
+        assertTrue(urls.size() < 45);
+        assertEquals("http://fess.codelibs.org/?sample=49", urls.get(urls.size() - 1));
+        try (Stream<Path> files = Files.list(spillDir)) {
+            assertEquals(0L, files.count());
+        }
+    }
+
+    @Test
+    public void test_storeData_asyncStoreAbortStopsLoop() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                super.store(paramMap, dataMap);
+                if (getDataMapList().size() == 2) {
+                    throw new DataStoreCrawlingException((String) dataMap.get(fessConfig.getIndexFieldUrl()), "aborted", null, true);
+                }
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10000");
+        paramMap.put("async.store.size", "4");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // The stores that were pending at the abort still complete, but no
+        // further records are read.
+        assertTrue(callback.getDataMapList().size() < 100);
+    }
+
+    @Test
+    public void test_storeData_callbackKeepsDataMap() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        // Like the Fess callback, this one keeps the stored maps without copying them.
+        final List<Map<String, Object>> kept = new ArrayList<>();
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                kept.add(dataMap);
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "50");
+        final Map<String, Object> defaultDataMap = new HashMap<>();
+        defaultDataMap.put("lang", "en");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), defaultDataMap);
+
+        assertEquals(50, kept.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("http://fess.codelibs.org/?sample=" + i, kept.get(i).get(fessConfig.getIndexFieldUrl()));
+            assertEquals("Sample " + i, kept.get(i).get(fessConfig.getIndexFieldTitle()));
+            assertEquals("en", kept.get(i).get("lang"));
+        }
+    }
+
+    @Test
+    public void test_storeData_dedup() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        // Every record is emitted twice, like overlapping pages of an API.
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                return super.createSourceRecord(index / 2);
+            }
+        };
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "20");
+        paramMap.put("dedup.field", "url");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(10, callback.getDataMapList().size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("http://fess.codelibs.org/?sample=" + i, callback.getDataMapList().get(i).get(fessConfig.getIndexFieldUrl()));
+        }
+        assertEquals(10L, dataStore.getMetrics().getDuplicateCount());
+    }
+
+    @Test
+    public void test_storeData_failureRateAbortsRun() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        // The source goes bad after the first 10 records.
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback() {
+            @Override
+            public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+                final String url = (String) dataMap.get(fessConfig.getIndexFieldUrl());
+                if (Integer.parseInt(url.substring(url.indexOf('=') + 1)) >= 10) {
+                    throw new DataStoreCrawlingException(url, "failed", null);
+                }
+                super.store(paramMap, dataMap);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "100");
+        paramMap.put("failure.abort.rate", "0.5");
+        paramMap.put("failure.abort.window", "10");
+
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(10, callback.getDataMapList().size());
+        // The run stops at the end of the first window that exceeds the rate.
+        assertEquals(10L, dataStore.getMetrics().getExceptionCounts().values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void test_storeData_lazyField() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final List<LazyField> bodies = Collections.synchronizedList(new ArrayList<>());
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                final Map<String, Object> source = super.createSourceRecord(index);
+                final LazyField body = new LazyField(() -> new StringReader("Large body " + index));
+                bodies.add(body);
+                source.put("body", body);
+                return source;
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "5");
+
+        // No script refers to the body, so it is never read.
+        final Map<String, String> scriptMap = defaultScriptMap();
+        scriptMap.remove(fessConfig.getIndexFieldContent());
+        dataStore.storeData(new DataConfig(), new TestIndexUpdateCallback(), paramMap, scriptMap, new HashMap<>());
+        assertEquals(5, bodies.size());
+        assertTrue(bodies.stream().noneMatch(LazyField::isLoaded));
+
+        bodies.clear();
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(5, callback.getDataMapList().size());
+        assertEquals("Large body 0", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldContent()));
+        assertTrue(bodies.stream().allMatch(LazyField::isLoaded));
+    }
+
+    @Test
+    public void test_storeData_contentMaxSize() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "3");
+        paramMap.put("content.max.size", "11");
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        assertEquals(3, callback.getDataMapList().size());
+        assertEquals("Sample body", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldContent()));
+        assertEquals("Sample 0", callback.getDataMapList().get(0).get(fessConfig.getIndexFieldTitle()));
+    }
+
+    @Test
+    public void test_storeData_contentOversizeReject() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                final Map<String, Object> source = super.createSourceRecord(index);
+                if (index == 1) {
+                    source.put("body", "x".repeat(1000));
+                }
+                return source;
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "3");
+        paramMap.put("content.max.size", "100");
+        paramMap.put("content.oversize", "reject");
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // The oversize record fails; the others are stored unchanged.
+        assertEquals(2, callback.getDataMapList().size());
+        assertEquals("http://fess.codelibs.org/?sample=2", callback.getDataMapList().get(1).get(fessConfig.getIndexFieldUrl()));
+        assertEquals(Long.valueOf(1L), dataStore.getMetrics().getExceptionCounts().get(MaxLengthExceededException.class.getName()));
+    }
+
+    @Test
+    public void test_storeData_loadGenerator() {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "20");
+        paramMap.put("load.field.count", "2");
+        paramMap.put("load.body.size", "300");
+        paramMap.put("load.seed", "42");
+        final Map<String, String> scriptMap = defaultScriptMap();
+        scriptMap.put("field1", "field1");
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback, paramMap, scriptMap, new HashMap<>());
+        final TestIndexUpdateCallback callback2 = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback2, paramMap, scriptMap, new HashMap<>());
+
+        assertEquals(20, callback.getDataMapList().size());
+        final Map<String, Object> dataMap = callback.getDataMapList().get(3);
+        assertEquals(300, ((String) dataMap.get(fessConfig.getIndexFieldContent())).length());
+        assertNotNull(dataMap.get("field1"));
+        // The same seed produces the same documents.
+        assertEquals(dataMap.get(fessConfig.getIndexFieldContent()), callback2.getDataMapList().get(3).get(fessConfig.getIndexFieldContent()));
+    }
+
+    @Test
+    public void test_storeData_loadDuration() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("load.duration", "1");
+        paramMap.put("rate.limit", "50");
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        final long startTime = System.currentTimeMillis();
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+
+        // Without data.size, records are generated at the target rate until the duration has passed.
+        final long elapsed = System.currentTimeMillis() - startTime;
+        assertTrue(elapsed >= 900L && elapsed < 3000L);
+        assertTrue(callback.getDataMapList().size() > 30 && callback.getDataMapList().size() <= 110);
+    }
+
+    @Test
+    public void test_storeData_scriptCache() {
+        final AtomicInteger evaluateCount = new AtomicInteger();
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected ScriptPlan newScriptPlan(final String scriptType, final Map<String, String> scriptMap,
+                    final RunPlan plan) {
+                final ScriptPlan scriptPlan = super.newScriptPlan(scriptType, scriptMap, plan);
+                // Stands in for an expensive lookup of reference data by the id.
+                return new ScriptPlan(scriptType, scriptMap, Map.of("category", List.of("id")), scriptPlan.getCache()) {
+                    @Override
+                    protected ScriptEngine getScriptEngine() {
+                        return new ScriptEngine() {
+                            @Override
+                            public Object evaluate(final String template, final Map<String, Object> paramMap) {
+                                evaluateCount.incrementAndGet();
+                                return "category " + Integer.parseInt((String) paramMap.get("id")) % 3;
+                            }
+
+                            @Override
+                            public String getName() {
+                                return "lookup";
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            protected Map<String, Object> createSourceRecord(final int index) {
+                // Only 5 distinct ids.
+                return super.createSourceRecord(index % 5);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "50");
+        paramMap.put("script.cache.category", "id");
+        paramMap.put("script.cache.size", "100");
+        final Map<String, String> scriptMap = defaultScriptMap();
+        scriptMap.put("category", "lookup(id)");
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        dataStore.storeData(new DataConfig(), callback, paramMap, scriptMap, new HashMap<>());
+
+        assertEquals(50, callback.getDataMapList().size());
+        assertEquals("category 2", callback.getDataMapList().get(7).get("category"));
+        // Evaluated once per distinct id.
+        assertEquals(5, evaluateCount.get());
+    }
+
+    @Test
+    public void test_newScriptPlan() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        assertNull(dataStore.newScriptPlan("groovy", defaultScriptMap(), plan(paramMap)).getCache());
+
+        final Map<String, String> scriptMap = defaultScriptMap();
+        scriptMap.put("category", "lookup(id, title)");
+        paramMap.put("script.cache.category", "id, title");
+        paramMap.put("script.cache.size", "500");
+        final ScriptPlan scriptPlan = dataStore.newScriptPlan("groovy", scriptMap, dataStore.newRunPlan(paramMap, scriptMap));
+
+        assertEquals(500, scriptPlan.getCache().getMaxSize());
+        for (final ScriptPlan.Entry entry : scriptPlan.getEntries()) {
+            if ("category".equals(entry.getName())) {
+                assertEquals(List.of("id", "title"), List.of(entry.getCacheFields()));
+            } else {
+                assertNull(entry.getCacheFields());
+            }
+        }
+    }
+
+    @Test
+    public void test_validate() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        assertTrue(validate(paramMap).getErrors().isEmpty());
+
+        paramMap.put("data.size", "100");
+        paramMap.put("thread.size", "4");
+        paramMap.put("virtual.thread", "true");
+        paramMap.put("rate.limit", "12.5");
+        paramMap.put("shard.count", "3");
+        paramMap.put("shard.index", "2");
+        paramMap.put("content.oversize", "REJECT");
+        paramMap.put("load.unicode", "ascii:90,cjk:10");
+        paramMap.put("load.seed", "-42");
+        final ParamValidator validator = validate(paramMap);
+        assertTrue(validator.getErrors().isEmpty());
+        // Every value is parsed once into the plan of the run.
+        final RunPlan plan = validator.getPlan();
+        assertEquals(4, plan.getInt("thread.size", 1));
+        assertTrue(plan.getBoolean("virtual.thread", false));
+        assertEquals(12.5, plan.getDouble("rate.limit", 0));
+        assertEquals(-42L, plan.getLong("load.seed", 0L));
+        assertEquals(ContentLimit.Action.REJECT, plan.get("content.oversize", ContentLimit.Action.class, null));
+        assertEquals(2, plan.get("load.unicode", LoadGenerator.UnicodeMix.class, null).size());
+        assertFalse(plan.contains("queue.size"));
+
+        paramMap.put("shard.index", "3");
+        paramMap.put("dedup.max.size", "0");
+        paramMap.put("load.body.distribution", "gauss");
+        paramMap.put("load.unicode", "klingon:10");
+        paramMap.put("script.cache.unknown", "id");
+        paramMap.put("rate.min", "0");
+        paramMap.put("spill.dir", System.getProperty("java.io.tmpdir"));
+        final List<String> errors = validate(paramMap).getErrors();
+        assertEquals(7, errors.size());
+        assertTrue(errors.contains("spill.dir: cannot be used with thread.size 4."));
+        assertTrue(errors.contains("shard.index: 3 is not less than shard.count 3."));
+        assertTrue(errors.contains("dedup.max.size: 0 is less than 1."));
+        assertTrue(errors.contains("load.body.distribution: 'gauss' is not one of fixed, uniform, lognormal."));
+        assertTrue(errors.contains("script.cache.unknown: there is no scriptMap entry unknown."));
+        assertTrue(errors.contains("rate.min: '0' is not a number greater than 0."));
+    }
+
+    @Test
+    public void test_validate_limits() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("pipeline.depth", Integer.toString(1 << 30));
+        // 10 waiting records per thread would need more permits than a semaphore has.
+        paramMap.put("thread.size", Integer.toString(Integer.MAX_VALUE / 10));
+        assertEquals(List.of("thread.size: thread.size and queue.size together are more than 2147483647.",
+                "pipeline.depth: 1073741824 is greater than 1048576."), validate(paramMap).getErrors());
+
+        paramMap.put("thread.size", "4");
+        paramMap.put("pipeline.depth", "1024");
+        paramMap.put("queue.size", Integer.toString(Integer.MAX_VALUE));
+        assertEquals(List.of("queue.size: thread.size and queue.size together are more than 2147483647."),
+                validate(paramMap).getErrors());
+    }
+
+    @Test
+    public void test_validate_directory() throws Exception {
+        final Path file = Files.createTempFile("example", ".txt");
+        try {
+            final DataStoreParams paramMap = new DataStoreParams();
+            paramMap.put("checkpoint.dir", file.getParent().toString());
+            final ParamValidator validator = validate(paramMap);
+            assertTrue(validator.getErrors().isEmpty());
+            assertEquals(file.getParent(), validator.getPlan().get("checkpoint.dir", Path.class, null));
+            paramMap.put("incremental.dir", file.toString());
+            assertEquals(List.of("incremental.dir: '" + file + "' is not a directory."), validate(paramMap).getErrors());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void test_storeData_invalidConfiguration() {
+        final AtomicInteger openCount = new AtomicInteger();
+        dataStore = new ExampleDataStore() {
+            @Override
+            protected RecordSource openRecordSource(final RunPlan plan) {
+                openCount.incrementAndGet();
+                return super.openRecordSource(plan);
+            }
+        };
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "ten");
+        paramMap.put("thread.size", "0");
+        paramMap.put("failure.abort.rate", "2");
+        paramMap.put("content.oversize", "cut");
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        String message = null;
+        try {
+            dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+        } catch (final DataStoreException e) {
+            message = e.getMessage();
+        }
+
+        // Every error is reported at once and nothing is read or stored.
+        assertTrue(message.startsWith("Invalid configuration of "));
+        assertTrue(message.endsWith(": data.size: 'ten' is not an integer. thread.size: 0 is less than 1."
+                + " failure.abort.rate: 2 is greater than 1. content.oversize: 'cut' is not one of truncate, reject."));
+        assertEquals(0, openCount.get());
+        assertEquals(0, callback.getDataMapList().size());
+        assertNull(dataStore.getMetrics());
+    }
+
+    @Test
+    public void test_storeData_unknownScriptType() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("script_type", "unknown");
+        final Map<String, String> scriptMap = defaultScriptMap();
+        scriptMap.put("category", "title + ' ' + body");
+
+        final TestIndexUpdateCallback callback = new TestIndexUpdateCallback();
+        boolean thrown = false;
+        try {
+            dataStore.storeData(new DataConfig(), callback, paramMap, scriptMap, new HashMap<>());
+        } catch (final DataStoreException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+        assertEquals(0, callback.getDataMapList().size());
+
+        // Field references do not need the script engine.
+        dataStore.storeData(new DataConfig(), callback, paramMap, defaultScriptMap(), new HashMap<>());
+        assertEquals(ExampleDataStore.DEFAULT_DATA_SIZE, callback.getDataMapList().size());
+    }
+
+    private RunPlan plan(final DataStoreParams paramMap) {
+        return dataStore.newRunPlan(paramMap, defaultScriptMap());
+    }
+
+    private ParamValidator validate(final DataStoreParams paramMap) {
+        final ParamValidator validator = new ParamValidator(paramMap);
+        dataStore.validate(validator, defaultScriptMap());
+        return validator;
+    }
+
     private Map<String, String> defaultScriptMap() {
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
         final Map<String, String> scriptMap = new HashMap<>();
@@ -192,7 +1557,7 @@ public class ExampleDataStoreTest extends UnitDsTestCase {
      * {@code dataMap} so that assertions can be made on the indexed documents.
      */
     private static class TestIndexUpdateCallback implements IndexUpdateCallback {
-        private final List<Map<String, Object>> dataMapList = new ArrayList<>();
+        private final List<Map<String, Object>> dataMapList = Collections.synchronizedList(new ArrayList<>());
 
         @Override
         public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
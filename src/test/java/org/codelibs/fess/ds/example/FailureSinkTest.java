@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.codelibs.fess.app.service.FailureUrlService;
+import org.codelibs.fess.opensearch.config.exentity.CrawlingConfig;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.codelibs.fess.opensearch.config.exentity.FailureUrl;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link FailureSink}.
+ */
+public class FailureSinkTest extends UnitDsTestCase {
+
+    @Test
+    public void test_failedSynchronously() {
+        final TestFailureUrlService failureUrlService = new TestFailureUrlService();
+        final FailureSink failureSink = new FailureSink(failureUrlService, new DataConfig(), 1, 0, 0, 0);
+
+        assertTrue(failureSink.failed("error", "http://example.com/1", new RuntimeException()));
+        // Written before failed returns.
+        assertEquals(List.of("error http://example.com/1 " + Thread.currentThread().getName()), failureUrlService.getStored());
+        failureSink.close();
+        assertEquals(1L, failureSink.getFailureCount());
+        assertEquals(1L, failureSink.getWriteCount());
+    }
+
+    @Test
+    public void test_failedInBatches() {
+        final TestFailureUrlService failureUrlService = new TestFailureUrlService();
+        final FailureSink failureSink = new FailureSink(failureUrlService, new DataConfig(), 10, 60000, 0, 0);
+
+        for (int i = 0; i < 5; i++) {
+            failureSink.failed("error", "http://example.com/" + i, new RuntimeException());
+        }
+        // close writes the queued failures without waiting for the interval.
+        failureSink.close();
+
+        assertEquals(5, failureUrlService.getStored().size());
+        assertEquals(5L, failureSink.getFailureCount());
+        assertEquals(5L, failureSink.getWriteCount());
+    }
+
+    @Test
+    public void test_failedInBatchesKeepsEveryFailure() throws Exception {
+        final TestFailureUrlService failureUrlService = new TestFailureUrlService();
+        final FailureSink failureSink = new FailureSink(failureUrlService, new DataConfig(), 100, 60000, 0, 0);
+        failureUrlService.block();
+
+        // The writer blocks on the first failure, so the rest ends up in one batch.
+        failureSink.failed("error", "http://example.com/0", new RuntimeException());
+        Thread.sleep(100L);
+        final Thread recordThread = new Thread(() -> {
+            for (int i = 0; i < 3; i++) {
+                failureSink.failed("error", "http://example.com/1", new RuntimeException());
+            }
+        }, "record-thread");
+        recordThread.start();
+        recordThread.join();
+        failureUrlService.unblock();
+        failureSink.close();
+
+        // Every failure counts as one error of its URL, written under the name of its thread.
+        final String threadName = Thread.currentThread().getName();
+        assertEquals(List.of("error http://example.com/0 " + threadName, "error http://example.com/1 record-thread",
+                "error http://example.com/1 record-thread", "error http://example.com/1 record-thread"), failureUrlService.getStored());
+        assertEquals(4L, failureSink.getFailureCount());
+        assertEquals(4L, failureSink.getWriteCount());
+    }
+
+    @Test
+    public void test_failedWithBrokenService() {
+        final FailureSink failureSink = new FailureSink(new FailureUrlService() {
+            @Override
+            public FailureUrl store(final CrawlingConfig crawlingConfig, final String errorName, final String url, final Throwable e) {
+                throw new IllegalStateException("unavailable");
+            }
+        }, new DataConfig(), 1, 0, 0, 0);
+
+        // A failure of the failure URL service does not fail the record thread.
+        assertTrue(failureSink.failed("error", "http://example.com/1", new RuntimeException()));
+        assertEquals(0L, failureSink.getWriteCount());
+    }
+
+    @Test
+    public void test_circuitOpens() {
+        final FailureSink failureSink = new FailureSink(new TestFailureUrlService(), new DataConfig(), 1, 0, 0.5, 10);
+
+        // 3 of 10 records fail: below the rate.
+        for (int i = 0; i < 7; i++) {
+            failureSink.succeeded();
+        }
+        for (int i = 0; i < 3; i++) {
+            assertTrue(failureSink.failed("error", "http://example.com/" + i, new RuntimeException()));
+        }
+        assertFalse(failureSink.isOpen());
+
+        // 6 of the next 10 records fail: the circuit opens at the end of the window.
+        for (int i = 0; i < 4; i++) {
+            failureSink.succeeded();
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(failureSink.failed("error", "http://example.com/" + i, new RuntimeException()));
+        }
+        assertFalse(failureSink.failed("error", "http://example.com/5", new RuntimeException()));
+        assertTrue(failureSink.isOpen());
+        failureSink.close();
+    }
+
+    @Test
+    public void test_circuitDisabled() {
+        final FailureSink failureSink = new FailureSink(new TestFailureUrlService(), new DataConfig(), 1, 0, 0, 10);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(failureSink.failed("error", "http://example.com/" + i, new RuntimeException()));
+        }
+        assertFalse(failureSink.isOpen());
+    }
+
+    /**
+     * Test implementation of {@link FailureUrlService} that collects the stored
+     * failures instead of writing them to OpenSearch.
+     */
+    private static class TestFailureUrlService extends FailureUrlService {
+        private final List<String> stored = Collections.synchronizedList(new ArrayList<>());
+
+        private boolean blocked;
+
+        @Override
+        public FailureUrl store(final CrawlingConfig crawlingConfig, final String errorName, final String url, final Throwable e) {
+            synchronized (this) {
+                while (blocked) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+            }
+            stored.add(errorName + " " + url + " " + Thread.currentThread().getName());
+            return null;
+        }
+
+        synchronized void block() {
+            blocked = true;
+        }
+
+        synchronized void unblock() {
+            blocked = false;
+            notifyAll();
+        }
+
+        List<String> getStored() {
+            return new ArrayList<>(stored);
+        }
+    }
+}
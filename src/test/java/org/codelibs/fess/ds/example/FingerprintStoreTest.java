@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link FingerprintStore}.
+ */
+public class FingerprintStoreTest extends UnitDsTestCase {
+
+    @Test
+    public void test_fingerprint() throws Exception {
+        final FingerprintStore store = newStore(Files.createTempDirectory("fingerprint"), Set.of("created"));
+
+        final Map<String, Object> source1 = new LinkedHashMap<>();
+        source1.put("id", "1");
+        source1.put("title", "Sample");
+        source1.put("body", "Body");
+        source1.put("created", new Date(1000L));
+        final Map<String, Object> source2 = new LinkedHashMap<>();
+        source2.put("body", "Body");
+        source2.put("created", new Date(2000L));
+        source2.put("title", "Sample");
+        source2.put("id", "1");
+
+        // Same fields in another order, different ignored field -> same fingerprint.
+        final FingerprintStore.Fingerprint fp1 = store.fingerprint(source1);
+        final FingerprintStore.Fingerprint fp2 = store.fingerprint(source2);
+        assertEquals(fp1.getId(), fp2.getId());
+        assertEquals(fp1.getHash(), fp2.getHash());
+
+        source2.put("title", "Changed");
+        assertFalse(fp1.getHash() == store.fingerprint(source2).getHash());
+
+        assertNull(store.fingerprint(Collections.singletonMap("title", "no id")));
+    }
+
+    @Test
+    public void test_isUnchanged() throws Exception {
+        final FingerprintStore store = newStore(Files.createTempDirectory("fingerprint"), Collections.emptySet());
+        final Map<String, Object> source = new HashMap<>();
+        source.put("id", "1");
+        source.put("title", "Sample");
+        source.put("modified", new Date(1000L));
+
+        final FingerprintStore.Fingerprint fingerprint = store.fingerprint(source);
+        assertFalse(store.isUnchanged(fingerprint));
+        store.update(fingerprint);
+        assertTrue(store.isUnchanged(store.fingerprint(source)));
+
+        // The timestamp is not part of the hash, but a newer one marks a change.
+        source.put("modified", new Date(500L));
+        assertTrue(store.isUnchanged(store.fingerprint(source)));
+        source.put("modified", new Date(2000L));
+        assertFalse(store.isUnchanged(store.fingerprint(source)));
+
+        assertEquals(2, store.getUnchangedCount());
+    }
+
+    @Test
+    public void test_saveAndLoad() throws Exception {
+        final Path dir = Files.createTempDirectory("fingerprint");
+        final FingerprintStore store = newStore(dir, Collections.emptySet());
+        store.load();
+        // Enough records to grow the table several times.
+        for (int i = 0; i < 5000; i++) {
+            store.update(store.fingerprint(newSource(i)));
+        }
+        assertEquals(5000, store.size());
+        store.save();
+
+        final FingerprintStore loaded = newStore(dir, Collections.emptySet());
+        loaded.load();
+        assertEquals(5000, loaded.size());
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(loaded.isUnchanged(loaded.fingerprint(newSource(i))));
+        }
+        final Map<String, Object> changed = newSource(10);
+        changed.put("title", "Changed");
+        assertFalse(loaded.isUnchanged(loaded.fingerprint(changed)));
+    }
+
+    @Test
+    public void test_loadWithOtherMapping() throws Exception {
+        final Path dir = Files.createTempDirectory("fingerprint");
+        final Path file = FingerprintStore.getFile(dir, "config1");
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "title");
+        scriptMap.put("content", "body");
+        final Map<String, String> reordered = new LinkedHashMap<>();
+        reordered.put("content", "body");
+        reordered.put("title", "title");
+        assertEquals(FingerprintStore.hash(scriptMap), FingerprintStore.hash(reordered));
+
+        final FingerprintStore store = new FingerprintStore(file, "id", null, Collections.emptySet(), FingerprintStore.hash(scriptMap));
+        store.update(store.fingerprint(newSource(1)));
+        store.save();
+
+        final FingerprintStore same = new FingerprintStore(file, "id", null, Collections.emptySet(), FingerprintStore.hash(reordered));
+        same.load();
+        assertEquals(1, same.size());
+
+        // The documents were built with another mapping, so every record is changed.
+        reordered.put("content", "title");
+        final FingerprintStore changed = new FingerprintStore(file, "id", null, Collections.emptySet(), FingerprintStore.hash(reordered));
+        changed.load();
+        assertEquals(0, changed.size());
+        assertFalse(changed.isUnchanged(changed.fingerprint(newSource(1))));
+    }
+
+    private FingerprintStore newStore(final Path dir, final Set<String> ignoredFields) {
+        return new FingerprintStore(FingerprintStore.getFile(dir, "config1"), "id", "modified", ignoredFields);
+    }
+
+    private Map<String, Object> newSource(final int index) {
+        final Map<String, Object> source = new HashMap<>();
+        source.put("id", Integer.toString(index));
+        source.put("title", "Sample " + index);
+        return source;
+    }
+}
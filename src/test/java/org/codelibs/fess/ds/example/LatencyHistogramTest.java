@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest extends UnitDsTestCase {
+
+    @Test
+    public void test_bucketBounds() {
+        int previous = -1;
+        for (long value = 0; value < 100_000; value++) {
+            final int index = LatencyHistogram.getBucketIndex(value);
+            assertTrue(index == previous || index == previous + 1);
+            final long upperBound = LatencyHistogram.getBucketUpperBound(index);
+            assertTrue(value <= upperBound);
+            // Relative error of at most 1/32.
+            assertTrue(upperBound - value <= value / 32);
+            previous = index;
+        }
+        final int last = LatencyHistogram.getBucketIndex(Long.MAX_VALUE);
+        assertTrue(last < LatencyHistogram.BUCKET_COUNT);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBound(last));
+    }
+
+    @Test
+    public void test_percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.getValueAtPercentile(50));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000L, histogram.getCount());
+        assertEquals(1_000_000L, histogram.getMax());
+        assertEquals(500_500.0, histogram.getMean());
+        assertTrue(Math.abs(histogram.getValueAtPercentile(50) - 500_000) <= 500_000 / 32);
+        assertTrue(Math.abs(histogram.getValueAtPercentile(99) - 990_000) <= 990_000 / 32);
+        assertEquals(1_000_000L, histogram.getValueAtPercentile(100));
+        assertTrue(histogram.getValueAtPercentile(0) <= 1000 + 1000 / 32);
+    }
+
+    @Test
+    public void test_negativeValue() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1L, histogram.getCount());
+        assertEquals(0L, histogram.getMax());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codelibs.fess.crawler.exception.CrawlingAccessException;
+import org.codelibs.fess.crawler.exception.MaxLengthExceededException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link LazyField} and {@link ContentLimit}.
+ */
+public class LazyFieldTest extends UnitDsTestCase {
+
+    @Test
+    public void test_loadOnce() {
+        final AtomicInteger openCount = new AtomicInteger();
+        final LazyField field = new LazyField(() -> {
+            openCount.incrementAndGet();
+            return new StringReader("Sample body text");
+        });
+        assertFalse(field.isLoaded());
+        assertEquals(0, openCount.get());
+
+        assertEquals("Sample body text", field.load("body", null));
+        assertEquals("Sample body text", field.load("body", null));
+        assertTrue(field.isLoaded());
+        assertEquals(1, openCount.get());
+    }
+
+    @Test
+    public void test_loadStopsAtLimit() {
+        // A body of 100 million characters that is generated while it is read.
+        final CountingReader reader = new CountingReader(100_000_000L);
+        final LazyField field = new LazyField(() -> reader);
+
+        final String value = field.load("body", new ContentLimit(1000, ContentLimit.Action.TRUNCATE));
+
+        assertEquals(1000, value.length());
+        assertTrue(reader.read.get() <= 1001L);
+        assertTrue(reader.closed);
+    }
+
+    @Test
+    public void test_loadRejected() {
+        final ContentLimit contentLimit = new ContentLimit(10, ContentLimit.Action.REJECT);
+        final LazyField field = new LazyField(() -> new CountingReader(100L));
+        boolean thrown = false;
+        try {
+            field.load("body", contentLimit);
+        } catch (final MaxLengthExceededException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+        assertEquals(1L, contentLimit.getRejectedCount());
+    }
+
+    @Test
+    public void test_loadFailure() {
+        final LazyField field = new LazyField(() -> {
+            throw new IOException("unavailable");
+        });
+        boolean thrown = false;
+        try {
+            field.load("body", null);
+        } catch (final CrawlingAccessException e) {
+            thrown = e.getCause() instanceof IOException;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void test_truncate() {
+        final ContentLimit contentLimit = new ContentLimit(5, ContentLimit.Action.TRUNCATE);
+        assertEquals("abcde", contentLimit.apply("body", "abcde"));
+        assertEquals("abcde", contentLimit.apply("body", "abcdefgh"));
+        // A surrogate pair is not split.
+        assertEquals("abcd", contentLimit.apply("body", "abcd\uD83D\uDE00"));
+        assertEquals(2L, contentLimit.getTruncatedCount());
+    }
+
+    @Test
+    public void test_parseAction() {
+        assertEquals(ContentLimit.Action.TRUNCATE, ContentLimit.Action.parse("truncate"));
+        assertEquals(ContentLimit.Action.REJECT, ContentLimit.Action.parse(" Reject "));
+        boolean thrown = false;
+        try {
+            ContentLimit.Action.parse("drop");
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void test_fingerprintUsesVersion() {
+        final LazyField field = new LazyField("etag-1", () -> {
+            throw new IOException("must not be read");
+        });
+        assertEquals(FingerprintStore.hash("etag-1"), FingerprintStore.hash(field));
+        assertFalse(field.isLoaded());
+    }
+
+    /**
+     * A reader of {@code size} generated characters that counts what was read.
+     */
+    private static class CountingReader extends Reader {
+        private final long size;
+
+        private final AtomicLong read = new AtomicLong();
+
+        private boolean closed;
+
+        CountingReader(final long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+            final int length = (int) Math.min(len, size - read.get());
+            if (length <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < length; i++) {
+                cbuf[off + i] = 'a';
+            }
+            read.addAndGet(length);
+            return length;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link LoadGenerator}.
+ */
+public class LoadGeneratorTest extends UnitDsTestCase {
+
+    @Test
+    public void test_newRecord() {
+        final LoadGenerator loadGenerator = new LoadGenerator(1L, 3, 100, LoadGenerator.Distribution.FIXED, "ascii");
+        final SchemaRecord record = loadGenerator.newRecord(7);
+
+        assertEquals(8, loadGenerator.getSchema().getFieldNames().size());
+        assertEquals("7", record.get("id"));
+        assertEquals("http://fess.codelibs.org/?sample=7", record.get("url"));
+        assertEquals(100, ((String) record.get("body")).length());
+        assertTrue(((String) record.get("body")).matches("[a-z ]+"));
+        assertNotNull(record.get("created"));
+        assertNotNull(record.get("field2"));
+    }
+
+    @Test
+    public void test_sameSeedSameRecords() {
+        final LoadGenerator a = new LoadGenerator(42L, 2, 500, LoadGenerator.Distribution.LOGNORMAL, "ascii:8,cjk:1,emoji:1");
+        final LoadGenerator b = new LoadGenerator(42L, 2, 500, LoadGenerator.Distribution.LOGNORMAL, "ascii:8,cjk:1,emoji:1");
+        final LoadGenerator c = new LoadGenerator(43L, 2, 500, LoadGenerator.Distribution.LOGNORMAL, "ascii:8,cjk:1,emoji:1");
+
+        // A record only depends on the seed and its index, not on the order.
+        assertEquals(a.newRecord(5).get("body"), b.newRecord(5).get("body"));
+        assertEquals(a.newRecord(3).get("title"), b.newRecord(3).get("title"));
+        assertEquals(a.newRecord(3).get("field1"), b.newRecord(3).get("field1"));
+        assertFalse(a.newRecord(5).get("body").equals(c.newRecord(5).get("body")));
+        assertFalse(a.newRecord(5).get("body").equals(a.newRecord(6).get("body")));
+    }
+
+    @Test
+    public void test_bodySizeDistribution() {
+        final LoadGenerator uniform = new LoadGenerator(1L, 0, 1000, LoadGenerator.Distribution.UNIFORM, "ascii");
+        final LoadGenerator lognormal = new LoadGenerator(1L, 0, 1000, LoadGenerator.Distribution.LOGNORMAL, "ascii");
+        long uniformTotal = 0;
+        long lognormalTotal = 0;
+        int lognormalMax = 0;
+        for (int i = 0; i < 2000; i++) {
+            final int uniformSize = ((String) uniform.newRecord(i).get("body")).length();
+            assertTrue(uniformSize <= 2000);
+            uniformTotal += uniformSize;
+            final int lognormalSize = ((String) lognormal.newRecord(i).get("body")).length();
+            assertTrue(lognormalSize <= 1000 * LoadGenerator.MAX_BODY_FACTOR);
+            lognormalTotal += lognormalSize;
+            lognormalMax = Math.max(lognormalMax, lognormalSize);
+        }
+        // The means are close to the body size, and the log-normal one has a long tail.
+        assertTrue(Math.abs(uniformTotal / 2000 - 1000) < 100);
+        assertTrue(Math.abs(lognormalTotal / 2000 - 1000) < 150);
+        assertTrue(lognormalMax > 5000);
+    }
+
+    @Test
+    public void test_unicodeMix() {
+        final LoadGenerator loadGenerator = new LoadGenerator(1L, 0, 2000, LoadGenerator.Distribution.FIXED, "cjk:1,emoji:1");
+        final String body = (String) loadGenerator.newRecord(0).get("body");
+
+        assertEquals(2000, body.length());
+        boolean cjk = false;
+        boolean emoji = false;
+        for (int i = 0; i < body.length(); i++) {
+            final char c = body.charAt(i);
+            // Surrogates always come in pairs.
+            if (Character.isHighSurrogate(c)) {
+                assertTrue(Character.isLowSurrogate(body.charAt(i + 1)));
+                emoji = true;
+                i++;
+            } else {
+                assertFalse(Character.isLowSurrogate(c));
+                cjk |= Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+            }
+        }
+        assertTrue(cjk);
+        assertTrue(emoji);
+    }
+
+    @Test
+    public void test_invalidUnicodeMix() {
+        boolean thrown = false;
+        try {
+            new LoadGenerator(1L, 0, 10, LoadGenerator.Distribution.FIXED, "ascii:1,klingon:1");
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+
+        thrown = false;
+        try {
+            new LoadGenerator(1L, 0, 10, LoadGenerator.Distribution.FIXED, "ascii:0");
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+}
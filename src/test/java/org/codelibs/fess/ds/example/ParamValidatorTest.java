@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.List;
+
+import org.codelibs.fess.entity.DataStoreParams;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ParamValidator}.
+ */
+public class ParamValidatorTest extends UnitDsTestCase {
+
+    @Test
+    public void test_checkLong() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("a", " 5 ");
+        paramMap.put("b", "abc");
+        paramMap.put("c", "0");
+        paramMap.put("d", "11");
+        paramMap.put("e", "");
+        final ParamValidator validator = new ParamValidator(paramMap);
+
+        assertEquals(Long.valueOf(5), validator.checkLong("a", 1, 10));
+        assertNull(validator.checkLong("b", 1, 10));
+        assertNull(validator.checkLong("c", 1, 10));
+        assertNull(validator.checkLong("d", 1, 10));
+        // Missing and blank parameters keep their default.
+        assertNull(validator.checkLong("e", 1, 10));
+        assertNull(validator.checkLong("missing", 1, 10));
+
+        assertEquals(List.of("b: 'abc' is not an integer.", "c: 0 is less than 1.", "d: 11 is greater than 10."), validator.getErrors());
+    }
+
+    @Test
+    public void test_checkDouble() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("a", "0.5");
+        paramMap.put("b", "1.5");
+        paramMap.put("c", "NaN");
+        paramMap.put("d", "x");
+        final ParamValidator validator = new ParamValidator(paramMap);
+
+        assertEquals(Double.valueOf(0.5), validator.checkDouble("a", 0, 1));
+        assertNull(validator.checkDouble("b", 0, 1));
+        assertNull(validator.checkDouble("c", 0, 1));
+        assertNull(validator.checkDouble("d", 0, 1));
+
+        assertEquals(List.of("b: 1.5 is greater than 1.", "c: 'NaN' is not a finite number.", "d: 'x' is not a number."),
+                validator.getErrors());
+    }
+
+    @Test
+    public void test_checkValue() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("flag", "TRUE");
+        paramMap.put("flag2", "yes");
+        paramMap.put("action", "Reject");
+        paramMap.put("action2", "drop");
+        paramMap.put("even", "3");
+        final ParamValidator validator = new ParamValidator(paramMap);
+
+        validator.checkBoolean("flag");
+        validator.checkBoolean("flag2");
+        validator.checkEnum("action", ContentLimit.Action.class);
+        validator.checkEnum("action2", ContentLimit.Action.class);
+        validator.check("even", value -> {
+            if (Integer.parseInt(value) % 2 != 0) {
+                throw new IllegalArgumentException();
+            }
+        }, "an even number");
+        validator.addError("other", "a custom error");
+
+        assertEquals(List.of("flag2: 'yes' is not true or false.", "action2: 'drop' is not one of truncate, reject.",
+                "even: '3' is not an even number.", "other: a custom error."), validator.getErrors());
+    }
+
+    @Test
+    public void test_getPlan() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("size", " 5 ");
+        paramMap.put("rate", "0.5");
+        paramMap.put("bad", "x");
+        paramMap.put("flag", "TRUE");
+        paramMap.put("action", "Reject");
+        paramMap.put("field", " id ");
+        paramMap.put("blank", " ");
+        final ParamValidator validator = new ParamValidator(paramMap);
+
+        validator.checkLong("size", 1, 10);
+        validator.checkDouble("rate", 0, 1);
+        validator.checkLong("bad", 1, 10);
+        validator.checkBoolean("flag");
+        validator.checkEnum("action", ContentLimit.Action.class);
+        validator.checkString("field");
+        validator.checkString("blank");
+
+        // The plan holds the parsed valid values; the others get their default.
+        final RunPlan plan = validator.getPlan();
+        assertEquals(5, plan.getInt("size", 1));
+        assertEquals(0.5, plan.getDouble("rate", 0));
+        assertEquals(3L, plan.getLong("bad", 3L));
+        assertFalse(plan.contains("bad"));
+        assertTrue(plan.getBoolean("flag", false));
+        assertEquals(ContentLimit.Action.REJECT, plan.get("action", ContentLimit.Action.class, null));
+        assertEquals("id", plan.getString("field"));
+        assertNull(plan.getString("blank"));
+        assertEquals("default", plan.getString("missing", "default"));
+        assertSame(paramMap, plan.getParams());
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PreparedDocument}.
+ */
+public class PreparedDocumentTest extends UnitDsTestCase {
+
+    @Test
+    public void test_estimateSize() {
+        final Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("title", "abc");
+        dataMap.put("count", 1);
+        assertEquals((5 + 3) * 2 + 5 * 2 + 16, PreparedDocument.estimateSize(dataMap));
+    }
+
+    @Test
+    public void test_estimateSize_collection() {
+        final Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("tags", List.of("ab", "c", 1));
+        assertEquals(4 * 2 + (2 + 1) * 2 + 16, PreparedDocument.estimateSize(dataMap));
+    }
+
+    @Test
+    public void test_new() {
+        final Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("title", "0123456789");
+        final StatsKeyObject statsKey = new StatsKeyObject("test#3");
+        final DataStoreParams paramMap = new DataStoreParams();
+        final PreparedDocument document = new PreparedDocument(3, statsKey, paramMap, dataMap);
+        assertEquals(3, document.getIndex());
+        assertSame(statsKey, document.getStatsKey());
+        assertSame(paramMap, document.getParamMap());
+        assertSame(dataMap, document.getDataMap());
+        assertEquals(30, document.getSize());
+        assertNull(document.getFingerprint());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RateLimiter}.
+ */
+public class RateLimiterTest extends UnitDsTestCase {
+
+    @Test
+    public void test_acquireWithinBurst() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(1, 1, 5, 0, 0);
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.acquire();
+        }
+        assertTrue(System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void test_acquireWaitsForTokens() throws Exception {
+        final RateLimiter rateLimiter = new RateLimiter(20, 20, 1, 0, 0);
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.acquire();
+        }
+        // The first token is in the bucket, the other 4 come at 20 per second.
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+    @Test
+    public void test_adaptToErrors() {
+        final RateLimiter rateLimiter = new RateLimiter(100, 10, 1, 0, 0.1);
+        rateLimiter.record(1000, false);
+        rateLimiter.record(0, true);
+        rateLimiter.adapt(System.nanoTime());
+        assertEquals(50.0, rateLimiter.getRate());
+
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.record(0, true);
+            rateLimiter.adapt(System.nanoTime());
+        }
+        // Never below the minimum rate.
+        assertEquals(10.0, rateLimiter.getRate());
+
+        rateLimiter.record(1000, false);
+        rateLimiter.adapt(System.nanoTime());
+        assertEquals(20.0, rateLimiter.getRate());
+    }
+
+    @Test
+    public void test_adaptToLatency() {
+        final RateLimiter rateLimiter = new RateLimiter(100, 10, 1, TimeUnit.MILLISECONDS.toNanos(10), 0);
+        rateLimiter.record(TimeUnit.MILLISECONDS.toNanos(50), false);
+        rateLimiter.record(TimeUnit.MILLISECONDS.toNanos(1), false);
+        rateLimiter.adapt(System.nanoTime());
+        assertEquals(50.0, rateLimiter.getRate());
+
+        rateLimiter.record(TimeUnit.MILLISECONDS.toNanos(1), false);
+        rateLimiter.adapt(System.nanoTime());
+        assertEquals(60.0, rateLimiter.getRate());
+
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.record(TimeUnit.MILLISECONDS.toNanos(1), false);
+            rateLimiter.adapt(System.nanoTime());
+        }
+        // Never above the maximum rate.
+        assertEquals(100.0, rateLimiter.getRate());
+    }
+
+    @Test
+    public void test_invalidMinRate() {
+        boolean thrown = false;
+        try {
+            new RateLimiter(100, 0, 1, 0, 0.1);
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Map;
+
+import org.codelibs.fess.Constants;
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RecordParams}.
+ */
+public class RecordParamsTest extends UnitDsTestCase {
+
+    @Test
+    public void test_statsKey() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        paramMap.put(Constants.CRAWLER_STATS_KEY, new StatsKeyObject("stale#0"));
+        final Map<String, Object> paramSnapshot = ResultMapView.snapshot(paramMap);
+
+        final StatsKeyObject statsKey1 = new StatsKeyObject("test#1");
+        final StatsKeyObject statsKey2 = new StatsKeyObject("test#2");
+        final RecordParams params1 = new RecordParams(paramSnapshot, statsKey1);
+        final RecordParams params2 = new RecordParams(paramSnapshot, statsKey2);
+
+        assertSame(statsKey1, params1.get(Constants.CRAWLER_STATS_KEY));
+        assertSame(statsKey1, params1.getStatsKey());
+        assertSame(statsKey2, params2.get(Constants.CRAWLER_STATS_KEY));
+        assertEquals("10", params1.getAsString("data.size"));
+        assertEquals("x", params1.getAsString("missing", "x"));
+        assertTrue(params1.asMap().containsKey(Constants.CRAWLER_STATS_KEY));
+        assertEquals(2, params1.asMap().size());
+    }
+
+    @Test
+    public void test_put() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        final Map<String, Object> paramSnapshot = ResultMapView.snapshot(paramMap);
+        final RecordParams params1 = new RecordParams(paramSnapshot, new StatsKeyObject("test#1"));
+        final RecordParams params2 = new RecordParams(paramSnapshot, new StatsKeyObject("test#2"));
+
+        params1.put("data.size", "20");
+        params1.put("extra", "value");
+
+        // Values put for a record are not seen by the run or the other records.
+        assertEquals("20", params1.getAsString("data.size"));
+        assertEquals("value", params1.get("extra"));
+        assertEquals("10", params2.getAsString("data.size"));
+        assertNull(params2.get("extra"));
+        assertEquals("10", paramSnapshot.get("data.size"));
+        assertNull(paramMap.get(Constants.CRAWLER_STATS_KEY));
+
+        final DataStoreParams copy = params1.newInstance();
+        assertEquals("20", copy.getAsString("data.size"));
+        assertEquals("value", copy.get("extra"));
+        assertSame(params1.getStatsKey(), copy.get(Constants.CRAWLER_STATS_KEY));
+        assertEquals(3, params1.asMap().size());
+    }
+
+    @Test
+    public void test_copyOnWrite() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        final Map<String, Object> paramSnapshot = ResultMapView.snapshot(paramMap);
+        final StatsKeyObject statsKey = new StatsKeyObject("test#1");
+        final RecordParams params = new RecordParams(paramSnapshot, statsKey);
+
+        // asMap is the real map of the parameters, copied once.
+        final Map<String, Object> map = params.asMap();
+        assertSame(map, params.asMap());
+        assertEquals(Map.of("data.size", "10", Constants.CRAWLER_STATS_KEY, statsKey), map);
+        map.put("extra", "value");
+        map.remove("data.size");
+        assertEquals("value", params.getAsString("extra"));
+        assertNull(params.get("data.size"));
+        assertEquals("10", params.getAsString("data.size", "10"));
+        assertSame(statsKey, params.get(Constants.CRAWLER_STATS_KEY));
+        assertEquals("10", paramSnapshot.get("data.size"));
+
+        // A new instance is an independent copy.
+        final DataStoreParams copy = params.newInstance();
+        copy.put("extra", "other");
+        assertEquals("value", params.get("extra"));
+        assertEquals(Map.of("extra", "other", Constants.CRAWLER_STATS_KEY, statsKey), copy.asMap());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codelibs.fess.Constants;
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ResultMapView}.
+ */
+public class ResultMapViewTest extends UnitDsTestCase {
+
+    @Test
+    public void test_sameAsCopy() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        paramMap.put("title", "param title");
+        final StatsKeyObject statsKey = new StatsKeyObject("test#0");
+        paramMap.put(Constants.CRAWLER_STATS_KEY, statsKey);
+
+        final Map<String, Object> source = new LinkedHashMap<>();
+        source.put("id", "0");
+        source.put("title", "Sample 0");
+        source.put("body", null);
+
+        // The resultMap as it was built before: copy the parameters, then put the source.
+        final Map<String, Object> expected = new LinkedHashMap<>(paramMap.asMap());
+        expected.putAll(source);
+
+        final ResultMapView view = new ResultMapView(ResultMapView.snapshot(paramMap), statsKey, source);
+
+        assertEquals(expected, view);
+        assertEquals(expected.size(), view.size());
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(view.keySet()));
+        assertEquals("Sample 0", view.get("title"));
+        assertEquals("10", view.get("data.size"));
+        assertSame(statsKey, view.get(Constants.CRAWLER_STATS_KEY));
+        assertTrue(view.containsKey("body"));
+        assertNull(view.get("body"));
+        assertFalse(view.containsKey("unknown"));
+    }
+
+    @Test
+    public void test_snapshotIsShared() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        final Map<String, Object> snapshot = ResultMapView.snapshot(paramMap);
+
+        final Map<String, Object> source1 = new HashMap<>();
+        source1.put("id", "1");
+        final Map<String, Object> source2 = new HashMap<>();
+        source2.put("id", "2");
+
+        assertEquals("1", new ResultMapView(snapshot, null, source1).get("id"));
+        assertEquals("2", new ResultMapView(snapshot, null, source2).get("id"));
+        assertEquals("10", new ResultMapView(snapshot, null, source2).get("data.size"));
+
+        // Later changes of the parameters are not visible in the snapshot.
+        paramMap.put("data.size", "20");
+        assertEquals("10", new ResultMapView(snapshot, null, source1).get("data.size"));
+    }
+
+    @Test
+    public void test_reset() {
+        final DataStoreParams paramMap = new DataStoreParams();
+        paramMap.put("data.size", "10");
+        final ResultMapView view = new ResultMapView(ResultMapView.snapshot(paramMap), null, new HashMap<>());
+        assertEquals(1, view.size());
+
+        final Map<String, Object> source = new HashMap<>();
+        source.put("id", "1");
+        final StatsKeyObject statsKey = new StatsKeyObject("test#1");
+        view.reset(statsKey, source);
+        assertEquals("1", view.get("id"));
+        assertSame(statsKey, view.get(Constants.CRAWLER_STATS_KEY));
+        assertEquals(3, view.size());
+
+        view.reset(null, new HashMap<>());
+        assertNull(view.get("id"));
+        assertFalse(view.containsKey(Constants.CRAWLER_STATS_KEY));
+        assertEquals("10", view.get("data.size"));
+    }
+
+    @Test
+    public void test_resolve() {
+        final Map<String, Object> source = new LinkedHashMap<>();
+        source.put("title", "Sample title");
+        source.put("body", new LazyField(() -> new StringReader("Sample body text")));
+        source.put("created", 1L);
+
+        final ResultMapView view =
+                new ResultMapView(new HashMap<>(), null, source, new ContentLimit(6, ContentLimit.Action.TRUNCATE));
+
+        assertEquals("Sample", view.get("title"));
+        assertEquals("Sample", view.get("body"));
+        assertEquals(1L, view.get("created"));
+        final Map<String, Object> copy = new HashMap<>(view);
+        assertEquals("Sample", copy.get("body"));
+    }
+
+    @Test
+    public void test_copyLoadsLazyFields() {
+        final LazyField body = new LazyField(() -> new StringReader("Sample body text"));
+        final Map<String, Object> source = new LinkedHashMap<>();
+        source.put("title", "Sample title");
+        source.put("body", body);
+        final ResultMapView view = new ResultMapView(new HashMap<>(), null, source);
+
+        // A lookup of another field leaves the body unread.
+        assertEquals("Sample title", view.get("title"));
+        assertFalse(body.isLoaded());
+
+        // A script engine that copies its bindings reads every field.
+        final Map<String, Object> bindings = new HashMap<>(view);
+        assertTrue(body.isLoaded());
+        assertEquals("Sample body text", bindings.get("body"));
+    }
+
+    @Test
+    public void test_resolveCountsOncePerRecord() {
+        final Map<String, Object> source = new HashMap<>();
+        source.put("title", "Sample title");
+        source.put("body", "Sample body");
+        source.put("url", "short");
+        final ContentLimit contentLimit = new ContentLimit(6, ContentLimit.Action.TRUNCATE);
+        final ResultMapView view = new ResultMapView(new HashMap<>(), null, source, contentLimit);
+
+        // Several scripts reading the same field count it once.
+        assertEquals("Sample", view.get("title"));
+        assertEquals("Sample", view.get("title"));
+        assertEquals("Sample", view.get("body"));
+        assertEquals("short", view.get("url"));
+        assertEquals(2L, contentLimit.getTruncatedCount());
+
+        view.reset(null, source);
+        assertEquals("Sample", view.get("title"));
+        assertEquals(3L, contentLimit.getTruncatedCount());
+    }
+
+    @Test
+    public void test_readOnly() {
+        final ResultMapView view = new ResultMapView(ResultMapView.snapshot(new DataStoreParams()), null, new HashMap<>());
+        try {
+            view.put("title", "x");
+            fail("view must be read-only");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void test_removeResultMap() {
+        final RunContext context = new RunContext(new DataConfig(), null, null, Collections.emptyMap(),
+                new ScriptPlan("groovy", Collections.emptyMap()), Collections.emptyMap());
+        final Map<String, Object> source = new HashMap<>();
+        source.put("id", "1");
+        final ResultMapView view = context.getResultMap(null, source);
+        assertEquals("1", view.get("id"));
+        // The view is reused by the next record of the thread.
+        context.releaseResultMap();
+        assertNull(view.get("id"));
+        assertSame(view, context.getResultMap(null, source));
+        // After the run, the thread no longer holds it.
+        context.removeResultMap();
+        assertNotSame(view, context.getResultMap(null, source));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RecordSchema} and {@link SchemaRecord}.
+ */
+public class SchemaRecordTest extends UnitDsTestCase {
+
+    @Test
+    public void test_schema() {
+        final RecordSchema schema = new RecordSchema("id", "title", "url");
+        assertEquals(3, schema.size());
+        assertEquals(1, schema.indexOf("title"));
+        assertEquals(-1, schema.indexOf("body"));
+        assertEquals("url", schema.getFieldName(2));
+
+        boolean thrown = false;
+        try {
+            new RecordSchema("id", "id");
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void test_sameAsHashMap() {
+        final RecordSchema schema = new RecordSchema("id", "title", "url");
+        final SchemaRecord record = schema.newRecord();
+        record.set(0, "1");
+        record.put("title", "Sample");
+        record.put("url", null);
+
+        final Map<String, Object> map = new HashMap<>();
+        map.put("id", "1");
+        map.put("title", "Sample");
+        map.put("url", null);
+
+        assertEquals(map, record);
+        assertEquals(record, map);
+        assertEquals(map.hashCode(), record.hashCode());
+        assertEquals("Sample", record.get("title"));
+        assertTrue(record.containsKey("url"));
+        assertFalse(record.containsKey("body"));
+        assertNull(record.get("body"));
+        assertEquals("[id, title, url]", record.keySet().toString());
+    }
+
+    @Test
+    public void test_extraFields() {
+        final SchemaRecord record = new RecordSchema("id", "title").newRecord();
+        record.put("id", "1");
+        assertNull(record.put("category", "news"));
+        assertEquals("news", record.get("category"));
+        assertTrue(record.containsKey("category"));
+        assertEquals(3, record.size());
+        assertEquals("[id, title, category]", record.keySet().toString());
+
+        final Map<String, Object> map = new HashMap<>();
+        map.put("id", "1");
+        map.put("title", null);
+        map.put("category", "news");
+        assertEquals(map, record);
+        assertEquals(map.hashCode(), record.hashCode());
+    }
+
+    @Test
+    public void test_remove() {
+        final SchemaRecord record = new RecordSchema("id", "title", "url").newRecord();
+        record.put("id", "1");
+        record.put("title", "Sample");
+        record.put("category", "news");
+
+        assertEquals("Sample", record.remove("title"));
+        assertFalse(record.containsKey("title"));
+        assertNull(record.get("title"));
+        assertEquals("news", record.remove("category"));
+        assertNull(record.remove("body"));
+        assertEquals("[id, url]", record.keySet().toString());
+        assertEquals(2, record.size());
+
+        // Removed through the views as well, and a removed field can be put again.
+        record.keySet().remove("url");
+        record.entrySet().removeIf(e -> "id".equals(e.getKey()));
+        assertTrue(record.isEmpty());
+        record.put("title", "Again");
+        assertEquals(1, record.size());
+        assertEquals("Again", record.get(1));
+
+        record.clear();
+        assertTrue(record.isEmpty());
+        assertFalse(record.containsKey("title"));
+    }
+
+    @Test
+    public void test_entrySetValue() {
+        final SchemaRecord record = new RecordSchema("id", "title").newRecord();
+        record.put("title", "Sample");
+        for (final Map.Entry<String, Object> entry : record.entrySet()) {
+            entry.setValue(entry.getKey() + "!");
+        }
+        assertEquals("id!", record.get("id"));
+        assertEquals("title!", record.get("title"));
+    }
+}
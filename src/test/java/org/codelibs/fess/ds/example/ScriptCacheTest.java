@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ScriptCache}.
+ */
+public class ScriptCacheTest extends UnitDsTestCase {
+
+    private final ScriptPlan.Entry entry = new ScriptPlan.Entry("author", "lookup(author_id)", ScriptPlan.Kind.SCRIPT);
+
+    @Test
+    public void test_get() {
+        final ScriptCache cache = new ScriptCache(100);
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            final String id = "a" + i % 3;
+            assertEquals("name of " + id, cache.get(ScriptCache.newKey(entry, new Object[] { id }), () -> {
+                loadCount.incrementAndGet();
+                return "name of " + id;
+            }));
+        }
+
+        assertEquals(3, loadCount.get());
+        assertEquals(3L, cache.getMissCount());
+        assertEquals(7L, cache.getHitCount());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void test_getNull() {
+        final ScriptCache cache = new ScriptCache(100);
+        final AtomicInteger loadCount = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.get(ScriptCache.newKey(entry, new Object[] { null }), () -> {
+                loadCount.incrementAndGet();
+                return null;
+            }));
+        }
+        // A null value is cached as well.
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void test_keys() {
+        final ScriptCache cache = new ScriptCache(100);
+        final ScriptPlan.Entry other = new ScriptPlan.Entry("category", "lookup(author_id)", ScriptPlan.Kind.SCRIPT);
+        cache.get(ScriptCache.newKey(entry, new Object[] { "a", 1 }), () -> "a1");
+
+        assertEquals("a1", cache.get(ScriptCache.newKey(entry, new Object[] { "a", 1 }), () -> "other"));
+        // A different entry or different input values are different keys.
+        assertEquals("other", cache.get(ScriptCache.newKey(other, new Object[] { "a", 1 }), () -> "other"));
+        assertEquals("other", cache.get(ScriptCache.newKey(entry, new Object[] { "a", 2 }), () -> "other"));
+    }
+
+    @Test
+    public void test_evictLeastRecentlyUsed() {
+        final ScriptCache cache = new ScriptCache(2);
+        cache.get(ScriptCache.newKey(entry, new Object[] { "a" }), () -> "a");
+        cache.get(ScriptCache.newKey(entry, new Object[] { "b" }), () -> "b");
+        // "a" is used again, so "b" is the least recently used.
+        cache.get(ScriptCache.newKey(entry, new Object[] { "a" }), () -> "reloaded");
+        cache.get(ScriptCache.newKey(entry, new Object[] { "c" }), () -> "c");
+
+        assertEquals(2, cache.size());
+        assertEquals(1L, cache.getEvictionCount());
+        assertEquals("a", cache.get(ScriptCache.newKey(entry, new Object[] { "a" }), () -> "reloaded"));
+        assertEquals("reloaded", cache.get(ScriptCache.newKey(entry, new Object[] { "b" }), () -> "reloaded"));
+    }
+
+    @Test
+    public void test_maxSize() {
+        final ScriptCache cache = new ScriptCache(1000);
+        for (int i = 0; i < 10000; i++) {
+            final int value = i;
+            cache.get(ScriptCache.newKey(entry, new Object[] { value }), () -> value);
+        }
+        assertTrue(cache.size() <= 1000);
+        assertTrue(cache.size() > 900);
+        assertEquals(10000L - cache.size(), cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ScriptPlan}.
+ */
+public class ScriptPlanTest extends UnitDsTestCase {
+
+    @Test
+    public void test_classify() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "title");
+        scriptMap.put("size", "data.size");
+        scriptMap.put("empty", "");
+        scriptMap.put("expr", "title + \" - \" + url");
+        final ScriptPlan plan = new ScriptPlan("groovy", scriptMap);
+
+        final ScriptPlan.Entry[] entries = plan.getEntries();
+        assertEquals(ScriptPlan.Kind.REFERENCE, entries[0].getKind());
+        assertEquals(ScriptPlan.Kind.REFERENCE, entries[1].getKind());
+        assertEquals(ScriptPlan.Kind.EMPTY, entries[2].getKind());
+        assertEquals(ScriptPlan.Kind.SCRIPT, entries[3].getKind());
+    }
+
+    @Test
+    public void test_evaluate() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "title");
+        scriptMap.put("nothing", "missing_value");
+        scriptMap.put("empty", "");
+        scriptMap.put("expr", "title + url");
+        final TestScriptPlan plan = new TestScriptPlan(scriptMap);
+
+        final Map<String, Object> resultMap = new HashMap<>();
+        resultMap.put("title", "Sample");
+        resultMap.put("url", "http://example.com/");
+        resultMap.put("missing_value", null);
+        final Map<String, Object> dataMap = new HashMap<>();
+        plan.evaluate(resultMap, dataMap);
+
+        assertEquals("Sample", dataMap.get("title"));
+        // A null value of an existing field is looked up, not evaluated, and not stored.
+        assertFalse(dataMap.containsKey("nothing"));
+        assertEquals("", dataMap.get("empty"));
+        assertEquals("script:title + url", dataMap.get("expr"));
+        assertEquals(2, plan.getReferenceCount());
+        assertEquals(1, plan.getScriptCount());
+        assertEquals(1, plan.getEmptyCount());
+    }
+
+    @Test
+    public void test_evaluate_schemaRecord() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "title");
+        scriptMap.put("size", "data.size");
+        final TestScriptPlan plan = new TestScriptPlan(scriptMap);
+
+        final RecordSchema schema = new RecordSchema("id", "title");
+        final Map<String, Object> params = new HashMap<>();
+        params.put("data.size", "10");
+        params.put("title", "param title");
+        for (int i = 0; i < 2; i++) {
+            final SchemaRecord record = schema.newRecord();
+            record.set(1, "Sample " + i);
+            final Map<String, Object> dataMap = new HashMap<>();
+            plan.evaluate(new ResultMapView(params, null, record), dataMap);
+            // The record field is read from its slot and overrides the parameter.
+            assertEquals("Sample " + i, dataMap.get("title"));
+            assertEquals("10", dataMap.get("size"));
+        }
+        assertEquals(1, plan.getEntries()[0].getSlot(schema));
+        assertEquals(-1, plan.getEntries()[1].getSlot(schema));
+        assertEquals(4, plan.getReferenceCount());
+    }
+
+    @Test
+    public void test_evaluate_missingReference() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("value", "unknown");
+        final TestScriptPlan plan = new TestScriptPlan(scriptMap);
+
+        final Map<String, Object> dataMap = new HashMap<>();
+        plan.evaluate(new HashMap<>(), dataMap);
+
+        // Like convertValue, a reference that is not in the resultMap goes to the script engine.
+        assertEquals("script:unknown", dataMap.get("value"));
+        assertEquals(0, plan.getReferenceCount());
+        assertEquals(1, plan.getScriptCount());
+    }
+
+    @Test
+    public void test_evaluate_keyNotMatchingPattern() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "\u30bf\u30a4\u30c8\u30eb");
+        scriptMap.put("name", "first name");
+        scriptMap.put("expr", "title + url");
+        final TestScriptPlan plan = new TestScriptPlan(scriptMap);
+        assertEquals(ScriptPlan.Kind.SCRIPT, plan.getEntries()[0].getKind());
+        assertEquals(ScriptPlan.Kind.SCRIPT, plan.getEntries()[1].getKind());
+
+        final Map<String, Object> resultMap = new HashMap<>();
+        resultMap.put("\u30bf\u30a4\u30c8\u30eb", "Sample");
+        resultMap.put("first name", "Taro");
+        final Map<String, Object> dataMap = new HashMap<>();
+        plan.evaluate(resultMap, dataMap);
+
+        // Like convertValue, an existing key is looked up even if it does not look like a field name.
+        assertEquals("Sample", dataMap.get("title"));
+        assertEquals("Taro", dataMap.get("name"));
+        assertEquals("script:title + url", dataMap.get("expr"));
+        assertEquals(2, plan.getReferenceCount());
+        assertEquals(1, plan.getScriptCount());
+    }
+
+    @Test
+    public void test_evaluate_schemaKeyNotMatchingPattern() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("name", "first name");
+        final TestScriptPlan plan = new TestScriptPlan(scriptMap);
+
+        final SchemaRecord record = new RecordSchema("id", "first name").newRecord();
+        record.set(1, "Taro");
+        final Map<String, Object> dataMap = new HashMap<>();
+        plan.evaluate(new ResultMapView(new HashMap<>(), null, record), dataMap);
+
+        assertEquals("Taro", dataMap.get("name"));
+        assertEquals(1, plan.getReferenceCount());
+        assertEquals(0, plan.getScriptCount());
+    }
+
+    @Test
+    public void test_evaluate_removedSchemaField() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "title");
+        final TestScriptPlan plan = new TestScriptPlan(scriptMap);
+
+        // A removed field of the record falls back to the parameters.
+        final SchemaRecord record = new RecordSchema("id", "title").newRecord();
+        record.set(1, "Record title");
+        record.remove("title");
+        final Map<String, Object> params = new HashMap<>();
+        params.put("title", "Param title");
+        final Map<String, Object> dataMap = new HashMap<>();
+        plan.evaluate(new ResultMapView(params, null, record), dataMap);
+
+        assertEquals("Param title", dataMap.get("title"));
+        assertEquals(0, plan.getScriptCount());
+    }
+
+    @Test
+    public void test_evaluate_cached() {
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "title");
+        scriptMap.put("author", "lookup(author_id)");
+        scriptMap.put("expr", "title + url");
+        final Map<String, List<String>> cacheFields = new HashMap<>();
+        cacheFields.put("author", List.of("author_id"));
+        // A field reference is never cached.
+        cacheFields.put("title", List.of("title"));
+        final TestScriptPlan plan = new TestScriptPlan(scriptMap, cacheFields, new ScriptCache(100));
+
+        assertNull(plan.getEntries()[0].getCacheFields());
+        for (int i = 0; i < 10; i++) {
+            final Map<String, Object> resultMap = new HashMap<>();
+            resultMap.put("title", "Sample " + i);
+            resultMap.put("author_id", i % 2);
+            final Map<String, Object> dataMap = new HashMap<>();
+            plan.evaluate(resultMap, dataMap);
+            assertEquals("script:lookup(author_id)", dataMap.get("author"));
+        }
+
+        // 2 distinct authors plus 10 uncached expressions.
+        assertEquals(12, plan.getScriptCount());
+        assertEquals(8L, plan.getCache().getHitCount());
+        assertEquals(2L, plan.getCache().getMissCount());
+    }
+
+    private static class TestScriptPlan extends ScriptPlan {
+        TestScriptPlan(final Map<String, String> scriptMap) {
+            super("groovy", scriptMap);
+        }
+
+        TestScriptPlan(final Map<String, String> scriptMap, final Map<String, List<String>> cacheFields, final ScriptCache cache) {
+            super("groovy", scriptMap, cacheFields, cache);
+        }
+
+        @Override
+        protected Object evaluateScript(final String template, final Map<String, Object> resultMap) {
+            return "script:" + template;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link Shard}.
+ */
+public class ShardTest extends UnitDsTestCase {
+
+    @Test
+    public void test_positionBased() {
+        final Shard shard = new Shard(3, 1, null);
+        assertTrue(shard.isPositionBased());
+        assertEquals(1, shard.getGap(0));
+        assertEquals(0, shard.getGap(1));
+        assertEquals(2, shard.getGap(2));
+        assertEquals(1, shard.getGap(3));
+        assertFalse(shard.accepts(0, Collections.emptyMap()));
+        assertTrue(shard.accepts(4, Collections.emptyMap()));
+        assertEquals("shard1of3", shard.getName());
+    }
+
+    @Test
+    public void test_fieldBased() {
+        final Shard[] shards = { new Shard(4, 0, "id"), new Shard(4, 1, "id"), new Shard(4, 2, "id"), new Shard(4, 3, "id") };
+        final int[] counts = new int[shards.length];
+        for (int i = 0; i < 1000; i++) {
+            final Map<String, Object> source = Collections.singletonMap("id", Integer.toString(i));
+            int owners = 0;
+            for (int s = 0; s < shards.length; s++) {
+                if (shards[s].accepts(i, source)) {
+                    owners++;
+                    counts[s]++;
+                }
+            }
+            assertEquals(1, owners);
+        }
+        // Sequential ids are spread over all shards.
+        for (final int count : counts) {
+            assertTrue(count > 150);
+        }
+        // Records without a value belong to the first shard.
+        assertTrue(shards[0].accepts(0, Collections.emptyMap()));
+        assertFalse(shards[1].accepts(0, Collections.emptyMap()));
+    }
+
+    @Test
+    public void test_invalid() {
+        boolean thrown = false;
+        try {
+            new Shard(2, 2, null);
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+}
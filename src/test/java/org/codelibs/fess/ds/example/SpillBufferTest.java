@@ -0,0 +1,283 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.codelibs.fess.Constants;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link SpillBuffer}.
+ */
+public class SpillBufferTest extends UnitDsTestCase {
+
+    @Test
+    public void test_spillInOrder() throws Exception {
+        final Path dir = Files.createTempDirectory("spill");
+        final RunContext context = newContext();
+        final List<PreparedDocument> stored = Collections.synchronizedList(new ArrayList<>());
+        final SpillBuffer buffer = new SpillBuffer(context, dir, "config", 2, 1024, stored::add);
+        assertEquals(0L, buffer.open());
+
+        // Nothing is stored yet, so all but the first 2 documents go to disk.
+        for (int i = 0; i < 50; i++) {
+            buffer.put(newEntry(context, i));
+        }
+        assertEquals(48L, buffer.getSpilledCount());
+        assertEquals(50L, buffer.getPendingCount());
+        assertTrue(countFiles(dir) > 1);
+
+        buffer.start("test");
+        // Documents put while the disk is not empty are spilled behind it.
+        buffer.put(newEntry(context, 50));
+        buffer.finish();
+
+        assertEquals(51, stored.size());
+        for (int i = 0; i < stored.size(); i++) {
+            final PreparedDocument entry = stored.get(i);
+            assertEquals(i, entry.getIndex());
+            assertEquals("config#" + i, entry.getStatsKey().getId());
+            assertEquals("http://example.com/" + i, entry.getStatsKey().getUrl());
+            assertSame(entry.getStatsKey(), entry.getParamMap().get(Constants.CRAWLER_STATS_KEY));
+            assertEquals(newDataMap(i).toString(), entry.getDataMap().toString());
+        }
+        assertEquals(0L, buffer.getPendingCount());
+        assertTrue(buffer.getMaxDiskBytes() > 1024);
+        // Stored segments are deleted.
+        assertEquals(0, countFiles(dir));
+    }
+
+    @Test
+    public void test_values() throws Exception {
+        final RunContext context = newContext();
+        final Map<String, Object> dataMap = new LinkedHashMap<>();
+        dataMap.put("string", "text \uD83D\uDE00");
+        dataMap.put("long", 1L);
+        dataMap.put("integer", 2);
+        dataMap.put("double", 3.5);
+        dataMap.put("float", 4.5f);
+        dataMap.put("boolean", true);
+        dataMap.put("date", new Date(1000L));
+        dataMap.put("list", List.of("a", "b"));
+        dataMap.put("array", new String[] { "c", null });
+        dataMap.put("map", Map.of("key", 5L));
+        dataMap.put("decimal", new BigDecimal("6.50"));
+        dataMap.put("null", null);
+        final StatsKeyObject statsKey = new StatsKeyObject("config#7");
+        final PreparedDocument entry =
+                new PreparedDocument(7, statsKey, context.newRecordParams(statsKey), dataMap, new FingerprintStore.Fingerprint(1, 2, 3));
+        final SpillBuffer buffer = new SpillBuffer(context, Files.createTempDirectory("spill"), "config", 0, 1024, e -> true);
+
+        final PreparedDocument decoded = buffer.decode(SpillBuffer.encode(entry), false);
+
+        assertEquals(7, decoded.getIndex());
+        assertNull(decoded.getStatsKey().getUrl());
+        assertEquals(3L, decoded.getFingerprint().getTimestamp());
+        final Map<String, Object> result = decoded.getDataMap();
+        assertEquals(List.copyOf(dataMap.keySet()), List.copyOf(result.keySet()));
+        for (final String key : List.of("string", "long", "integer", "double", "float", "boolean", "date", "list", "map", "decimal")) {
+            assertEquals(dataMap.get(key), result.get(key));
+        }
+        assertEquals("c", ((String[]) result.get("array"))[0]);
+        assertNull(((String[]) result.get("array"))[1]);
+        assertNull(result.get("null"));
+
+        // Other values are written as the nearest type, never with Java serialization.
+        dataMap.clear();
+        dataMap.put("builder", new StringBuilder("x"));
+        dataMap.put("short", (short) 8);
+        dataMap.put("bigInteger", new BigInteger("123456789012345678901234567890"));
+        dataMap.put("atomic", new AtomicLong(9L));
+        dataMap.put("timestamp", new Timestamp(2000L));
+        dataMap.put("set", new LinkedHashSet<>(List.of("d", "e")));
+        dataMap.put("objects", new Object[] { "f", 10L });
+        dataMap.put("instant", Instant.ofEpochMilli(0L));
+
+        final Map<String, Object> converted = buffer.decode(SpillBuffer.encode(entry), false).getDataMap();
+
+        assertEquals("x", converted.get("builder"));
+        assertEquals(8, converted.get("short"));
+        assertEquals(new BigDecimal("123456789012345678901234567890"), converted.get("bigInteger"));
+        assertEquals(new BigDecimal("9"), converted.get("atomic"));
+        assertEquals(new Date(2000L), converted.get("timestamp"));
+        assertEquals(Date.class, converted.get("timestamp").getClass());
+        assertEquals(List.of("d", "e"), converted.get("set"));
+        assertEquals(List.of("f", 10L), converted.get("objects"));
+        assertEquals("1970-01-01T00:00:00Z", converted.get("instant"));
+    }
+
+    @Test
+    public void test_invalidLength() throws Exception {
+        final RunContext context = newContext();
+        final Map<String, Object> dataMap = new LinkedHashMap<>();
+        dataMap.put("title", "text");
+        final StatsKeyObject statsKey = new StatsKeyObject("config#7");
+        final byte[] bytes = SpillBuffer.encode(new PreparedDocument(7, statsKey, context.newRecordParams(statsKey), dataMap));
+        final SpillBuffer buffer = new SpillBuffer(context, Files.createTempDirectory("spill"), "config", 0, 1024, e -> true);
+
+        // The length of the stats key id, right after the index, claims 2 GB.
+        ByteBuffer.wrap(bytes).putInt(4, Integer.MAX_VALUE);
+        boolean thrown = false;
+        try {
+            buffer.decode(bytes, false);
+        } catch (final IOException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void test_replay() throws Exception {
+        final Path dir = Files.createTempDirectory("spill");
+        final RunContext context = newContext();
+        final SpillBuffer crashed = new SpillBuffer(context, dir, "config", 0, 1024, e -> true);
+        crashed.open();
+        for (int i = 0; i < 10; i++) {
+            crashed.put(newEntry(context, i));
+        }
+        // The process dies before the store thread ran; a partly written
+        // segment of another configuration is not touched.
+        final Path other = Files.write(dir.resolve("other.0.spill"), new byte[16]);
+
+        final List<PreparedDocument> stored = Collections.synchronizedList(new ArrayList<>());
+        final SpillBuffer buffer = new SpillBuffer(newContext(), dir, "config", 0, 1024, stored::add);
+        assertEquals(10L, buffer.open());
+        buffer.start("test");
+        buffer.put(newEntry(context, 0));
+        buffer.finish();
+
+        // The documents of the earlier run come first, without an index of this run.
+        assertEquals(11, stored.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, stored.get(i).getIndex());
+            assertEquals("config#" + i, stored.get(i).getStatsKey().getId());
+            assertEquals(newDataMap(i).toString(), stored.get(i).getDataMap().toString());
+        }
+        assertEquals(0, stored.get(10).getIndex());
+        assertEquals(10L, buffer.getReplayedCount());
+        assertEquals(0, countFiles(dir));
+        assertTrue(Files.exists(other));
+    }
+
+    @Test
+    public void test_stoppedRunKeepsSegments() throws Exception {
+        final Path dir = Files.createTempDirectory("spill");
+        final RunContext context = newContext();
+        final List<PreparedDocument> stored = Collections.synchronizedList(new ArrayList<>());
+        final SpillBuffer buffer = new SpillBuffer(context, dir, "config", 0, 1024, entry -> {
+            stored.add(entry);
+            // The second document aborts the run.
+            return entry.getIndex() != 1;
+        });
+        buffer.open();
+        for (int i = 0; i < 10; i++) {
+            buffer.put(newEntry(context, i));
+        }
+        buffer.start("test");
+        buffer.finish();
+
+        // The remaining documents were passed to the sink to finish their stats,
+        // and their segments are kept for the next run.
+        assertFalse(context.isRunning());
+        assertEquals(10, stored.size());
+        // Only the documents from the one that failed on are replayed.
+        final SpillBuffer next = new SpillBuffer(newContext(), dir, "config", 0, 1024, e -> true);
+        assertEquals(9L, next.open());
+    }
+
+    @Test
+    public void test_corruptSegment() throws Exception {
+        final Path dir = Files.createTempDirectory("spill");
+        final RunContext context = newContext();
+        final SpillBuffer crashed = new SpillBuffer(context, dir, "config", 0, 1 << 20, e -> true);
+        crashed.open();
+        for (int i = 0; i < 3; i++) {
+            crashed.put(newEntry(context, i));
+        }
+        // The length of the stats key id of the first document is garbled,
+        // after the header, the length of the document and its index.
+        final Path garbled = dir.resolve("config.0.spill");
+        final byte[] bytes = Files.readAllBytes(garbled);
+        ByteBuffer.wrap(bytes).putInt(16, Integer.MAX_VALUE);
+        Files.write(garbled, bytes);
+        // A file that is not a segment at all.
+        final Path truncated = Files.write(dir.resolve("config.1.spill"), new byte[3]);
+
+        final RunContext next = newContext();
+        final List<PreparedDocument> stored = Collections.synchronizedList(new ArrayList<>());
+        final SpillBuffer buffer = new SpillBuffer(next, dir, "config", 0, 1024, stored::add);
+        assertEquals(3L, buffer.open());
+        buffer.start("test");
+        buffer.put(newEntry(next, 5));
+        buffer.finish();
+
+        // The run goes on with the next document and the files are moved aside.
+        assertTrue(next.isRunning());
+        assertEquals(1, stored.size());
+        assertEquals(5, stored.get(0).getIndex());
+        assertTrue(Files.exists(dir.resolve("config.0.spill" + SpillBuffer.CORRUPT_SUFFIX)));
+        assertTrue(Files.exists(dir.resolve("config.1.spill" + SpillBuffer.CORRUPT_SUFFIX)));
+        assertFalse(Files.exists(garbled));
+        assertFalse(Files.exists(truncated));
+        assertEquals(0L, new SpillBuffer(newContext(), dir, "config", 0, 1024, e -> true).open());
+    }
+
+    private static RunContext newContext() {
+        return new RunContext(new DataConfig(), null, null, Collections.emptyMap(), new ScriptPlan("groovy", Collections.emptyMap()),
+                Collections.emptyMap());
+    }
+
+    private static PreparedDocument newEntry(final RunContext context, final int index) {
+        final StatsKeyObject statsKey = new StatsKeyObject("config#" + index);
+        statsKey.setUrl("http://example.com/" + index);
+        return new PreparedDocument(index, statsKey, context.newRecordParams(statsKey), newDataMap(index));
+    }
+
+    private static Map<String, Object> newDataMap(final int index) {
+        final Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("url", "http://example.com/" + index);
+        dataMap.put("title", "Title " + index);
+        dataMap.put("content", "Body text of document " + index + " ".repeat(index % 7 * 20));
+        dataMap.put("created", new Date(index * 1000L));
+        return dataMap;
+    }
+
+    private static long countFiles(final Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("config.")).count();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.example;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link SpscRingBuffer}.
+ */
+public class SpscRingBufferTest extends UnitDsTestCase {
+
+    @Test
+    public void test_offerAndPoll() {
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(3);
+        assertEquals(4, queue.capacity());
+        assertNull(queue.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void test_maxCapacity() {
+        boolean thrown = false;
+        try {
+            new SpscRingBuffer<Integer>(SpscRingBuffer.MAX_CAPACITY + 1);
+        } catch (final IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void test_offerWithTimeout() throws Exception {
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(2);
+        assertTrue(queue.offer(0, 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+        final long startTime = System.nanoTime();
+        assertFalse(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void test_producerAndConsumer() throws Exception {
+        final SpscRingBuffer<Integer> queue = new SpscRingBuffer<>(8);
+        final int size = 100_000;
+        final Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < size; i++) {
+                    queue.put(i);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        // The elements arrive complete and in order.
+        for (int i = 0; i < size; i++) {
+            assertEquals(Integer.valueOf(i), queue.take());
+        }
+        producer.join();
+        assertNull(queue.poll());
+    }
+}